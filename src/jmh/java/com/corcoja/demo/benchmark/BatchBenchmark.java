@@ -0,0 +1,69 @@
+package com.corcoja.demo.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import com.corcoja.demo.impl.BaseLoadBalancer;
+import com.corcoja.demo.impl.ExecutionMode;
+import com.corcoja.demo.protocol.Provider;
+
+/**
+ * Cost of routing {@link #batchSize} requests through a Load Balancer, one by one and as a single
+ * batch, to providers that answer immediately or after {@link #latencyMicros}.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BatchBenchmark {
+
+    @Param({"RANDOM", "ROUND_ROBIN", "LEAST_LOADED"})
+    private Strategy strategy;
+
+    @Param({"10", "1000"})
+    private int providerCount;
+
+    @Param({"10", "100"})
+    private int batchSize;
+
+    @Param({"0", "100"})
+    private long latencyMicros;
+
+    private BaseLoadBalancer loadBalancer;
+
+    @Setup
+    public void setUp() {
+        loadBalancer = strategy.create();
+        loadBalancer.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+
+        List<Provider> providers = IntStream.range(0, providerCount)
+                .mapToObj(i -> new BenchmarkProvider("provider" + i,
+                        TimeUnit.MICROSECONDS.toNanos(latencyMicros)))
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(providers);
+    }
+
+    @Benchmark
+    public void getOneByOne(Blackhole blackhole) {
+        for (int i = 0; i < batchSize; i++) {
+            blackhole.consume(loadBalancer.get());
+        }
+    }
+
+    @Benchmark
+    public List<String> getBatch() {
+        return loadBalancer.getBatch(batchSize);
+    }
+}
@@ -0,0 +1,52 @@
+package com.corcoja.demo.benchmark;
+
+import java.util.concurrent.locks.LockSupport;
+import com.corcoja.demo.protocol.Provider;
+
+/**
+ * Provider that answers immediately (unless given a latency) and is never loaded, so that the
+ * benchmarks only measure the Load Balancer. Its health checks fail while it is set as unavailable.
+ */
+class BenchmarkProvider implements Provider {
+
+    private final String uuid;
+
+    private final long latencyNanos;
+
+    private volatile boolean available = true;
+
+    BenchmarkProvider(String uuid) {
+        this(uuid, 0);
+    }
+
+    /**
+     * @param latencyNanos Time the caller is blocked for by each request.
+     */
+    BenchmarkProvider(String uuid, long latencyNanos) {
+        this.uuid = uuid;
+        this.latencyNanos = latencyNanos;
+    }
+
+    @Override
+    public String get() {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+        return uuid;
+    }
+
+    @Override
+    public Boolean check() {
+        return available;
+    }
+
+    @Override
+    public Float getCurrentLoad() {
+        return 0.0f;
+    }
+
+    @Override
+    public void setAvailability(Boolean availability) {
+        available = availability;
+    }
+}
@@ -0,0 +1,43 @@
+package com.corcoja.demo.benchmark;
+
+import java.text.MessageFormat;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks matching the regular expression given as first argument (all of them by
+ * default) once for each thread count, measuring throughput, sampled time (average and
+ * percentiles) and allocation rate. The results are written to
+ * {@code target/jmh-<threads>-threads.json}, so that they can be compared with the ones of a
+ * baseline run.
+ */
+public class BenchmarkRunner {
+
+    private static final int[] THREAD_COUNTS = {1, 4, 16};
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : ".*";
+
+        for (int threads : THREAD_COUNTS) {
+
+            // @formatter:off
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .mode(Mode.Throughput)
+                    .mode(Mode.SampleTime)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(MessageFormat.format("target/jmh-{0}-threads.json", threads))
+                    .build();
+            // @formatter:on
+
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.corcoja.demo.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.corcoja.demo.impl.BaseLoadBalancer;
+import com.corcoja.demo.impl.ExecutionMode;
+import com.corcoja.demo.protocol.Provider;
+
+/**
+ * Wait in {@code get()} with and without hedging on a fleet where one provider out of eight is much
+ * slower than the others. The sample time mode of the runner reports the percentiles of both runs,
+ * i. e. the tail latency before and after hedging, measured from the moment the caller sent the
+ * request.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HedgingBenchmark {
+
+    @Param({"RANDOM", "ROUND_ROBIN"})
+    private Strategy strategy;
+
+    @Param({"false", "true"})
+    private boolean hedging;
+
+    @Param({"200"})
+    private long latencyMicros;
+
+    @Param({"20"})
+    private int slowFactor;
+
+    private BaseLoadBalancer loadBalancer;
+
+    @Setup
+    public void setUp() {
+        loadBalancer = strategy.create();
+
+        // Block in the providers on virtual threads, not on the common pool
+        loadBalancer.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+
+        // Hedge past the latency of the fast providers, with enough budget for the slow one
+        if (hedging) {
+            loadBalancer.setHedging(0.8, 0.25);
+        }
+
+        long latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+        List<Provider> providers = IntStream.range(0, 8)
+                .mapToObj(i -> new BenchmarkProvider("provider" + i,
+                        i == 0 ? latencyNanos * slowFactor : latencyNanos))
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(providers);
+    }
+
+    @Benchmark
+    public String get() {
+        return loadBalancer.get();
+    }
+}
@@ -0,0 +1,70 @@
+package com.corcoja.demo.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.corcoja.demo.impl.BaseLoadBalancer;
+import com.corcoja.demo.impl.ExecutionMode;
+import com.corcoja.demo.protocol.Provider;
+
+/**
+ * Cost of routing one request through a Load Balancer, for several pool sizes and fractions of
+ * providers that failed their health checks.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LoadBalancerBenchmark {
+
+    @Param({"RANDOM", "ROUND_ROBIN"})
+    private Strategy strategy;
+
+    @Param({"1", "10", "100", "1000", "10000"})
+    private int providerCount;
+
+    @Param({"0.0", "0.5", "0.9"})
+    private double downFraction;
+
+    private BaseLoadBalancer loadBalancer;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        loadBalancer = strategy.create();
+
+        // Keep thousands of health checks from creating thousands of platform threads
+        loadBalancer.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+
+        List<Provider> providers = IntStream.range(0, providerCount)
+                .mapToObj(i -> new BenchmarkProvider("provider" + i))
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(providers);
+
+        // Always keep at least one provider alive
+        int down = Math.min(providerCount - 1, (int) (providerCount * downFraction));
+        for (int i = 0; i < down; i++) {
+            providers.get(i).setAvailability(false);
+        }
+
+        // Wait for the health checks to mark the providers as not alive
+        if (down > 0) {
+            Thread.sleep(Strategy.CHECK_ALIVE_INTERVAL * 2 + Strategy.ALIVE_TIMEOUT);
+        }
+    }
+
+    @Benchmark
+    public String get() {
+        return loadBalancer.get();
+    }
+}
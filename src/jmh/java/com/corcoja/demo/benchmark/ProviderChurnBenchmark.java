@@ -0,0 +1,59 @@
+package com.corcoja.demo.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.corcoja.demo.impl.BaseLoadBalancer;
+import com.corcoja.demo.impl.ExecutionMode;
+import com.corcoja.demo.protocol.Provider;
+
+/**
+ * Cost of registering and unregistering a provider on a Load Balancer that already has
+ * {@link #providerCount} providers.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProviderChurnBenchmark {
+
+    @Param({"RANDOM", "ROUND_ROBIN"})
+    private Strategy strategy;
+
+    @Param({"1", "10", "100", "1000", "10000"})
+    private int providerCount;
+
+    private BaseLoadBalancer loadBalancer;
+
+    private Provider provider;
+
+    @Setup
+    public void setUp() {
+        loadBalancer = strategy.create();
+        loadBalancer.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+
+        List<Provider> providers = IntStream.range(0, providerCount)
+                .mapToObj(i -> new BenchmarkProvider("provider" + i))
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(providers);
+
+        provider = new BenchmarkProvider("churn");
+    }
+
+    @Benchmark
+    public void addRemoveProvider() {
+        loadBalancer.addProvider(provider);
+        loadBalancer.removeProvider(provider);
+    }
+}
@@ -0,0 +1,111 @@
+package com.corcoja.demo.benchmark;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import com.corcoja.demo.error.MaxLoadException;
+import com.corcoja.demo.impl.BaseLoadBalancer;
+import com.corcoja.demo.impl.LoadBalancerPublisher;
+import com.corcoja.demo.impl.SimpleProvider;
+import com.corcoja.demo.protocol.Provider;
+
+/**
+ * Time to pull {@link #count} identifiers from a saturated fleet of {@link SimpleProvider}
+ * instances, with a loop that retries {@code get()} on each {@link MaxLoadException} and with a
+ * {@link LoadBalancerPublisher} subscription.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PublisherBenchmark {
+
+    @Param({"RANDOM", "ROUND_ROBIN"})
+    private Strategy strategy;
+
+    @Param({"4"})
+    private int providerCount;
+
+    @Param({"4"})
+    private int providerCapacity;
+
+    @Param({"100", "1000"})
+    private long processingMicros;
+
+    @Param({"1000"})
+    private int count;
+
+    private BaseLoadBalancer loadBalancer;
+
+    private LoadBalancerPublisher publisher;
+
+    @Setup
+    public void setUp() {
+        loadBalancer = strategy.create();
+
+        List<Provider> providers = IntStream.range(0, providerCount)
+                .mapToObj(i -> new SimpleProvider("provider" + i, providerCapacity,
+                        Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(processingMicros))))
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(providers);
+
+        publisher = new LoadBalancerPublisher(loadBalancer);
+    }
+
+    @Benchmark
+    public void pollingLoop(Blackhole blackhole) {
+        int received = 0;
+        while (received < count) {
+            try {
+                blackhole.consume(loadBalancer.get());
+                received++;
+            } catch (MaxLoadException e) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    @Benchmark
+    public void publisher(Blackhole blackhole) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(count);
+
+        publisher.subscribe(new Flow.Subscriber<String>() {
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(count);
+            }
+
+            @Override
+            public void onNext(String item) {
+                blackhole.consume(item);
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                throw new IllegalStateException(throwable);
+            }
+
+            @Override
+            public void onComplete() {}
+        });
+
+        latch.await();
+    }
+}
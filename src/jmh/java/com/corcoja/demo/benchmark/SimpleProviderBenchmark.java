@@ -0,0 +1,46 @@
+package com.corcoja.demo.benchmark;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.corcoja.demo.impl.SimpleProvider;
+
+/**
+ * Overhead of {@link SimpleProvider} requests and health checks. The provider has no artificial
+ * processing time and enough capacity to never block, so only the bookkeeping is measured.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SimpleProviderBenchmark {
+
+    private SimpleProvider provider;
+
+    @Setup
+    public void setUp() {
+        provider = new SimpleProvider(Integer.MAX_VALUE, Duration.ZERO);
+    }
+
+    /**
+     * Healthy requests. With several benchmark threads (see {@link BenchmarkRunner}), they should
+     * not contend on anything but the semaphore.
+     */
+    @Benchmark
+    public String get() {
+        return provider.get();
+    }
+
+    @Benchmark
+    public Boolean check() {
+        return provider.check();
+    }
+}
@@ -0,0 +1,43 @@
+package com.corcoja.demo.benchmark;
+
+import java.util.function.BiFunction;
+import com.corcoja.demo.impl.BaseLoadBalancer;
+import com.corcoja.demo.impl.LeastLoadedLoadBalancer;
+import com.corcoja.demo.impl.RandomLoadBalancer;
+import com.corcoja.demo.impl.RoundRobinLoadBalancer;
+import com.corcoja.demo.impl.WeightedRandomLoadBalancer;
+import com.corcoja.demo.impl.WeightedRoundRobinLoadBalancer;
+
+/**
+ * Load Balancer implementations that can be benchmarked, selected with a {@code strategy}
+ * parameter.
+ */
+enum Strategy {
+
+    RANDOM(RandomLoadBalancer::new),
+
+    ROUND_ROBIN(RoundRobinLoadBalancer::new),
+
+    LEAST_LOADED(LeastLoadedLoadBalancer::new),
+
+    WEIGHTED_RANDOM(WeightedRandomLoadBalancer::new),
+
+    WEIGHTED_ROUND_ROBIN(WeightedRoundRobinLoadBalancer::new);
+
+    /**
+     * Interval between health checks, long enough for them not to disturb the measurements.
+     */
+    static final Long CHECK_ALIVE_INTERVAL = 1000L;
+
+    static final Long ALIVE_TIMEOUT = 500L;
+
+    private final BiFunction<Long, Long, BaseLoadBalancer> factory;
+
+    Strategy(BiFunction<Long, Long, BaseLoadBalancer> factory) {
+        this.factory = factory;
+    }
+
+    BaseLoadBalancer create() {
+        return factory.apply(CHECK_ALIVE_INTERVAL, ALIVE_TIMEOUT);
+    }
+}
@@ -0,0 +1,78 @@
+package com.corcoja.demo.benchmark;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.corcoja.demo.error.MaxLoadException;
+import com.corcoja.demo.impl.BaseLoadBalancer;
+import com.corcoja.demo.impl.SimpleProvider;
+import com.corcoja.demo.protocol.Provider;
+
+/**
+ * Wait in {@code get()} of each strategy on the same fleet of {@link SimpleProvider} instances
+ * with different capacities (60 concurrent requests in total). The sample time mode of the runner
+ * reports its percentiles, the rejected requests are counted separately.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TailLatencyBenchmark {
+
+    /**
+     * Outcome of the requests sent by one benchmark thread.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcomes {
+
+        public long served;
+
+        public long rejected;
+    }
+
+    @Param({"RANDOM", "ROUND_ROBIN", "LEAST_LOADED"})
+    private Strategy strategy;
+
+    @Param({"1000"})
+    private long processingMicros;
+
+    private BaseLoadBalancer loadBalancer;
+
+    @Setup
+    public void setUp() {
+        loadBalancer = strategy.create();
+
+        Duration processingTime = Duration.ofNanos(
+                TimeUnit.MICROSECONDS.toNanos(processingMicros));
+        List<Provider> providers = IntStream.of(2, 2, 4, 4, 8, 8, 16, 16)
+                .mapToObj(capacity -> new SimpleProvider(capacity, processingTime))
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(providers);
+    }
+
+    @Benchmark
+    public String get(Outcomes outcomes) {
+        try {
+            String uuid = loadBalancer.get();
+            outcomes.served++;
+            return uuid;
+        } catch (MaxLoadException e) {
+            outcomes.rejected++;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.corcoja.demo.impl;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import com.corcoja.demo.protocol.Provider;
+
+/**
+ * Cost of handling the outcome of a health check on the {@link BaseLoadBalancer}, for a provider
+ * that keeps passing or keeps failing its checks. Debug logging is enabled, so that logging for
+ * every ping (instead of only for alive state transitions) shows up in both the time and the
+ * allocation rate.
+ *
+ * @implNote Lives in the {@code impl} package to invoke the health check listener directly, without
+ *           waiting for the scheduler.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HealthCheckBenchmark {
+
+    private BaseLoadBalancer loadBalancer;
+
+    private Provider provider;
+
+    private long handle;
+
+    private Level previousLevel;
+
+    @Setup
+    public void setUp() {
+        previousLevel = LogManager.getRootLogger().getLevel();
+        Configurator.setRootLevel(Level.DEBUG);
+
+        // Checks are only triggered by the benchmark
+        loadBalancer = new RandomLoadBalancer(TimeUnit.HOURS.toMillis(1), 1000L);
+        provider = new SimpleProvider(1, Duration.ZERO);
+        loadBalancer.registerProviders(List.of(provider));
+        handle = loadBalancer.snapshot.getHandle(0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Configurator.setRootLevel(previousLevel);
+    }
+
+    @Benchmark
+    public int passedCheck() {
+        return loadBalancer.updateAlivePings(provider, handle, true, null);
+    }
+
+    @Benchmark
+    public int failedCheck() {
+        return loadBalancer.updateAlivePings(provider, handle, false, null);
+    }
+}
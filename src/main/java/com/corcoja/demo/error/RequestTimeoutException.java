@@ -0,0 +1,12 @@
+package com.corcoja.demo.error;
+
+public class RequestTimeoutException extends RuntimeException {
+
+    public RequestTimeoutException(String message) {
+        super(message);
+    }
+
+    public RequestTimeoutException(String message, Exception exception) {
+        super(message, exception);
+    }
+}
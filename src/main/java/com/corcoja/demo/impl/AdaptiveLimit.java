@@ -0,0 +1,78 @@
+package com.corcoja.demo.impl;
+
+/**
+ * Learns the limit of requests in flight of a provider from the latency of its requests, in the
+ * spirit of TCP Vegas. The lowest latency seen is taken as the latency of an idle provider, so the
+ * amount of requests queued in the provider is estimated as
+ * {@code limit * (1 - minLatency / latency)}. The limit grows while this queue stays short and
+ * shrinks once it grows long, so it settles slightly above the amount of requests the provider
+ * really handles at the same time. Failed and rejected requests shrink the limit multiplicatively.
+ *
+ * @implNote Limits are kept in thousandths, so that they can grow by a fraction for each request.
+ *           Each request moves the limit by about {@code log10(limit) / limit}, i. e. by about
+ *           {@code log10(limit)} per round trip once the limit is in use.
+ */
+final class AdaptiveLimit {
+
+    /**
+     * One request in flight, in the unit the limits are kept in.
+     */
+    static final long UNIT = 1000;
+
+    /**
+     * Factor the limit is multiplied by after a failed or rejected request.
+     */
+    private static final double BACKOFF = 0.9;
+
+    /**
+     * The limit grows while less than {@code ALPHA * log10(limit)} requests seem queued.
+     */
+    private static final double ALPHA = 3.0;
+
+    /**
+     * The limit shrinks once more than {@code BETA * log10(limit)} requests seem queued.
+     */
+    private static final double BETA = 6.0;
+
+    private final long maxLimit;
+
+    /**
+     * @param maxLimit Highest limit, in requests in flight.
+     */
+    AdaptiveLimit(int maxLimit) {
+        this.maxLimit = maxLimit * UNIT;
+    }
+
+    /**
+     * @param limit Current limit, in thousandths of a request.
+     * @param minLatency Lowest latency (in nanoseconds) seen so far, {@code 0} if unknown.
+     * @param latency Latency (in nanoseconds) of the request that just finished.
+     * @param inFlight Requests still in flight.
+     * @param failed {@code True} if the request failed or was rejected by the provider.
+     *
+     * @return The new limit, in thousandths of a request, between {@link #UNIT} and the highest
+     *         limit.
+     */
+    long next(long limit, long minLatency, long latency, long inFlight, boolean failed) {
+
+        if (failed) {
+            return Math.max(UNIT, (long) (limit * BACKOFF));
+        }
+
+        // Requests that don't use the limit say nothing about whether it is too low
+        double requests = (double) limit / UNIT;
+        if (minLatency == 0 || inFlight * 2 < requests) {
+            return limit;
+        }
+
+        double step = Math.max(1.0, Math.log10(requests));
+        double queued = requests * (1.0 - (double) minLatency / Math.max(latency, minLatency));
+        if (queued < ALPHA * step) {
+            return Math.min(maxLimit, limit + (long) (UNIT * step / requests));
+        }
+        if (queued > BETA * step) {
+            return Math.max(UNIT, limit - (long) (UNIT * step / requests));
+        }
+        return limit;
+    }
+}
@@ -0,0 +1,317 @@
+package com.corcoja.demo.impl;
+
+import java.text.MessageFormat;
+import java.time.Duration;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import com.corcoja.demo.error.MaxLoadException;
+import com.corcoja.demo.metrics.LatencyHistogram;
+
+/**
+ * Bounded queue of the requests waiting for a provider slot, in front of a
+ * {@link BaseLoadBalancer}. A request that finds all the providers at their limit waits here
+ * instead of being rejected, and is handed a slot as soon as a request in flight finishes, in the
+ * order given by the {@link QueuePolicy}. Requests that don't get a slot within the queue timeout
+ * are rejected with a {@link MaxLoadException}.
+ *
+ * @implNote Slots are handed out by a single thread at a time (whichever freed one last), the
+ *           other ones only ask it for another pass, so waiters are never skipped nor handed two
+ *           slots.
+ */
+final class AdmissionQueue {
+
+    /**
+     * Queue timeout divided by the time the requests may wait while the queue is standing (see
+     * {@link QueuePolicy#CODEL}).
+     */
+    private static final int CODEL_TARGET_RATIO = 20;
+
+    /**
+     * A provider slot reserved for a request, counted as in flight until the request finishes.
+     */
+    static final class Admission {
+
+        final RoutingSnapshot snapshot;
+
+        final int idx;
+
+        Admission(RoutingSnapshot snapshot, int idx) {
+            this.snapshot = snapshot;
+            this.idx = idx;
+        }
+    }
+
+    private static final class Waiter extends CompletableFuture<Admission> {
+
+        private final String key;
+
+        private final long enqueued = System.nanoTime();
+
+        private Waiter(String key) {
+            this.key = key;
+        }
+    }
+
+    private final int maxDepth;
+
+    private final long timeout;
+
+    private final long target;
+
+    private final QueuePolicy policy;
+
+    /**
+     * Reserves a slot for a request with the given key, returns {@code null} if none is free.
+     */
+    private final Function<String, Admission> admitter;
+
+    /**
+     * Gives back a slot that no request is going to use.
+     */
+    private final Consumer<Admission> releaser;
+
+    private final LatencyHistogram waitLatency;
+
+    private final Deque<Waiter> waiters = new ConcurrentLinkedDeque<>();
+
+    private final AtomicInteger depth = new AtomicInteger();
+
+    /**
+     * Passes requested over the waiters, see {@link #dispatch()}.
+     */
+    private final AtomicInteger dispatchRequests = new AtomicInteger();
+
+    /**
+     * Last time (see {@link System#nanoTime()}) no request was waiting.
+     */
+    private volatile long lastEmpty = System.nanoTime();
+
+    /**
+     * Whether the queue hasn't been empty for a whole queue timeout, until it is drained by
+     * admitted requests (see {@link QueuePolicy#CODEL}). Only written by the dispatching thread.
+     */
+    private volatile boolean standing;
+
+    private volatile boolean closed;
+
+    /**
+     * @param maxDepth Amount of requests allowed to wait at the same time.
+     * @param timeout Maximum time a request waits for a slot.
+     * @param policy Order in which the waiting requests are served.
+     * @param admitter Reserves a slot for a request with the given key (possibly {@code null}),
+     *        returns {@code null} if all the providers are at their limit.
+     * @param releaser Gives back a slot reserved by the admitter.
+     * @param waitLatency Histogram of the time the admitted requests waited.
+     */
+    AdmissionQueue(int maxDepth, Duration timeout, QueuePolicy policy,
+            Function<String, Admission> admitter, Consumer<Admission> releaser,
+            LatencyHistogram waitLatency) {
+        this.maxDepth = maxDepth;
+        this.timeout = timeout.toNanos();
+        this.target = this.timeout / CODEL_TARGET_RATIO;
+        this.policy = policy;
+        this.admitter = admitter;
+        this.releaser = releaser;
+        this.waitLatency = waitLatency;
+    }
+
+    /**
+     * Reserve a slot right away, unless other requests are waiting for one already.
+     *
+     * @param key Request key, {@code null} if the request has none.
+     *
+     * @return The reserved slot, {@code null} if the request must wait (see
+     *         {@link #enqueue(String)}).
+     */
+    Admission tryAcquire(String key) {
+
+        if (depth.get() > 0) {
+            return null;
+        }
+
+        Admission admission = admitter.apply(key);
+        if (admission != null) {
+            waitLatency.record(0);
+        }
+        return admission;
+    }
+
+    /**
+     * Wait for a slot.
+     *
+     * @param key Request key, {@code null} if the request has none.
+     *
+     * @return Future completed with the reserved slot, or with a {@link MaxLoadException} if the
+     *         queue is full or no slot freed up within the queue timeout. Cancelling the future
+     *         gives up the place in the queue.
+     */
+    CompletableFuture<Admission> enqueue(String key) {
+
+        if (closed) {
+            return CompletableFuture.failedFuture(
+                    new MaxLoadException("Admission queue of the Load Balancer was replaced!"));
+        }
+
+        int queued = depth.incrementAndGet();
+        if (queued > maxDepth) {
+            depth.decrementAndGet();
+            return CompletableFuture.failedFuture(new MaxLoadException(MessageFormat.format(
+                    "All providers are overloaded and {0} requests are queued!", maxDepth)));
+        }
+
+        // The queue was empty until now, e. g. after a quiet period, but not because of shedding
+        if (queued == 1 && !standing) {
+            lastEmpty = System.nanoTime();
+        }
+
+        Waiter waiter = new Waiter(key);
+        waiters.addLast(waiter);
+
+        // Cancelled by the caller, unless a dispatching thread removed it already
+        waiter.whenComplete((admission, e) -> {
+            if (waiter.isCancelled() && waiters.remove(waiter)) {
+                depth.decrementAndGet();
+            }
+        });
+        HashedWheelTimer.SHARED.schedule(() -> expire(waiter), Duration.ofNanos(timeout));
+
+        // A slot may have freed up before the request was queued
+        dispatch();
+
+        return waiter;
+    }
+
+    /**
+     * Hand the free slots to the waiting requests. Invoked each time a request finishes or a
+     * provider becomes available.
+     */
+    void dispatch() {
+
+        // Another thread is handing out slots, ask it for another pass
+        if (dispatchRequests.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+        do {
+            drain();
+            missed = dispatchRequests.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * @return Amount of requests waiting for a slot.
+     */
+    int getDepth() {
+        return Math.max(0, depth.get());
+    }
+
+    /**
+     * Reject all the waiting requests, and the ones queued from now on.
+     */
+    void close() {
+        closed = true;
+
+        for (Waiter waiter = waiters.pollFirst(); waiter != null; waiter = waiters.pollFirst()) {
+            depth.decrementAndGet();
+            waiter.completeExceptionally(
+                    new MaxLoadException("Admission queue of the Load Balancer was replaced!"));
+        }
+    }
+
+    private void drain() {
+
+        while (true) {
+            long now = System.nanoTime();
+            if (policy == QueuePolicy.CODEL && !standing && now - lastEmpty > timeout) {
+                standing = true;
+            }
+            boolean newestFirst = policy == QueuePolicy.LIFO || standing;
+
+            // Don't let a standing queue add its delay to every request
+            if (standing) {
+                shed(now);
+            }
+
+            Waiter waiter = newestFirst ? waiters.pollLast() : waiters.pollFirst();
+            if (waiter == null) {
+
+                // Emptied by shedding, the queue is still standing
+                if (!standing) {
+                    lastEmpty = now;
+                }
+                return;
+            }
+
+            // Timed out or cancelled by the caller
+            if (waiter.isDone()) {
+                depth.decrementAndGet();
+                continue;
+            }
+
+            Admission admission = admitter.apply(waiter.key);
+
+            // Keep its place until a slot frees up
+            if (admission == null) {
+                if (newestFirst) {
+                    waiters.addLast(waiter);
+                } else {
+                    waiters.addFirst(waiter);
+                }
+                return;
+            }
+
+            // Drained by the admitted requests
+            if (depth.decrementAndGet() == 0) {
+                lastEmpty = now;
+                standing = false;
+            }
+
+            // Timed out or cancelled meanwhile
+            if (!waiter.complete(admission)) {
+                releaser.accept(admission);
+                continue;
+            }
+
+            waitLatency.record(now - waiter.enqueued);
+        }
+    }
+
+    /**
+     * Reject the requests that waited longer than the target (see {@link QueuePolicy#CODEL}).
+     */
+    private void shed(long now) {
+
+        for (Waiter oldest = waiters.pollFirst(); oldest != null; oldest = waiters.pollFirst()) {
+            if (now - oldest.enqueued <= target) {
+                waiters.addFirst(oldest);
+                return;
+            }
+
+            depth.decrementAndGet();
+            oldest.completeExceptionally(new MaxLoadException(
+                    "All providers are overloaded, request dropped from the standing queue!"));
+        }
+    }
+
+    private void expire(Waiter waiter) {
+
+        // Admitted, rejected or cancelled meanwhile
+        if (waiter.isDone()) {
+            return;
+        }
+
+        MaxLoadException exception = new MaxLoadException(MessageFormat.format(
+                "All providers are overloaded, no slot freed up within {0} ms!",
+                Duration.ofNanos(timeout).toMillis()));
+
+        // Not yet removed by a dispatching thread
+        if (waiter.completeExceptionally(exception) && waiters.remove(waiter)) {
+            depth.decrementAndGet();
+        }
+    }
+}
@@ -1,28 +1,39 @@
 package com.corcoja.demo.impl;
 
 import java.text.MessageFormat;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import com.corcoja.demo.error.MaxLoadException;
 import com.corcoja.demo.error.ProviderAlreadyRegisteredException;
 import com.corcoja.demo.error.ProviderNotFoundException;
+import com.corcoja.demo.error.RequestTimeoutException;
+import com.corcoja.demo.impl.AdmissionQueue.Admission;
+import com.corcoja.demo.metrics.HistogramSnapshot;
+import com.corcoja.demo.metrics.LatencyHistogram;
+import com.corcoja.demo.metrics.MetricsSnapshot;
+import com.corcoja.demo.metrics.MetricsSource;
 import com.corcoja.demo.protocol.LoadBalancer;
 import com.corcoja.demo.protocol.Provider;
 
-public abstract class BaseLoadBalancer implements LoadBalancer {
+public abstract class BaseLoadBalancer implements LoadBalancer, MetricsSource {
 
     /**
      * A provider is considered alive once the amount of successful pings equals to {@code 0} or
@@ -31,19 +42,103 @@ public abstract class BaseLoadBalancer implements LoadBalancer {
      * 
      * @apiNote Each successful ping will increment the amount of pings by {@code 1}.
      */
-    private static final Integer PROVIDER_UNAVAILABLE_RESET_PINGS = -2;
+    private static final int PROVIDER_UNAVAILABLE_RESET_PINGS = -2;
+
+    private static final int DEFAULT_MAX_CONSECUTIVE_FAILURES = 5;
+
+    private static final int DEFAULT_MAX_EJECTION_PERCENT = 50;
+
+    private static final int DEFAULT_MAX_HALF_OPEN_PROBES = 3;
+
+    /**
+     * Amount of times a provider is selected again, when the selected one is half-open and the
+     * allowed probes are taken by concurrent requests.
+     */
+    private static final int MAX_PROBE_RESELECTIONS = 3;
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 2;
 
     private static Logger logger = LogManager.getLogger(BaseLoadBalancer.class);
 
-    private final Executor aliveCheckExecutor;
+    private volatile ExecutionMode executionMode = ExecutionMode.PLATFORM_THREADS;
+
+    /**
+     * Created with the first task (see {@link #executor()}), so that a load balancer only used for
+     * its selection (see {@link LocalityAwareLoadBalancer}) never creates one.
+     */
+    private volatile ExecutorService executor;
+
+    private final long checkAliveInterval;
+
+    private final long aliveTimeout;
+
+    /**
+     * Created with the first registered provider (see {@link #healthCheckScheduler()}).
+     */
+    private volatile HealthCheckScheduler healthCheckScheduler;
+
+    private volatile int maxConcurrentChecks = Integer.MAX_VALUE;
+
+    private volatile int maxConsecutiveFailures = DEFAULT_MAX_CONSECUTIVE_FAILURES;
+
+    private volatile Duration maxAverageLatency;
+
+    private volatile int maxEjectionPercent = DEFAULT_MAX_EJECTION_PERCENT;
+
+    private volatile int maxHalfOpenProbes = DEFAULT_MAX_HALF_OPEN_PROBES;
+
+    private volatile Duration defaultTimeout;
+
+    private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    private volatile HedgePolicy hedgePolicy;
+
+    private volatile AdmissionQueue admissionQueue;
+
+    private volatile AdaptiveLimit adaptiveLimit;
+
+    /**
+     * Guards the writers of {@link #snapshot}. Readers never take this lock.
+     */
+    private final Object snapshotLock = new Object();
+
+    /**
+     * Providers and their health state, as seen by the request path. Replaced (never modified)
+     * whenever a provider is registered, unregistered or changes its alive state.
+     */
+    protected volatile RoutingSnapshot snapshot = RoutingSnapshot.EMPTY;
+
+    /**
+     * Amount of subsequent successful pings for each registered provider (see
+     * {@link #PROVIDER_UNAVAILABLE_RESET_PINGS}), together with the outcome of the requests routed
+     * to it.
+     */
+    private final HealthStore healthStore = new HealthStore();
+
+    private final LongAdder completedRequests = new LongAdder();
+
+    private final LongAdder failedRequests = new LongAdder();
+
+    /**
+     * Requests rejected with a {@link MaxLoadException}, either by the load balancer or by the
+     * provider.
+     */
+    private final LongAdder rejectedRequests = new LongAdder();
+
+    private final LongAdder requestsInFlight = new LongAdder();
 
-    private final Timer providerAliveTimer;
+    private final LongAdder providersUp = new LongAdder();
 
-    private final Long aliveTimeout;
+    private final LongAdder providersDown = new LongAdder();
 
-    protected List<Provider> providers;
+    private final LongAdder providersEjected = new LongAdder();
 
-    protected Map<Provider, Integer> alivePings;
+    private final LatencyHistogram requestLatency = new LatencyHistogram();
+
+    /**
+     * Time the requests waited in the admission queue.
+     */
+    private final LatencyHistogram queueLatency = new LatencyHistogram();
 
     protected BaseLoadBalancer(Long checkAliveInterval, Long aliveTimeout) {
 
@@ -60,90 +155,1674 @@ public abstract class BaseLoadBalancer implements LoadBalancer {
                     "Check alive interval must be greater than provider alive check timeout!");
         }
 
-        providers = Collections.synchronizedList(new ArrayList<>());
-        alivePings = Collections.synchronizedMap(new HashMap<Provider, Integer>());
-
+        this.checkAliveInterval = checkAliveInterval;
         this.aliveTimeout = aliveTimeout;
+    }
+
+    @Override
+    public String get() throws MaxLoadException {
+        return request(null);
+    }
+
+    @Override
+    public String get(String key) throws MaxLoadException {
+
+        // Sanity check
+        if (key == null) {
+            throw new IllegalArgumentException("Request key cannot be `null`!");
+        }
+
+        return request(key);
+    }
+
+    /**
+     * @param key Request key (see {@link #select(RoutingSnapshot, String, List)}), {@code null} if
+     *        the request has none.
+     */
+    private String request(String key) throws MaxLoadException {
+
+        Duration defaultTimeout = this.defaultTimeout;
+        if (defaultTimeout != null) {
+            return request(key, defaultTimeout);
+        }
+
+        // Work on a consistent view of the providers for the whole request
+        RoutingSnapshot snapshot = this.snapshot;
+
+        // Sanity check
+        if (snapshot.isEmpty()) {
+            throw new ProviderNotFoundException("Load Balancer has no registered providers!");
+        }
+
+        // Wait for a free slot instead of being rejected right away
+        AdmissionQueue admissionQueue = this.admissionQueue;
+        if ((admissionQueue != null || adaptiveLimit != null) && hedgePolicy == null) {
+            return call(admit(admissionQueue, key));
+        }
 
-        // Create the thread pool for alive provider checks
-        aliveCheckExecutor = Executors.newCachedThreadPool();
+        int idx = selectAdmitted(snapshot, key, List.of());
 
-        // Create a timer that will check from time to time if the providers are alive
-        TimerTask timerTask = new TimerTask() {
-            @Override
-            public void run() {
-                logger.debug("Time {} fired!", providerAliveTimer);
-                timerFired();
+        // Hedged requests are sent through the asynchronous path, like the ones with a timeout
+        if (hedgePolicy != null) {
+            return await(send(snapshot, idx));
+        }
+
+        // Providers may fill up between the selection and the request, fall through to the next
+        // candidate instead of waiting for their load to decrease
+        List<Provider> rejectingProviders = null;
+        while (idx >= 0) {
+            startRequest(snapshot, idx);
+            long start = System.nanoTime();
+
+            String result;
+            try {
+                result = snapshot.getProvider(idx).tryGet();
+            } catch (RuntimeException e) {
+                recordRequest(snapshot, idx, start, start, e);
+                throw e;
+            }
+
+            if (result != null) {
+                recordRequest(snapshot, idx, start, start, null);
+                return result;
+            }
+
+            // Being full is not a failure of the provider
+            finishRequest(snapshot, idx, false, false);
+            HalfOpenState halfOpenState = snapshot.getHalfOpenState(idx);
+            if (halfOpenState != null) {
+                halfOpenState.release(false);
+            }
+
+            if (rejectingProviders == null) {
+                rejectingProviders = new ArrayList<>();
             }
-        };
+            rejectingProviders.add(snapshot.getProvider(idx));
+            idx = rejectingProviders.size() < snapshot.getAliveCount()
+                    ? selectOther(snapshot, key, rejectingProviders)
+                    : -1;
+        }
 
-        providerAliveTimer =
-                new Timer(MessageFormat.format("provider_alive_timer_{0}", UUID.randomUUID()));
-        providerAliveTimer.scheduleAtFixedRate(timerTask, checkAliveInterval, checkAliveInterval);
+        rejectedRequests.increment();
+        throw new MaxLoadException("All providers are down or overloaded!");
     }
 
-    public void registerProviders(List<Provider> providers) {
+    @Override
+    public String get(Duration timeout) throws MaxLoadException, RequestTimeoutException {
+        return request(null, timeout);
+    }
 
-        // Replace existing providers
-        this.providers = Collections.synchronizedList(new ArrayList<>(providers));
-        this.alivePings = Collections.synchronizedMap(new HashMap<>(
-                providers.stream().collect(Collectors.toMap(Function.identity(), provider -> 0))));
+    private String request(String key, Duration timeout)
+            throws MaxLoadException, RequestTimeoutException {
+
+        // Sanity check
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("Timeout must be positive!");
+        }
+
+        // Don't split the time with attempts that can't reach another provider
+        long deadline = System.nanoTime() + timeout.toNanos();
+        int maxAttempts = Math.max(1, Math.min(this.maxAttempts, snapshot.getAliveCount()));
+        List<Provider> abandonedProviders = new ArrayList<>(maxAttempts);
+
+        for (int attempt = 0; attempt < maxAttempts; attempt++) {
+            RoutingSnapshot snapshot = this.snapshot;
+
+            // Sanity check
+            if (snapshot.isEmpty()) {
+                throw new ProviderNotFoundException("Load Balancer has no registered providers!");
+            }
+
+            int idx = selectOther(snapshot, key, abandonedProviders);
+            if (idx < 0) {
+                break;
+            }
+
+            // Split the time left between the remaining attempts
+            long attemptTimeout = (deadline - System.nanoTime()) / (maxAttempts - attempt);
+            CompletableFuture<String> future = send(snapshot, idx);
+
+            try {
+                return future.get(attemptTimeout, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+
+                // Abandon the provider, unless it just answered. The timeout counts as its failure.
+                if (!future.completeExceptionally(e)) {
+                    return future.join();
+                }
+
+                logger.warn("Provider {} did not answer within {} ms!", snapshot.getProvider(idx),
+                        TimeUnit.NANOSECONDS.toMillis(attemptTimeout));
+                abandonedProviders.add(snapshot.getProvider(idx));
+            } catch (ExecutionException e) {
+                throw unwrap(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(false);
+                throw new RequestTimeoutException("Interrupted while waiting for a provider!", e);
+            }
+        }
+
+        throw new RequestTimeoutException(MessageFormat
+                .format("No provider answered within {0} ms!", timeout.toMillis()));
     }
 
-    public void addProvider(Provider provider) throws ProviderAlreadyRegisteredException {
+    @Override
+    public CompletableFuture<String> getAsync() {
+        RoutingSnapshot snapshot = this.snapshot;
 
         // Sanity check
-        if (alivePings.containsKey(provider)) {
-            throw new ProviderAlreadyRegisteredException(
-                    MessageFormat.format("Provider {0} already registered!", provider));
+        if (snapshot.isEmpty()) {
+            return CompletableFuture.failedFuture(
+                    new ProviderNotFoundException("Load Balancer has no registered providers!"));
+        }
+
+        CompletableFuture<String> future;
+        AdmissionQueue admissionQueue = this.admissionQueue;
+        if ((admissionQueue != null || adaptiveLimit != null) && hedgePolicy == null) {
+            future = admitAsync(admissionQueue);
+        } else {
+            int idx;
+            try {
+                idx = selectAdmitted(snapshot, null, List.of());
+            } catch (MaxLoadException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+
+            future = send(snapshot, idx);
+        }
+
+        // The timeout completes the provider's own future, so that the provider drops the request
+        Duration defaultTimeout = this.defaultTimeout;
+        if (defaultTimeout != null) {
+            future.orTimeout(defaultTimeout.toNanos(), TimeUnit.NANOSECONDS);
         }
 
-        providers.add(provider);
-        alivePings.put(provider, 0);
+        return future;
     }
 
-    public void removeProvider(Provider provider) throws ProviderNotFoundException {
+    /**
+     * {@inheritDoc}
+     *
+     * @implNote Each request is sent like with {@link #getAsync()}, so a batch pays off when the
+     *           providers take a while to answer. Requests to providers that answer right away are
+     *           cheaper one by one, without the hand-off to another thread.
+     */
+    @Override
+    public List<String> getBatch(Integer count) throws MaxLoadException {
+        return await(getBatchAsync(count));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getBatchAsync(Integer count) {
 
         // Sanity check
-        if (!alivePings.containsKey(provider)) {
-            throw new ProviderNotFoundException(MessageFormat
-                    .format("Provider {0} not registered on this Load Balancer!", provider));
+        if (count <= 0) {
+            throw new IllegalArgumentException("Batch size must be greater than 0!");
+        }
+
+        RoutingSnapshot snapshot = this.snapshot;
+
+        // Sanity check
+        if (snapshot.isEmpty()) {
+            return CompletableFuture.failedFuture(
+                    new ProviderNotFoundException("Load Balancer has no registered providers!"));
+        }
+
+        List<CompletableFuture<String>> futures = new ArrayList<>(count);
+
+        // Hedged requests and requests limited by the load balancer take their slots one by one
+        if (hedgePolicy != null || admissionQueue != null || adaptiveLimit != null) {
+            for (int i = 0; i < count; i++) {
+                futures.add(getAsync());
+            }
+            return collect(futures);
+        }
+
+        int[] providerIndices;
+        try {
+            providerIndices = selectBatch(snapshot, count);
+        } catch (MaxLoadException e) {
+            rejectedRequests.add(count);
+            return CompletableFuture.failedFuture(e);
+        }
+
+        Duration defaultTimeout = this.defaultTimeout;
+        for (int idx : providerIndices) {
+            CompletableFuture<String> future = dispatch(snapshot, idx);
+            if (defaultTimeout != null) {
+                future.orTimeout(defaultTimeout.toNanos(), TimeUnit.NANOSECONDS);
+            }
+            futures.add(future);
+        }
+
+        return collect(futures);
+    }
+
+    /**
+     * @return Future completed with the results of the given futures, in the same order, once all
+     *         of them completed, or with the first failure.
+     */
+    private static CompletableFuture<List<String>> collect(
+            List<CompletableFuture<String>> futures) {
+        CompletableFuture<List<String>> batch = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(futures.size());
+
+        for (CompletableFuture<String> future : futures) {
+            future.whenComplete((result, e) -> {
+                if (e != null) {
+                    batch.completeExceptionally(
+                            e instanceof CompletionException && e.getCause() != null
+                                    ? e.getCause()
+                                    : e);
+                } else if (pending.decrementAndGet() == 0) {
+                    List<String> results = new ArrayList<>(futures.size());
+                    futures.forEach(completed -> results.add(completed.join()));
+                    batch.complete(results);
+                }
+            });
         }
 
-        providers.remove(provider);
-        alivePings.remove(provider);
+        return batch;
     }
 
-    private void timerFired() {
+    /**
+     * Send the request to the selected provider and, if hedging is enabled and the provider is slow
+     * to answer, to another provider as well.
+     *
+     * @return Future completed with the first successful answer, or with the last failure. Unless
+     *         the request is hedged, this is the provider's own future.
+     */
+    private CompletableFuture<String> send(RoutingSnapshot snapshot, int idx) {
+        long start = System.nanoTime();
+        CompletableFuture<String> future = dispatch(snapshot, idx, start);
 
-        // Check if the provider is alive in a dedicated thread (one thread per provider)
-        for (Provider provider : alivePings.keySet()) {
+        HedgePolicy hedgePolicy = this.hedgePolicy;
+        if (hedgePolicy == null) {
+            return future;
+        }
 
-            // @formatter:off
-            CompletableFuture.supplyAsync(provider::check, aliveCheckExecutor)
-                    .orTimeout(aliveTimeout, TimeUnit.MILLISECONDS)
-                    .whenCompleteAsync((result, e) -> updateAlivePings(provider, result, e));
-            // @formatter:on
+        hedgePolicy.recordRequest();
+        long delay = hedgePolicy.getDelay();
+        if (delay < 0) {
+            return future;
         }
+
+        CompletableFuture<String> response = new CompletableFuture<>();
+        List<CompletableFuture<String>> attempts = new CopyOnWriteArrayList<>(List.of(future));
+        AtomicInteger pending = new AtomicInteger(1);
+
+        future.whenComplete((result, e) -> answer(response, pending, result, e));
+
+        // Selecting and dispatching the hedge could delay the other tasks of the shared timer, so
+        // the timer only hands it off
+        Provider provider = snapshot.getProvider(idx);
+        HashedWheelTimer.SHARED.schedule(() -> {
+            if (!response.isDone()) {
+                execute(() -> hedge(hedgePolicy, provider, start, response, attempts, pending));
+            }
+        }, Duration.ofNanos(delay));
+
+        // Abandon the requests still in flight once answered. Timeouts still count as failures.
+        response.whenComplete((result, e) -> {
+            Throwable reason = e instanceof TimeoutException ? e
+                    : new CancellationException("Request answered by another provider!");
+            attempts.forEach(attempt -> attempt.completeExceptionally(reason));
+        });
+
+        return response;
     }
 
-    private void updateAlivePings(Provider provider, Boolean result, Throwable exception) {
+    /**
+     * Send the request to a provider other than the given one, unless the request was answered
+     * meanwhile or the hedging budget is exhausted.
+     *
+     * @param start Time (see {@link System#nanoTime()}) the request was first sent at, so that the
+     *        latency recorded for the hedge is the one the caller sees.
+     */
+    private void hedge(HedgePolicy hedgePolicy, Provider provider, long start,
+            CompletableFuture<String> response, List<CompletableFuture<String>> attempts,
+            AtomicInteger pending) {
+        RoutingSnapshot snapshot = this.snapshot;
+        if (response.isDone() || snapshot.isEmpty()) {
+            return;
+        }
 
-        if (exception != null || !result) {
+        int idx;
+        try {
+            idx = selectOther(snapshot, null, List.of(provider));
+        } catch (MaxLoadException e) {
+            return;
+        }
+        if (idx < 0) {
+            return;
+        }
 
-            // Reset the number of pings
-            alivePings.put(provider, PROVIDER_UNAVAILABLE_RESET_PINGS);
+        if (!hedgePolicy.tryAcquire()) {
+            HalfOpenState halfOpenState = snapshot.getHalfOpenState(idx);
+            if (halfOpenState != null) {
+                halfOpenState.release(false);
+            }
+            return;
+        }
 
-            String errorMessage = exception != null ? exception.getClass().getSimpleName() : "null";
-            logger.error("Provider {} not responding! Marking it as not alive! Exception: {}",
-                    provider, errorMessage);
-        } else {
+        pending.incrementAndGet();
+        CompletableFuture<String> hedge = dispatch(snapshot, idx, start);
+        attempts.add(hedge);
 
-            // Increment the count of subsequent successful pings
-            Integer currentPingCount = alivePings.get(provider);
-            alivePings.put(provider, currentPingCount + 1);
+        hedge.whenComplete((result, e) -> {
+            if (answer(response, pending, result, e)) {
+                hedgePolicy.recordHedgeWin();
+            }
+        });
+
+        // Answered while the hedge was being sent
+        if (response.isDone()) {
+            hedge.completeExceptionally(
+                    new CancellationException("Request answered by another provider!"));
+        }
+    }
+
+    /**
+     * Complete the response with the first successful answer, or with the last failure.
+     *
+     * @return {@code True} if this answer completed the response, {@code False} otherwise.
+     */
+    private static boolean answer(CompletableFuture<String> response, AtomicInteger pending,
+            String result, Throwable exception) {
+
+        if (exception == null) {
+            return response.complete(result);
+        }
+
+        return pending.decrementAndGet() == 0 && response.completeExceptionally(exception);
+    }
+
+    /**
+     * Wait for the answer of a provider.
+     */
+    private static <T> T await(CompletableFuture<T> future) {
+
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(false);
+            throw new RequestTimeoutException("Interrupted while waiting for a provider!", e);
+        }
+    }
+
+    private static RuntimeException unwrap(ExecutionException exception) {
+
+        if (exception.getCause() instanceof RuntimeException) {
+            return (RuntimeException) exception.getCause();
+        }
+
+        return new IllegalStateException("Provider failed!", exception);
+    }
+
+    /**
+     * Send the request to the selected provider, without blocking the caller.
+     *
+     * @return The provider's own future, so that completing or cancelling it still reaches the
+     *         provider.
+     */
+    private CompletableFuture<String> dispatch(RoutingSnapshot snapshot, int idx) {
+        return dispatch(snapshot, idx, System.nanoTime());
+    }
+
+    /**
+     * Like {@link #dispatch(RoutingSnapshot, int)}, for another attempt of a request sent earlier.
+     *
+     * @param requestStart Time (see {@link System#nanoTime()}) the request was first sent at.
+     */
+    private CompletableFuture<String> dispatch(RoutingSnapshot snapshot, int idx,
+            long requestStart) {
+        startRequest(snapshot, idx);
+        return callAsync(snapshot, idx, requestStart);
+    }
+
+    /**
+     * Like {@link #dispatch(RoutingSnapshot, int, long)}, for a request already counted as in
+     * flight.
+     */
+    private CompletableFuture<String> callAsync(RoutingSnapshot snapshot, int idx,
+            long requestStart) {
+        Provider provider = snapshot.getProvider(idx);
+        long start = System.nanoTime();
+
+        // Virtual threads are cheap enough to block in the provider
+        CompletableFuture<String> future = executionMode == ExecutionMode.VIRTUAL_THREADS
+                ? CompletableFuture.supplyAsync(provider::get, this::execute)
+                : provider.getAsync();
+
+        future.whenComplete((result, e) -> recordRequest(snapshot, idx, start, requestStart, e));
+        return future;
+    }
+
+    /**
+     * Reserve a slot for the request, waiting in the admission queue if all the providers are at
+     * their limit.
+     *
+     * @param admissionQueue The queue, {@code null} to only enforce the limits.
+     *
+     * @throws MaxLoadException Thrown if the queue is full or no slot freed up in time.
+     */
+    private Admission admit(AdmissionQueue admissionQueue, String key) throws MaxLoadException {
+        Admission admission =
+                admissionQueue != null ? admissionQueue.tryAcquire(key) : tryAdmit(key);
+        if (admission != null) {
+            return admission;
+        }
+
+        if (admissionQueue == null) {
+            rejectedRequests.increment();
+            throw new MaxLoadException("All providers are down or overloaded!");
+        }
+
+        CompletableFuture<Admission> future = admissionQueue.enqueue(key);
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            rejectedRequests.increment();
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            // Admitted right before giving up
+            if (!future.cancel(false)) {
+                release(future.join());
+            }
+            throw new RequestTimeoutException("Interrupted while waiting for a provider!", e);
+        }
+    }
+
+    private CompletableFuture<String> admitAsync(AdmissionQueue admissionQueue) {
+        Admission admission =
+                admissionQueue != null ? admissionQueue.tryAcquire(null) : tryAdmit(null);
+        if (admission != null) {
+            return callAsync(admission.snapshot, admission.idx, System.nanoTime());
+        }
+
+        if (admissionQueue == null) {
+            rejectedRequests.increment();
+            return CompletableFuture.failedFuture(
+                    new MaxLoadException("All providers are down or overloaded!"));
+        }
+
+        CompletableFuture<Admission> future = admissionQueue.enqueue(null);
+        CompletableFuture<String> response = new CompletableFuture<>();
+        future.whenComplete((queued, e) -> {
+            if (e != null) {
+                if (response.completeExceptionally(e)) {
+                    rejectedRequests.increment();
+                }
+                return;
+            }
+
+            CompletableFuture<String> call =
+                    callAsync(queued.snapshot, queued.idx, System.nanoTime());
+            call.whenComplete((result, callException) -> {
+                if (callException != null) {
+                    response.completeExceptionally(callException);
+                } else {
+                    response.complete(result);
+                }
+            });
+
+            // Timed out or cancelled by the caller, the provider drops the request
+            response.whenComplete((result, responseException) -> {
+                if (responseException != null) {
+                    call.completeExceptionally(responseException);
+                }
+            });
+        });
+
+        // Timed out or cancelled by the caller while queued, give up the place in the queue
+        response.whenComplete((result, e) -> {
+            if (e != null) {
+                future.cancel(false);
+            }
+        });
+
+        return response;
+    }
+
+    /**
+     * Send the request to the provider of a reserved slot.
+     *
+     * @throws MaxLoadException Thrown if the provider is at its full load anyway, e. g. because of
+     *         requests the load balancer doesn't know about.
+     */
+    private String call(Admission admission) throws MaxLoadException {
+        RoutingSnapshot snapshot = admission.snapshot;
+        int idx = admission.idx;
+        long start = System.nanoTime();
+
+        String result;
+        try {
+            result = snapshot.getProvider(idx).tryGet();
+        } catch (RuntimeException e) {
+            recordRequest(snapshot, idx, start, start, e);
+            throw e;
+        }
+
+        if (result == null) {
+            release(admission);
+            rejectedRequests.increment();
+            adaptLimit(snapshot.getHandle(idx), System.nanoTime() - start, true);
+            throw new MaxLoadException(MessageFormat.format("Provider {0} is at its full load!",
+                    snapshot.getProvider(idx)));
+        }
+
+        recordRequest(snapshot, idx, start, start, null);
+        return result;
+    }
+
+    /**
+     * Select a provider below its limit of requests in flight and count the request as in flight
+     * (see {@link AdmissionQueue}).
+     *
+     * @return The reserved slot, {@code null} if all the providers are at their limit.
+     */
+    private Admission tryAdmit(String key) {
+        RoutingSnapshot snapshot = this.snapshot;
+        if (snapshot.getAliveCount() == 0) {
+            return null;
+        }
+
+        for (int i = 0; i < MAX_PROBE_RESELECTIONS; i++) {
+            int idx;
+            try {
+                idx = key == null ? select(snapshot) : select(snapshot, key, List.of());
+            } catch (MaxLoadException e) {
+                return null;
+            }
+
+            HalfOpenState halfOpenState = snapshot.getHalfOpenState(idx);
+            if (halfOpenState != null && !halfOpenState.tryAcquire()) {
+                continue;
+            }
 
-            logger.debug("Provider {} still alive!", provider);
+            // Another request may have taken the last slot since the selection
+            if (healthStore.tryStartRequest(snapshot.getHandle(idx))) {
+                requestsInFlight.increment();
+                return new Admission(snapshot, idx);
+            }
+            if (halfOpenState != null) {
+                halfOpenState.release(false);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Give back a slot reserved with {@link #tryAdmit(String)} without sending the request.
+     */
+    private void release(Admission admission) {
+        finishRequest(admission.snapshot, admission.idx, false, false);
+
+        HalfOpenState halfOpenState = admission.snapshot.getHalfOpenState(admission.idx);
+        if (halfOpenState != null) {
+            halfOpenState.release(false);
+        }
+    }
+
+    /**
+     * @return Threads currently used for health checks and blocking provider invocations.
+     */
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Switch the threads used for health checks and blocking provider invocations. Tasks already
+     * running on the previous threads are allowed to finish.
+     *
+     * @param executionMode The new execution mode.
+     *
+     * @implNote The previous executor is shut down, so its threads terminate once its tasks are
+     *           done. Tasks submitted to it concurrently with the switch run on the new executor
+     *           instead (see {@link #execute(Runnable)}).
+     */
+    public void setExecutionMode(ExecutionMode executionMode) {
+
+        ExecutorService previousExecutor = null;
+        synchronized (snapshotLock) {
+            if (this.executionMode != executionMode) {
+                previousExecutor = executor;
+
+                // Executor first, so that readers of the new mode always see its executor
+                executor = executionMode.createExecutor();
+                this.executionMode = executionMode;
+            }
+        }
+
+        if (previousExecutor != null) {
+            previousExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Run the task on the executor of the current execution mode.
+     */
+    private void execute(Runnable task) {
+        ExecutorService executor = executor();
+
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+
+            // Executor was shut down by a switch of the execution mode meanwhile
+            if (executor == this.executor) {
+                throw e;
+            }
+            execute(task);
         }
     }
+
+    private ExecutorService executor() {
+        ExecutorService executor = this.executor;
+        if (executor != null) {
+            return executor;
+        }
+
+        synchronized (snapshotLock) {
+            if (this.executor == null) {
+                this.executor = executionMode.createExecutor();
+            }
+            return this.executor;
+        }
+    }
+
+    /**
+     * Limit the amount of provider health checks in flight at the same time. Checks over the limit
+     * are postponed, so the checks of big pools are spread over a longer sweep (see
+     * {@link #getLastHealthCheckSweepDuration()}).
+     *
+     * @param maxConcurrentChecks The limit, must be greater than {@code 0}.
+     */
+    public void setMaxConcurrentHealthChecks(Integer maxConcurrentChecks) {
+
+        // Sanity check
+        if (maxConcurrentChecks <= 0) {
+            throw new IllegalArgumentException("Maximum concurrent checks must be greater than 0!");
+        }
+
+        synchronized (snapshotLock) {
+            this.maxConcurrentChecks = maxConcurrentChecks;
+
+            HealthCheckScheduler healthCheckScheduler = this.healthCheckScheduler;
+            if (healthCheckScheduler != null) {
+                healthCheckScheduler.setMaxConcurrentChecks(maxConcurrentChecks);
+            }
+        }
+    }
+
+    /**
+     * @return Time it took to check every registered provider at least once, during the last
+     *         completed sweep. {@link Duration#ZERO} until the first sweep completes.
+     */
+    public Duration getLastHealthCheckSweepDuration() {
+        HealthCheckScheduler healthCheckScheduler = this.healthCheckScheduler;
+        return healthCheckScheduler != null ? healthCheckScheduler.getLastSweepDuration()
+                : Duration.ZERO;
+    }
+
+    /**
+     * Eject a provider as soon as this amount of subsequent requests routed to it failed, instead
+     * of waiting for its next health check. Ejected providers become alive again after passing
+     * their health checks, like the ones that failed a health check. Requests rejected because the
+     * provider is overloaded ({@link MaxLoadException}) don't count as failures. Defaults to
+     * {@value #DEFAULT_MAX_CONSECUTIVE_FAILURES}.
+     *
+     * @param maxConsecutiveFailures The amount of failures, must be greater than {@code 0}.
+     */
+    public void setMaxConsecutiveFailures(Integer maxConsecutiveFailures) {
+
+        // Sanity check
+        if (maxConsecutiveFailures <= 0) {
+            throw new IllegalArgumentException(
+                    "Maximum consecutive failures must be greater than 0!");
+        }
+
+        this.maxConsecutiveFailures = maxConsecutiveFailures;
+    }
+
+    /**
+     * Eject a provider as soon as the average latency of the requests routed to it exceeds this
+     * value. The average is exponentially weighted, so a single slow request doesn't eject the
+     * provider. Disabled by default.
+     *
+     * @param maxAverageLatency The latency, {@code null} to disable latency based ejection.
+     */
+    public void setMaxAverageLatency(Duration maxAverageLatency) {
+
+        // Sanity check
+        if (maxAverageLatency != null
+                && (maxAverageLatency.isNegative() || maxAverageLatency.isZero())) {
+            throw new IllegalArgumentException("Maximum average latency must be positive!");
+        }
+
+        this.maxAverageLatency = maxAverageLatency;
+    }
+
+    /**
+     * Limit the providers that can be ejected based on the outcome of their requests, so that the
+     * remaining ones are not overwhelmed. A provider is not ejected if this would leave more than
+     * this percentage of the providers not alive (for any reason). Defaults to
+     * {@value #DEFAULT_MAX_EJECTION_PERCENT}.
+     *
+     * @param maxEjectionPercent The percentage, between {@code 0} and {@code 100}.
+     */
+    public void setMaxEjectionPercent(Integer maxEjectionPercent) {
+
+        // Sanity check
+        if (maxEjectionPercent < 0 || maxEjectionPercent > 100) {
+            throw new IllegalArgumentException(
+                    "Maximum ejection percent must be between 0 and 100!");
+        }
+
+        this.maxEjectionPercent = maxEjectionPercent;
+    }
+
+    /**
+     * A provider that becomes alive again (after failing its health checks or being ejected) has
+     * its circuit breaker half-open: at most this amount of requests are sent to it at the same
+     * time, and the breaker closes once this amount of them succeed. A failed request opens the
+     * breaker again, ejecting the provider. Defaults to {@value #DEFAULT_MAX_HALF_OPEN_PROBES}.
+     *
+     * @param maxHalfOpenProbes The amount of probe requests, must be greater than {@code 0}.
+     */
+    public void setMaxHalfOpenProbes(Integer maxHalfOpenProbes) {
+
+        // Sanity check
+        if (maxHalfOpenProbes <= 0) {
+            throw new IllegalArgumentException("Maximum half-open probes must be greater than 0!");
+        }
+
+        this.maxHalfOpenProbes = maxHalfOpenProbes;
+    }
+
+    /**
+     * Give up on the requests sent with {@link #get()} (and {@link #getAsync()}) after this time,
+     * as if sent with {@link #get(Duration)}. Disabled by default.
+     *
+     * @param defaultTimeout The timeout, {@code null} to wait for the providers indefinitely.
+     */
+    public void setDefaultTimeout(Duration defaultTimeout) {
+
+        // Sanity check
+        if (defaultTimeout != null && (defaultTimeout.isNegative() || defaultTimeout.isZero())) {
+            throw new IllegalArgumentException("Default timeout must be positive!");
+        }
+
+        this.defaultTimeout = defaultTimeout;
+    }
+
+    /**
+     * Amount of providers a request sent with {@link #get(Duration)} is tried on, before giving up.
+     * The timeout is split evenly between the attempts left, so each provider gets the same share
+     * of the time. Asynchronous requests are never retried. Defaults to
+     * {@value #DEFAULT_MAX_ATTEMPTS}.
+     *
+     * @param maxAttempts The amount of attempts, must be greater than {@code 0}.
+     */
+    public void setMaxAttempts(Integer maxAttempts) {
+
+        // Sanity check
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("Maximum attempts must be greater than 0!");
+        }
+
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Send a request to a second provider when the first one didn't answer after the given
+     * percentile of the recent latencies, and use the answer that comes first. The extra requests
+     * are limited by a budget that grows with each successful request, so that hedging doesn't
+     * amplify an overload. Disabled by default.
+     *
+     * @param percentile The percentile, between {@code 0.0} and {@code 1.0} (exclusive), e. g.
+     *        {@code 0.95}. {@code null} to disable hedging.
+     * @param budgetRatio Hedges allowed for each successful request, e. g. {@code 0.1} for at most
+     *        10% extra requests (after an initial allowance of a few hedges).
+     */
+    public void setHedging(Double percentile, Double budgetRatio) {
+
+        if (percentile == null) {
+            hedgePolicy = null;
+            return;
+        }
+
+        // Sanity check
+        if (percentile <= 0.0 || percentile >= 1.0) {
+            throw new IllegalArgumentException("Hedging percentile must be between 0 and 1!");
+        }
+        if (budgetRatio <= 0.0) {
+            throw new IllegalArgumentException("Hedging budget ratio must be positive!");
+        }
+
+        hedgePolicy = new HedgePolicy(percentile, budgetRatio);
+    }
+
+    /**
+     * @return Share of the requests sent to a second provider, since hedging was enabled.
+     */
+    public Double getHedgeRate() {
+        HedgePolicy hedgePolicy = this.hedgePolicy;
+        return hedgePolicy != null ? hedgePolicy.getHedgeRate() : 0.0;
+    }
+
+    /**
+     * @return Share of the hedged requests answered first by the second provider, i. e. whose
+     *         latency was cut by hedging, since hedging was enabled.
+     */
+    public Double getHedgeWinRate() {
+        HedgePolicy hedgePolicy = this.hedgePolicy;
+        return hedgePolicy != null ? hedgePolicy.getHedgeWinRate() : 0.0;
+    }
+
+    /**
+     * Limit the requests in flight of each provider to its capacity (see
+     * {@link Provider#getCapacity()}), as counted by the load balancer itself, and queue the
+     * requests that find all the providers at their limit. A queued request is sent as soon as a
+     * request in flight finishes, so that short bursts are absorbed instead of rejected, and no
+     * thread waits on a full provider. Disabled by default.
+     *
+     * While enabled, the strategies see the requests in flight relative to their limit as the load
+     * of the providers, instead of {@link Provider#getCurrentLoad()}. Requests sent with a timeout
+     * (see {@link #get(Duration)} and {@link #setDefaultTimeout(Duration)}) and hedged requests
+     * are not queued.
+     *
+     * @param maxDepth Amount of requests allowed to wait at the same time, {@code 0} to only
+     *        enforce the limits. {@code null} to disable the queue, rejecting the requests waiting
+     *        in it.
+     * @param timeout Maximum time a request waits in the queue.
+     * @param policy Order in which the queued requests are served.
+     */
+    public void setAdmissionQueue(Integer maxDepth, Duration timeout, QueuePolicy policy) {
+
+        AdmissionQueue admissionQueue = null;
+        if (maxDepth != null) {
+
+            // Sanity check
+            if (maxDepth < 0) {
+                throw new IllegalArgumentException("Admission queue depth cannot be negative!");
+            }
+            if (timeout.isNegative() || timeout.isZero()) {
+                throw new IllegalArgumentException("Admission queue timeout must be positive!");
+            }
+            if (policy == null) {
+                throw new IllegalArgumentException("Admission queue policy cannot be `null`!");
+            }
+
+            admissionQueue = new AdmissionQueue(maxDepth, timeout, policy, this::tryAdmit,
+                    this::release, queueLatency);
+        }
+
+        AdmissionQueue previousQueue;
+        synchronized (snapshotLock) {
+            previousQueue = this.admissionQueue;
+            this.admissionQueue = admissionQueue;
+            publish(snapshot.withLoadTracker(loadTracker()));
+        }
+
+        if (previousQueue != null) {
+            previousQueue.close();
+        }
+    }
+
+    /**
+     * Learn the limit of requests in flight of each provider from the latency of its requests,
+     * instead of using its capacity (see {@link Provider#getCapacity()}). Starting from the
+     * capacity, the limit grows while the latency stays close to the lowest one seen, and shrinks
+     * once the latency grows (i. e. requests queue up in the provider) or requests fail. A provider
+     * at its limit is not selected, and the requests that find all the providers at their limit
+     * are rejected (or queued, see {@link #setAdmissionQueue(Integer, Duration, QueuePolicy)}).
+     * Disabled by default.
+     *
+     * While enabled, the strategies see the requests in flight relative to their limit as the load
+     * of the providers, instead of {@link Provider#getCurrentLoad()}. Hedged requests are not
+     * limited.
+     *
+     * @param maxLimit Highest limit of each provider, {@code null} to disable the adaptive limits
+     *        and set the limits back to the capacities.
+     */
+    public void setAdaptiveLimits(Integer maxLimit) {
+
+        // Sanity check
+        if (maxLimit != null && maxLimit <= 0) {
+            throw new IllegalArgumentException("Maximum limit must be greater than 0!");
+        }
+
+        synchronized (snapshotLock) {
+            adaptiveLimit = maxLimit != null ? new AdaptiveLimit(maxLimit) : null;
+            if (maxLimit == null) {
+                healthStore.resetLimits();
+            }
+            publish(snapshot.withLoadTracker(loadTracker()));
+        }
+
+        dispatchQueued();
+    }
+
+    /**
+     * @return Store of the requests in flight the snapshots compute the loads from, {@code null} if
+     *         the load balancer doesn't limit them (see {@link RoutingSnapshot#withLoadTracker}).
+     */
+    private HealthStore loadTracker() {
+        return admissionQueue != null || adaptiveLimit != null ? healthStore : null;
+    }
+
+    /**
+     * Metrics of the requests and health checks since the load balancer was created. The counters
+     * are {@code requests} (handled by a provider, including the failed ones),
+     * {@code requests.failed}, {@code requests.rejected} (with a {@link MaxLoadException}),
+     * {@code requests.inFlight}, {@code providers.registered}, {@code providers.alive} and the
+     * health transitions {@code providers.up}, {@code providers.down} (failed health checks) and
+     * {@code providers.ejected} (failed requests), together with {@code queue.depth} (see
+     * {@link #setAdmissionQueue(Integer, Duration, QueuePolicy)}). The histograms are
+     * {@code request.latency}, {@code queue.latency} (time waited for a free slot) and
+     * {@code check.latency}.
+     */
+    @Override
+    public MetricsSnapshot getMetrics() {
+        RoutingSnapshot snapshot = this.snapshot;
+
+        Map<String, Long> counters = new LinkedHashMap<>();
+        counters.put("requests", completedRequests.sum());
+        counters.put("requests.failed", failedRequests.sum());
+        counters.put("requests.rejected", rejectedRequests.sum());
+        counters.put("requests.inFlight", Math.max(0, requestsInFlight.sum()));
+        counters.put("providers.registered", (long) snapshot.size());
+        counters.put("providers.alive", (long) snapshot.getAliveCount());
+        counters.put("providers.up", providersUp.sum());
+        counters.put("providers.down", providersDown.sum());
+        counters.put("providers.ejected", providersEjected.sum());
+
+        AdmissionQueue admissionQueue = this.admissionQueue;
+        counters.put("queue.depth", admissionQueue != null ? admissionQueue.getDepth() : 0L);
+
+        Map<String, HistogramSnapshot> histograms = new LinkedHashMap<>();
+        histograms.put("request.latency", requestLatency.snapshot());
+        histograms.put("queue.latency", queueLatency.snapshot());
+        HealthCheckScheduler healthCheckScheduler = this.healthCheckScheduler;
+        histograms.put("check.latency", healthCheckScheduler != null
+                ? healthCheckScheduler.getCheckLatency().snapshot()
+                : new LatencyHistogram().snapshot());
+
+        return new MetricsSnapshot(counters, histograms);
+    }
+
+    /**
+     * Metrics of the requests routed to a provider since it was registered. The counters are
+     * {@code requests}, {@code requests.failed}, {@code requests.inFlight}, {@code limit} (of the
+     * requests in flight, see {@link #setAdaptiveLimits(Integer)}) and {@code alive} ({@code 1} if
+     * alive, {@code 0} otherwise).
+     *
+     * @param provider The provider.
+     *
+     * @return Metrics snapshot.
+     *
+     * @throws ProviderNotFoundException Thrown if the provider is not registered.
+     */
+    public MetricsSnapshot getProviderMetrics(Provider provider) throws ProviderNotFoundException {
+        RoutingSnapshot snapshot = this.snapshot;
+        long handle = healthStore.handleOf(provider);
+        int idx = handle == HealthStore.NO_HANDLE ? -1
+                : snapshot.indexOfSlot(HealthStore.slot(handle));
+
+        // Sanity check
+        if (idx < 0) {
+            throw new ProviderNotFoundException(MessageFormat
+                    .format("Provider {0} not registered on this Load Balancer!", provider));
+        }
+
+        Map<String, Long> counters = new LinkedHashMap<>();
+        counters.put("requests", healthStore.getRequests(handle));
+        counters.put("requests.failed", healthStore.getFailedRequests(handle));
+        counters.put("requests.inFlight", healthStore.getRequestsInFlight(handle));
+        counters.put("limit", healthStore.getLimit(handle));
+        counters.put("alive", snapshot.isAlive(idx) ? 1L : 0L);
+
+        return new MetricsSnapshot(counters, Map.of());
+    }
+
+    /**
+     * Pre-compute the selection tables of the strategy for a snapshot about to be published, so
+     * that the request path only reads them (see {@link RoutingSnapshot#getStrategyState()}).
+     * Called on the write path only, by one thread at a time, each time a provider is registered,
+     * unregistered or changes its alive state, and on {@link #refreshStrategyState()}.
+     *
+     * @param snapshot The new providers and their health state.
+     *
+     * @return The selection tables, {@code null} if the strategy needs none.
+     *
+     * @implSpec Returns {@code null}.
+     */
+    protected Object prepare(RoutingSnapshot snapshot) {
+        return null;
+    }
+
+    /**
+     * Publish the current snapshot again with selection tables pre-computed by
+     * {@link #prepare(RoutingSnapshot)}, e. g. after the strategy changed its settings.
+     */
+    protected final void refreshStrategyState() {
+
+        synchronized (snapshotLock) {
+            publish(snapshot);
+        }
+    }
+
+    /**
+     * Change a setting of the strategy for a registered provider (e. g. its weight) and publish
+     * the current snapshot again. The provider can't be unregistered meanwhile, so no setting is
+     * left behind for a provider that is gone.
+     *
+     * @param provider The provider.
+     * @param update Changes the setting.
+     *
+     * @throws ProviderNotFoundException Thrown if the provider is not registered on this Load
+     *         Balancer.
+     */
+    protected final void updateStrategyState(Provider provider, Runnable update)
+            throws ProviderNotFoundException {
+
+        synchronized (snapshotLock) {
+
+            // Sanity check
+            if (!isRegistered(provider)) {
+                throw new ProviderNotFoundException(MessageFormat
+                        .format("Provider {0} not registered on this Load Balancer!", provider));
+            }
+
+            update.run();
+            publish(snapshot);
+        }
+    }
+
+    /**
+     * Forget the settings of the strategy for the previous providers, when all the providers are
+     * replaced (see {@link #registerProviders(List)}). Called on the write path, before the
+     * selection tables of the new providers are pre-computed.
+     *
+     * @implSpec Does nothing.
+     */
+    protected void clearStrategyState() {
+    }
+
+    /**
+     * Select the provider that should handle the next request.
+     *
+     * @param snapshot Current providers and their health state, never empty.
+     *
+     * @return Index of the selected provider in the snapshot.
+     *
+     * @throws MaxLoadException Thrown if all providers are down or overloaded.
+     */
+    protected abstract int select(RoutingSnapshot snapshot) throws MaxLoadException;
+
+    /**
+     * Select the provider that should handle the next request with the given key, avoiding the
+     * given providers (e. g. the ones that timed out). Strategies with a notion of key affinity
+     * override this method, the other ones ignore the key.
+     *
+     * @param snapshot Current providers and their health state, never empty.
+     * @param key Request key, {@code null} if the request has none.
+     * @param excludedProviders Providers that should not be selected, if possible.
+     *
+     * @return Index of the selected provider in the snapshot.
+     *
+     * @throws MaxLoadException Thrown if all providers are down or overloaded.
+     *
+     * @implSpec Returns {@link #select(RoutingSnapshot)}. The caller selects again (a few times)
+     *           while an excluded provider is selected.
+     */
+    protected int select(RoutingSnapshot snapshot, String key, List<Provider> excludedProviders)
+            throws MaxLoadException {
+        return select(snapshot);
+    }
+
+    /**
+     * Select the providers that should handle the requests of a batch, in a single pass over the
+     * snapshot.
+     *
+     * @param snapshot Current providers and their health state, never empty.
+     * @param count Amount of requests, greater than {@code 0}.
+     *
+     * @return Index of the provider selected for each request.
+     *
+     * @throws MaxLoadException Thrown if all providers are down or overloaded.
+     *
+     * @implSpec Deals the requests (see {@link #deal(RoutingSnapshot, int, int)}) starting with the
+     *           provider returned by {@link #select(RoutingSnapshot)}.
+     */
+    protected int[] selectBatch(RoutingSnapshot snapshot, int count) throws MaxLoadException {
+        int idx = select(snapshot);
+        return deal(snapshot, count, snapshot.getAlivePosition(idx));
+    }
+
+    /**
+     * Deal the requests of a batch to the alive providers in turn, each provider taking at most
+     * its free capacity (i. e. the part of its limit of requests in flight not used by its current
+     * load). The load of each provider is read once for the whole batch. Only if the batch doesn't
+     * fit in the free capacity, the remaining requests are dealt in turn to the providers that are
+     * not overloaded, like concurrent requests would be. Providers whose circuit breaker is
+     * half-open only take single probe requests, so they are skipped.
+     *
+     * @param snapshot Current providers and their health state, never empty.
+     * @param count Amount of requests, greater than {@code 0}.
+     * @param aliveOffset Position (see {@link RoutingSnapshot#getAliveIndex(int)}) of the first
+     *        alive provider to deal to.
+     *
+     * @return Index of the provider selected for each request.
+     *
+     * @throws MaxLoadException Thrown if all providers are down or overloaded.
+     */
+    protected final int[] deal(RoutingSnapshot snapshot, int count, int aliveOffset)
+            throws MaxLoadException {
+        int aliveCount = snapshot.getAliveCount();
+        int[] providerIndices = new int[count];
+        int dealt = 0;
+
+        // Providers that are not overloaded, in the order they were dealt their first request,
+        // with their free capacity left
+        int[] open = new int[Math.min(count, aliveCount)];
+        int[] freeSlots = new int[open.length];
+        int openCount = 0;
+
+        for (int i = 0; i < aliveCount && dealt < count; i++) {
+            int idx = snapshot.getAliveIndex((aliveOffset + i) % aliveCount);
+            int free = getFreeSlots(snapshot, idx);
+            if (free == 0) {
+                continue;
+            }
+
+            providerIndices[dealt++] = idx;
+            open[openCount] = idx;
+            freeSlots[openCount++] = free - 1;
+        }
+
+        if (openCount == 0) {
+            throw new MaxLoadException("All providers are down or overloaded!");
+        }
+
+        // Deal the free capacity left in turn, then overload the providers evenly
+        boolean overload = false;
+        while (dealt < count) {
+            boolean dealtAny = false;
+            for (int i = 0; i < openCount && dealt < count; i++) {
+                if (overload || freeSlots[i] > 0) {
+                    providerIndices[dealt++] = open[i];
+                    freeSlots[i]--;
+                    dealtAny = true;
+                }
+            }
+            overload = !dealtAny;
+        }
+
+        return providerIndices;
+    }
+
+    /**
+     * @param max Amount of requests the caller is about to send. The providers are only scanned
+     *        until they are known to take that many, so that sending a few requests into a big
+     *        fleet doesn't read the load of every provider.
+     *
+     * @return Amount of requests the alive providers can take right now, i. e. the sum of their
+     *         free capacities (see {@link #deal(RoutingSnapshot, int, int)}), at most {@code max}.
+     */
+    long getFreeCapacity(long max) {
+        RoutingSnapshot snapshot = this.snapshot;
+        int aliveCount = snapshot.getAliveCount();
+        if (aliveCount == 0) {
+            return 0;
+        }
+
+        // Start at a random provider, so that a few full ones don't make every scan longer
+        int offset = ThreadLocalRandom.current().nextInt(aliveCount);
+        long freeCapacity = 0;
+        for (int i = 0; i < aliveCount && freeCapacity < max; i++) {
+            int idx = snapshot.getAliveIndex((offset + i) % aliveCount);
+            freeCapacity += getFreeSlots(snapshot, idx);
+        }
+        return Math.min(max, freeCapacity);
+    }
+
+    /**
+     * @return Part of the limit of requests in flight of the provider (its capacity, unless
+     *         learned, see {@link #setAdaptiveLimits(Integer)}) not used by its current load, at
+     *         least {@code 1} unless the provider is overloaded. {@code 0} for providers whose
+     *         circuit breaker is half-open.
+     */
+    private int getFreeSlots(RoutingSnapshot snapshot, int idx) {
+        float load = snapshot.getLoad(idx);
+        if (load >= 1.0 || snapshot.getHalfOpenState(idx) != null) {
+            return 0;
+        }
+
+        long limit = healthStore.getLimit(snapshot.getHandle(idx));
+        return (int) Math.max(1, (long) ((1.0 - load) * limit));
+    }
+
+    /**
+     * Select the provider that should handle the next request and, if its circuit breaker is
+     * half-open, take one of its probes.
+     *
+     * @throws MaxLoadException Thrown if all providers are down or overloaded.
+     */
+    private int selectAdmitted(RoutingSnapshot snapshot, String key,
+            List<Provider> excludedProviders) throws MaxLoadException {
+
+        for (int i = 0; i < MAX_PROBE_RESELECTIONS; i++) {
+            int idx;
+            try {
+                idx = key == null && excludedProviders.isEmpty() ? select(snapshot)
+                        : select(snapshot, key, excludedProviders);
+            } catch (MaxLoadException e) {
+                rejectedRequests.increment();
+                throw e;
+            }
+
+            HalfOpenState halfOpenState = snapshot.getHalfOpenState(idx);
+            if (halfOpenState == null || halfOpenState.tryAcquire()) {
+                return idx;
+            }
+        }
+
+        rejectedRequests.increment();
+        throw new MaxLoadException("All providers are down or overloaded!");
+    }
+
+    /**
+     * Like {@link #selectAdmitted(RoutingSnapshot, String, List)}, never returning the given
+     * providers.
+     *
+     * @return Index of the selected provider, or {@code -1} if only the given providers are
+     *         selected.
+     *
+     * @throws MaxLoadException Thrown if all providers are down or overloaded.
+     */
+    private int selectOther(RoutingSnapshot snapshot, String key, List<Provider> providers)
+            throws MaxLoadException {
+
+        for (int i = 0; i < MAX_PROBE_RESELECTIONS; i++) {
+            int idx = selectAdmitted(snapshot, key, providers);
+            if (!providers.contains(snapshot.getProvider(idx))) {
+                return idx;
+            }
+
+            HalfOpenState halfOpenState = snapshot.getHalfOpenState(idx);
+            if (halfOpenState != null) {
+                halfOpenState.release(false);
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param provider The provider.
+     *
+     * @return {@code True} if the provider is registered on this load balancer, {@code False}
+     *         otherwise.
+     */
+    boolean isRegistered(Provider provider) {
+        return healthStore.contains(provider);
+    }
+
+    public void registerProviders(List<Provider> providers) {
+
+        // Replace existing providers
+        synchronized (snapshotLock) {
+            HealthCheckScheduler healthCheckScheduler = healthCheckScheduler();
+            healthCheckScheduler.cancelAll();
+            healthStore.clear();
+            clearStrategyState();
+
+            long[] handles = new long[providers.size()];
+            for (int i = 0; i < providers.size(); i++) {
+                Provider provider = providers.get(i);
+                handles[i] = healthStore.handleOf(provider);
+
+                // Same provider listed more than once
+                if (handles[i] != HealthStore.NO_HANDLE) {
+                    continue;
+                }
+
+                handles[i] = healthStore.allocate(provider);
+                healthCheckScheduler.schedule(provider, handles[i]);
+            }
+
+            publish(RoutingSnapshot.of(providers, handles, loadTracker()));
+        }
+
+        dispatchQueued();
+    }
+
+    public void addProvider(Provider provider) throws ProviderAlreadyRegisteredException {
+
+        synchronized (snapshotLock) {
+
+            // Sanity check
+            if (healthStore.contains(provider)) {
+                throw new ProviderAlreadyRegisteredException(
+                        MessageFormat.format("Provider {0} already registered!", provider));
+            }
+
+            long handle = healthStore.allocate(provider);
+            publish(snapshot.withProvider(provider, handle));
+            healthCheckScheduler().schedule(provider, handle);
+        }
+
+        dispatchQueued();
+    }
+
+    public void removeProvider(Provider provider) throws ProviderNotFoundException {
+
+        synchronized (snapshotLock) {
+
+            // Sanity check
+            long handle = healthStore.handleOf(provider);
+            if (handle == HealthStore.NO_HANDLE) {
+                throw new ProviderNotFoundException(MessageFormat
+                        .format("Provider {0} not registered on this Load Balancer!", provider));
+            }
+
+            healthStore.free(provider);
+            publish(snapshot.withoutProvider(snapshot.indexOfSlot(HealthStore.slot(handle))));
+            healthCheckScheduler().cancel(provider);
+        }
+    }
+
+    /**
+     * Create the health check scheduler the first time a provider is registered, so that the
+     * constructor doesn't hand out references to this load balancer before it is fully built.
+     * Must be called under {@link #snapshotLock}.
+     */
+    private HealthCheckScheduler healthCheckScheduler() {
+        HealthCheckScheduler healthCheckScheduler = this.healthCheckScheduler;
+        if (healthCheckScheduler == null) {
+
+            // Check from time to time if the providers are alive
+            healthCheckScheduler = new HealthCheckScheduler(
+                    MessageFormat.format("provider_alive_timer_{0}", UUID.randomUUID()),
+                    checkAliveInterval, aliveTimeout, this::execute, this::updateAlivePings);
+            healthCheckScheduler.setMaxConcurrentChecks(maxConcurrentChecks);
+            this.healthCheckScheduler = healthCheckScheduler;
+        }
+        return healthCheckScheduler;
+    }
+
+    /**
+     * Record the outcome of a health check (see {@link HealthCheckScheduler.Listener}).
+     *
+     * @implNote Only the alive state transitions are logged, so that the checks of healthy
+     *           providers don't log (nor allocate) anything.
+     */
+    final int updateAlivePings(Provider provider, long handle, Boolean result,
+            Throwable exception) {
+
+        if (exception != null || !result) {
+
+            // Reset the number of pings
+            int previousPings = healthStore.resetPings(handle, PROVIDER_UNAVAILABLE_RESET_PINGS);
+            if (previousPings == HealthStore.NOT_REGISTERED) {
+                return HealthStore.NOT_REGISTERED;
+            }
+
+            // Provider was alive until now
+            if (previousPings >= 0) {
+                logger.error("Provider {} not responding! Marking it as not alive! Exception: {}",
+                        provider, exception != null ? exception.getClass().getSimpleName() : null);
+                publishAliveState(handle);
+            }
+
+            return PROVIDER_UNAVAILABLE_RESET_PINGS;
+        } else {
+
+            // Increment the count of subsequent successful pings
+            int pings = healthStore.recordPing(handle);
+            if (pings == HealthStore.NOT_REGISTERED) {
+                return HealthStore.NOT_REGISTERED;
+            }
+
+            // Provider just had enough subsequent successful pings to become alive again
+            if (pings == 0) {
+                logger.info("Provider {} alive again! Probing it before sending its full traffic.",
+                        provider);
+                publishAliveState(handle);
+                dispatchQueued();
+            }
+
+            return pings;
+        }
+    }
+
+    /**
+     * Publish a new snapshot if the alive state of the provider (as defined by its ping count)
+     * differs from the one seen by the request path.
+     */
+    private void publishAliveState(long handle) {
+
+        synchronized (snapshotLock) {
+            int pings = healthStore.getPings(handle);
+            int idx = snapshot.indexOfSlot(HealthStore.slot(handle));
+
+            // Provider was unregistered meanwhile
+            if (pings == HealthStore.NOT_REGISTERED || idx < 0) {
+                return;
+            }
+
+            // Providers that become alive again are probed before getting their full traffic
+            boolean alive = pings >= 0;
+            if (snapshot.isAlive(idx) != alive) {
+                publish(snapshot.withAlive(idx, alive, new HalfOpenState(maxHalfOpenProbes)));
+                (alive ? providersUp : providersDown).increment();
+            }
+        }
+    }
+
+    /**
+     * Record the outcome of a request and eject the provider if it turned into an outlier.
+     *
+     * @param snapshot Snapshot the provider was selected from.
+     * @param idx Index of the provider in the snapshot.
+     * @param start Time (see {@link System#nanoTime()}) the request was sent to the provider at.
+     * @param requestStart Time the request was first sent at, earlier than {@code start} for a
+     *        hedge. The provider is judged by its own latency, the request latency metric and the
+     *        hedging delay by the latency the caller sees.
+     * @param exception Exception the request failed with, {@code null} if it succeeded.
+     */
+    private void recordRequest(RoutingSnapshot snapshot, int idx, long start, long requestStart,
+            Throwable exception) {
+        long handle = snapshot.getHandle(idx);
+        HalfOpenState halfOpenState = snapshot.getHalfOpenState(idx);
+
+        if (exception == null) {
+            long now = System.nanoTime();
+            long latency = now - start;
+            finishRequest(snapshot, idx, true, false);
+            requestLatency.record(now - requestStart);
+            long averageLatency = healthStore.recordRequestSuccess(handle, latency);
+            adaptLimit(handle, latency, false);
+
+            HedgePolicy hedgePolicy = this.hedgePolicy;
+            if (hedgePolicy != null) {
+                hedgePolicy.recordSuccess(now - requestStart);
+            }
+            boolean probesPassed = halfOpenState != null && halfOpenState.release(true);
+
+            // Don't build the ejection reason for each slow request while no more providers can be
+            // ejected. A slow provider that can't be ejected still gets its breaker closed, it would
+            // stay half-open otherwise.
+            Duration maxAverageLatency = this.maxAverageLatency;
+            boolean ejected = maxAverageLatency != null
+                    && averageLatency > maxAverageLatency.toNanos() && canEject(this.snapshot)
+                    && eject(handle, MessageFormat.format("Average latency of {0} ms",
+                            Duration.ofNanos(averageLatency).toMillis()));
+            if (!ejected && probesPassed) {
+                close(handle, halfOpenState);
+            }
+            return;
+        }
+
+        Throwable cause = exception instanceof CompletionException && exception.getCause() != null
+                ? exception.getCause()
+                : exception;
+
+        // Overloaded providers are healthy, they just can't handle more requests right now, and
+        // cancelled requests say nothing about the provider
+        if (cause instanceof MaxLoadException || cause instanceof CancellationException) {
+            finishRequest(snapshot, idx, false, false);
+            if (cause instanceof MaxLoadException) {
+                rejectedRequests.increment();
+                adaptLimit(handle, System.nanoTime() - start, true);
+            }
+            if (halfOpenState != null) {
+                halfOpenState.release(false);
+            }
+            return;
+        }
+
+        // A failed probe opens the breaker again right away
+        finishRequest(snapshot, idx, true, true);
+        adaptLimit(handle, System.nanoTime() - start, true);
+        int failures = healthStore.recordRequestFailure(handle);
+        if (halfOpenState != null) {
+            halfOpenState.release(false);
+            eject(handle, MessageFormat.format("Probe request failed: {0}",
+                    cause.getClass().getSimpleName()));
+        } else if (failures >= maxConsecutiveFailures && canEject(this.snapshot)) {
+
+            // Failures beyond the threshold, while the ejection limit was reached, still count
+            eject(handle, MessageFormat.format("{0} subsequent failed requests, last one: {1}",
+                    failures, cause.getClass().getSimpleName()));
+        }
+    }
+
+    /**
+     * Adapt the limit of requests in flight of the provider, if adaptive limits are enabled, and
+     * hand the new slots to the queued requests.
+     */
+    private void adaptLimit(long handle, long latency, boolean failed) {
+        AdaptiveLimit adaptiveLimit = this.adaptiveLimit;
+        if (adaptiveLimit != null
+                && healthStore.adaptLimit(handle, latency, failed, adaptiveLimit)) {
+            dispatchQueued();
+        }
+    }
+
+    private void startRequest(RoutingSnapshot snapshot, int idx) {
+        requestsInFlight.increment();
+        healthStore.startRequest(snapshot.getHandle(idx));
+    }
+
+    /**
+     * @param completed {@code True} if the provider handled the request, {@code False} if it was
+     *        rejected or cancelled.
+     * @param failed {@code True} if the request failed, {@code False} otherwise.
+     */
+    private void finishRequest(RoutingSnapshot snapshot, int idx, boolean completed,
+            boolean failed) {
+        requestsInFlight.decrement();
+        healthStore.finishRequest(snapshot.getHandle(idx), completed, failed);
+        if (completed) {
+            completedRequests.increment();
+        }
+        if (failed) {
+            failedRequests.increment();
+        }
+
+        // Hand the slot to the next queued request
+        dispatchQueued();
+    }
+
+    /**
+     * Close the circuit breaker of a half-open provider, so that it gets its full traffic.
+     */
+    private void close(long handle, HalfOpenState halfOpenState) {
+
+        synchronized (snapshotLock) {
+            int idx = snapshot.indexOfSlot(HealthStore.slot(handle));
+
+            // Provider was unregistered, ejected or marked as not alive meanwhile
+            if (idx < 0 || snapshot.getHalfOpenState(idx) != halfOpenState) {
+                return;
+            }
+
+            logger.info("Provider {} passed its probe requests!", snapshot.getProvider(idx));
+            publish(snapshot.withAlive(idx, true, null));
+        }
+
+        dispatchQueued();
+    }
+
+    /**
+     * Replace the snapshot seen by the request path. Must be called while holding
+     * {@link #snapshotLock}.
+     */
+    private void publish(RoutingSnapshot snapshot) {
+        this.snapshot = snapshot.withStrategyState(prepare(snapshot));
+    }
+
+    /**
+     * Hand the slots of the providers that just became available to the queued requests.
+     */
+    private void dispatchQueued() {
+        AdmissionQueue admissionQueue = this.admissionQueue;
+        if (admissionQueue != null) {
+            admissionQueue.dispatch();
+        }
+    }
+
+    /**
+     * Mark the provider as not alive until it passes its health checks again, unless too many
+     * providers are not alive already (see {@link #setMaxEjectionPercent(Integer)}).
+     *
+     * @return {@code True} if the provider was ejected, {@code False} otherwise.
+     */
+    private boolean eject(long handle, String reason) {
+
+        // Don't contend on the lock while the limit is reached
+        if (!canEject(snapshot)) {
+            return false;
+        }
+
+        synchronized (snapshotLock) {
+            int idx = snapshot.indexOfSlot(HealthStore.slot(handle));
+
+            // Provider was unregistered or marked as not alive meanwhile
+            if (idx < 0 || snapshot.getHandle(idx) != handle || !snapshot.isAlive(idx)) {
+                return false;
+            }
+
+            Provider provider = snapshot.getProvider(idx);
+            if (!canEject(snapshot)) {
+                logger.warn("Provider {} not ejected, too many providers are not alive! {}",
+                        provider, reason);
+                return false;
+            }
+
+            if (healthStore.resetPings(handle, PROVIDER_UNAVAILABLE_RESET_PINGS) < 0) {
+                return false;
+            }
+
+            logger.error("Provider {} ejected! Marking it as not alive! {}", provider, reason);
+            publish(snapshot.withAlive(idx, false, null));
+            providersEjected.increment();
+            return true;
+        }
+    }
+
+    private boolean canEject(RoutingSnapshot snapshot) {
+        int notAlive = snapshot.size() - snapshot.getAliveCount();
+        return (notAlive + 1) * 100 <= maxEjectionPercent * snapshot.size();
+    }
 }
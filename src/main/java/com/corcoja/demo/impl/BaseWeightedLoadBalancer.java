@@ -0,0 +1,91 @@
+package com.corcoja.demo.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import com.corcoja.demo.error.MaxLoadException;
+import com.corcoja.demo.error.ProviderNotFoundException;
+import com.corcoja.demo.protocol.Provider;
+
+/**
+ * Base for Load Balancers that send to each provider a share of the requests proportional to its
+ * weight. Unless set explicitly with {@link #setWeight(Provider, Integer)}, the weight of a
+ * provider is its capacity (see {@link Provider#getCapacity()}).
+ *
+ * @implNote Subclasses pre-compute their selection tables in {@link #prepare(RoutingSnapshot)},
+ *           i. e. each time a new snapshot is published or a weight changes. The tables are rebuilt
+ *           from scratch, in linear time: they are indexed by alive position, which an alive state
+ *           change shifts for all the following providers.
+ */
+public abstract class BaseWeightedLoadBalancer extends BaseLoadBalancer {
+
+    private final Map<Provider, Integer> weights = new ConcurrentHashMap<>();
+
+    protected BaseWeightedLoadBalancer(Long checkAliveInterval, Long aliveTimeout) {
+        super(checkAliveInterval, aliveTimeout);
+    }
+
+    /**
+     * Override the weight of a registered provider.
+     *
+     * @param provider Registered provider.
+     * @param weight New weight, must be greater than {@code 0}.
+     *
+     * @throws ProviderNotFoundException Thrown if the provider is not registered on this Load
+     *         Balancer.
+     */
+    public void setWeight(Provider provider, Integer weight) throws ProviderNotFoundException {
+
+        // Sanity check
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Provider weight must be greater than 0!");
+        }
+
+        updateStrategyState(provider, () -> weights.put(provider, weight));
+    }
+
+    /**
+     * @param provider The provider.
+     *
+     * @return Explicit weight of the provider if set, its capacity otherwise.
+     */
+    public Integer getWeight(Provider provider) {
+        Integer weight = weights.get(provider);
+        return weight != null ? weight : Math.max(1, provider.getCapacity());
+    }
+
+    @Override
+    protected void clearStrategyState() {
+        weights.clear();
+    }
+
+    @Override
+    public void removeProvider(Provider provider) throws ProviderNotFoundException {
+        super.removeProvider(provider);
+        weights.remove(provider);
+    }
+
+    /**
+     * Scan the alive providers, starting with the given one, for a provider that is not
+     * overloaded. Used when the provider picked from the selection table is at its full load.
+     *
+     * @param snapshot Current providers and their health state.
+     * @param aliveOffset Index of the first alive provider to check.
+     *
+     * @return Index of the provider in the snapshot.
+     *
+     * @throws MaxLoadException Thrown if all alive providers are overloaded.
+     */
+    protected int selectNotOverloaded(RoutingSnapshot snapshot, int aliveOffset)
+            throws MaxLoadException {
+        int aliveCount = snapshot.getAliveCount();
+
+        for (int i = 0; i < aliveCount; i++) {
+            int idx = snapshot.getAliveIndex((aliveOffset + i) % aliveCount);
+            if (snapshot.getLoad(idx) < 1.0) {
+                return idx;
+            }
+        }
+
+        throw new MaxLoadException("All providers are down or overloaded!");
+    }
+}
@@ -0,0 +1,184 @@
+package com.corcoja.demo.impl;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import com.corcoja.demo.error.MaxLoadException;
+import com.corcoja.demo.protocol.Provider;
+
+/**
+ * Load Balancer that sends the requests with the same key (see {@link #get(String)}) to the same
+ * provider, so that the providers can cache what they computed for a key. The providers are placed
+ * on a hash ring through several virtual nodes each, and a key belongs to the first virtual node
+ * after its own hash. Registering or unregistering a provider only moves the keys of its virtual
+ * nodes, i. e. about {@code 1/N} of the keys. When the owner of a key is down or at its full load,
+ * the request goes to the next provider on the ring that is alive and not overloaded.
+ *
+ * Requests without a key are sent to a random position of the ring.
+ *
+ * @implNote The ring is built on the write path (see {@link #prepare(RoutingSnapshot)}) when the
+ *           providers are registered or unregistered, alive state changes reuse the previous one.
+ *           Looking a key up is a binary search over a primitive array, and never allocates.
+ */
+public class ConsistentHashLoadBalancer extends BaseLoadBalancer {
+
+    private static final int DEFAULT_VIRTUAL_NODES = 100;
+
+    /**
+     * Each ring entry packs the position of a virtual node (upper bits) with the index of its
+     * provider in the snapshot (lower bits), so that the ring is a single sorted {@code long[]}.
+     */
+    private static final int OWNER_BITS = 24;
+
+    private static final long OWNER_MASK = (1L << OWNER_BITS) - 1;
+
+    private static final class HashRing {
+
+        /**
+         * Snapshot the owner indices refer to.
+         */
+        private final RoutingSnapshot source;
+
+        private final long[] entries;
+
+        private HashRing(RoutingSnapshot source, long[] entries) {
+            this.source = source;
+            this.entries = entries;
+        }
+    }
+
+    private final Integer virtualNodes;
+
+    /**
+     * Ring built for the last snapshot with other providers.
+     */
+    private volatile HashRing ring;
+
+    /**
+     * Create a Load Balancer with {@value #DEFAULT_VIRTUAL_NODES} virtual nodes for each provider.
+     *
+     * @param checkAliveInterval Interval (in milliseconds) between provider health checks.
+     * @param aliveTimeout Timeout (in milliseconds) of a provider health check.
+     */
+    public ConsistentHashLoadBalancer(Long checkAliveInterval, Long aliveTimeout) {
+        this(checkAliveInterval, aliveTimeout, DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * @param checkAliveInterval Interval (in milliseconds) between provider health checks.
+     * @param aliveTimeout Timeout (in milliseconds) of a provider health check.
+     * @param virtualNodes Amount of virtual nodes of each provider on the ring. More virtual nodes
+     *        spread the keys more evenly, at the cost of memory.
+     */
+    public ConsistentHashLoadBalancer(Long checkAliveInterval, Long aliveTimeout,
+            Integer virtualNodes) {
+        super(checkAliveInterval, aliveTimeout);
+
+        // Sanity check
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("Virtual nodes must be greater than 0!");
+        }
+
+        this.virtualNodes = virtualNodes;
+    }
+
+    @Override
+    protected int select(RoutingSnapshot snapshot) throws MaxLoadException {
+        return selectFrom(snapshot, ThreadLocalRandom.current().nextLong(), List.of());
+    }
+
+    @Override
+    protected int select(RoutingSnapshot snapshot, String key, List<Provider> excludedProviders)
+            throws MaxLoadException {
+        long position = key != null ? hash(key) : ThreadLocalRandom.current().nextLong();
+        return selectFrom(snapshot, position, excludedProviders);
+    }
+
+    /**
+     * Walk the ring from the given position to the first provider that can take the request.
+     */
+    private int selectFrom(RoutingSnapshot snapshot, long position,
+            List<Provider> excludedProviders) throws MaxLoadException {
+
+        // Check if there are alive provides
+        if (snapshot.getAliveCount() == 0) {
+            throw new MaxLoadException("All providers are down or overloaded!");
+        }
+
+        HashRing ring = (HashRing) snapshot.getStrategyState();
+
+        // Snapshot not published by this load balancer, e. g. a subset of the providers
+        if (ring == null) {
+            ring = (HashRing) prepare(snapshot);
+        }
+
+        long[] entries = ring.entries;
+        int start = Arrays.binarySearch(entries, position & ~OWNER_MASK);
+        if (start < 0) {
+            start = -start - 1;
+        }
+
+        for (int i = 0; i < entries.length; i++) {
+            int idx = (int) (entries[(start + i) % entries.length] & OWNER_MASK);
+            if (snapshot.isAlive(idx) && snapshot.getLoad(idx) < 1.0
+                    && !excludedProviders.contains(snapshot.getProvider(idx))) {
+                return idx;
+            }
+        }
+
+        throw new MaxLoadException("All providers are down or overloaded!");
+    }
+
+    @Override
+    protected Object prepare(RoutingSnapshot snapshot) {
+        HashRing ring = this.ring;
+        if (ring != null && ring.source.hasSameProviders(snapshot)) {
+            return ring;
+        }
+
+        // Sanity check
+        if (snapshot.size() > OWNER_MASK) {
+            throw new IllegalStateException("Too many providers for a consistent hash ring!");
+        }
+
+        // Virtual nodes are placed based on the slot of the provider, which doesn't change while
+        // it is registered
+        long[] entries = new long[snapshot.size() * virtualNodes];
+        for (int idx = 0; idx < snapshot.size(); idx++) {
+            long slot = HealthStore.slot(snapshot.getHandle(idx));
+            for (int node = 0; node < virtualNodes; node++) {
+                long position = mix((slot << 32) | node);
+                entries[idx * virtualNodes + node] = (position & ~OWNER_MASK) | idx;
+            }
+        }
+        Arrays.sort(entries);
+
+        ring = new HashRing(snapshot, entries);
+        this.ring = ring;
+        return ring;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the key, mixed so that similar keys land far apart on the ring.
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Finalizer of the MurmurHash3 64-bit hash.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
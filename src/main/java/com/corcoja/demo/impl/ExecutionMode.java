@@ -0,0 +1,50 @@
+package com.corcoja.demo.impl;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads used by a {@link BaseLoadBalancer} for the provider health checks and for the blocking
+ * provider invocations of {@link BaseLoadBalancer#getAsync()}.
+ */
+public enum ExecutionMode {
+
+    /**
+     * Cached pool of daemon platform threads, named {@value #WORKER_THREAD_PREFIX} followed by a
+     * number. Asynchronous requests rely on {@link
+     * com.corcoja.demo.protocol.Provider#getAsync()}.
+     */
+    PLATFORM_THREADS {
+        @Override
+        ExecutorService createExecutor() {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable,
+                        WORKER_THREAD_PREFIX + workerThreadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    },
+
+    /**
+     * One virtual thread per task. Asynchronous requests invoke the blocking
+     * {@link com.corcoja.demo.protocol.Provider#get()} on a virtual thread, which only costs a few
+     * hundred bytes of heap while the provider blocks.
+     */
+    VIRTUAL_THREADS {
+        @Override
+        ExecutorService createExecutor() {
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+    };
+
+    /**
+     * Name prefix of the platform threads created by {@link #PLATFORM_THREADS}.
+     */
+    public static final String WORKER_THREAD_PREFIX = "load_balancer_worker_";
+
+    private static final AtomicInteger workerThreadCount = new AtomicInteger();
+
+    abstract ExecutorService createExecutor();
+}
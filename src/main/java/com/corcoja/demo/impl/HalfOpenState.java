@@ -0,0 +1,62 @@
+package com.corcoja.demo.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Circuit breaker state of a provider that just became alive again (after failing its health checks
+ * or being ejected). Only a limited amount of probe requests are sent to it at the same time, and
+ * its breaker closes once enough of them succeed.
+ */
+final class HalfOpenState {
+
+    private final int maxProbes;
+
+    private final AtomicInteger probesInFlight = new AtomicInteger();
+
+    private final AtomicInteger successfulProbes = new AtomicInteger();
+
+    /**
+     * @param maxProbes Amount of probe requests allowed at the same time, which is also the amount
+     *        of successful probes needed to close the breaker.
+     */
+    HalfOpenState(int maxProbes) {
+        this.maxProbes = maxProbes;
+    }
+
+    /**
+     * @return {@code True} if the request may be sent to the provider as a probe, {@code False} if
+     *         too many probes are in flight already.
+     */
+    boolean tryAcquire() {
+
+        while (true) {
+            int probes = probesInFlight.get();
+            if (probes >= maxProbes) {
+                return false;
+            }
+            if (probesInFlight.compareAndSet(probes, probes + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Record the outcome of a probe acquired with {@link #tryAcquire()}.
+     *
+     * @param success {@code True} if the probe succeeded, {@code False} otherwise.
+     *
+     * @return {@code True} if enough probes succeeded to close the breaker, {@code False}
+     *         otherwise.
+     */
+    boolean release(boolean success) {
+        probesInFlight.decrementAndGet();
+        return success && successfulProbes.incrementAndGet() == maxProbes;
+    }
+
+    /**
+     * @return Share of the allowed probes that are in flight, between {@code 0.0} and {@code 1.0}.
+     */
+    float getLoad() {
+        return (float) probesInFlight.get() / (float) maxProbes;
+    }
+}
@@ -0,0 +1,169 @@
+package com.corcoja.demo.impl;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Timer that runs tasks after a delay using a hashed timing wheel. All the tasks are handled by a
+ * single thread, scheduling and expiring a task take constant time regardless of how many tasks are
+ * pending, and a task runs at most one {@link #tickDuration} after its deadline. While no task is
+ * pending, the timer thread sleeps until one is scheduled.
+ *
+ * @implNote Tasks run on the timer thread and must be short, otherwise they delay all the other
+ *           tasks.
+ */
+final class HashedWheelTimer {
+
+    /**
+     * Timer shared by this package: the permit releases of the {@link SimpleProvider} instances,
+     * the admission queue timeouts, the hedged requests and the retries of the
+     * {@link LoadBalancerPublisher} streams.
+     */
+    static final HashedWheelTimer SHARED =
+            new HashedWheelTimer("provider_release_timer", Duration.ofMillis(1), 1024);
+
+    private static Logger logger = LogManager.getLogger(HashedWheelTimer.class);
+
+    private static final class Timeout {
+
+        private final Runnable task;
+
+        private final long deadline;
+
+        private long remainingRounds;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+    }
+
+    private final long tickDuration;
+
+    private final long startTime;
+
+    /**
+     * Pending tasks, one bucket per tick of a wheel round. Only accessed by the timer thread.
+     */
+    private final ArrayDeque<Timeout>[] wheel;
+
+    /**
+     * Tasks scheduled since the last tick, not yet placed in their wheel buckets.
+     */
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Tasks placed in the wheel buckets and not run yet. Only accessed by the timer thread.
+     */
+    private int pending;
+
+    /**
+     * Whether the timer thread sleeps until a task is scheduled.
+     */
+    private volatile boolean idle;
+
+    private final Thread thread;
+
+    /**
+     * @param name Name of the timer thread.
+     * @param tickDuration Precision of the timer.
+     * @param ticksPerWheel Number of buckets, must be a power of two.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    HashedWheelTimer(String name, Duration tickDuration, int ticksPerWheel) {
+
+        // Sanity check
+        if (tickDuration.isNegative() || tickDuration.isZero()) {
+            throw new IllegalArgumentException("Tick duration must be positive!");
+        }
+        if (ticksPerWheel <= 0 || Integer.bitCount(ticksPerWheel) != 1) {
+            throw new IllegalArgumentException("Ticks per wheel must be a power of two!");
+        }
+
+        this.tickDuration = tickDuration.toNanos();
+        this.wheel = new ArrayDeque[ticksPerWheel];
+        for (int i = 0; i < ticksPerWheel; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+
+        startTime = System.nanoTime();
+
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Run the task once the delay has passed.
+     *
+     * @param task The task.
+     * @param delay The delay.
+     */
+    void schedule(Runnable task, Duration delay) {
+        scheduled.add(new Timeout(task, System.nanoTime() + delay.toNanos()));
+
+        // Checked after adding the task, so that the timer thread either sees it or is woken up
+        if (idle) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void run() {
+        int mask = wheel.length - 1;
+
+        for (long tick = 0;; tick++) {
+
+            // Nothing to run, sleep until a task is scheduled instead of waking up at every tick
+            if (pending == 0 && scheduled.isEmpty()) {
+                idle = true;
+                while (scheduled.isEmpty()) {
+                    LockSupport.park(this);
+                }
+                idle = false;
+
+                // The buckets of the ticks slept through are empty
+                tick = Math.max(tick, (System.nanoTime() - startTime) / tickDuration);
+            }
+
+            // Wait until the end of the current tick
+            long tickDeadline = startTime + (tick + 1) * tickDuration;
+            for (long now = System.nanoTime(); now < tickDeadline; now = System.nanoTime()) {
+                LockSupport.parkNanos(tickDeadline - now);
+            }
+
+            // Place the newly scheduled tasks in the bucket of the tick they expire in. Tasks that
+            // already expired go to the current bucket.
+            for (Timeout timeout = scheduled.poll(); timeout != null; timeout = scheduled.poll()) {
+                long expiryTick = Math.max(tick, (timeout.deadline - startTime) / tickDuration);
+                timeout.remainingRounds = (expiryTick - tick) / wheel.length;
+                wheel[(int) (expiryTick & mask)].add(timeout);
+                pending++;
+            }
+
+            // Run the expired tasks of the current bucket, the others will expire in a later round
+            ArrayDeque<Timeout> bucket = wheel[(int) (tick & mask)];
+            for (int i = bucket.size(); i > 0; i--) {
+                Timeout timeout = bucket.poll();
+                if (timeout.remainingRounds > 0) {
+                    timeout.remainingRounds--;
+                    bucket.add(timeout);
+                    continue;
+                }
+
+                // A failing task must not stop the thread, the other tasks still have to run
+                pending--;
+                try {
+                    timeout.task.run();
+                } catch (Throwable e) {
+                    logger.error("Timer task {} failed! Exception: {}", timeout.task,
+                            e.getClass().getSimpleName());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.corcoja.demo.impl;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.corcoja.demo.metrics.LatencyHistogram;
+import com.corcoja.demo.protocol.Provider;
+
+/**
+ * Schedules the health checks of the providers registered on a {@link BaseLoadBalancer}. Each
+ * provider is checked on its own schedule, starting at a random phase of the check interval, so the
+ * checks are spread evenly over time instead of all being sent at once. The interval adapts to the
+ * provider state: providers that are not alive are checked twice as often, providers that passed
+ * {@link #STEADY_PINGS} subsequent checks half as often. A check that timed out is reported right
+ * away, but the provider is not checked again until it returns, so a hanging provider blocks at
+ * most one thread.
+ */
+final class HealthCheckScheduler {
+
+    /**
+     * Receives the outcome of each health check.
+     */
+    interface Listener {
+
+        /**
+         * @param provider Checked provider.
+         * @param handle {@link HealthStore} handle the provider was scheduled with.
+         * @param result Result of {@link Provider#check()}, {@code null} if it failed.
+         * @param exception Exception thrown by the check (e. g. timeout), {@code null} otherwise.
+         *
+         * @return Amount of subsequent successful pings of the provider after this check, or
+         *         {@link HealthStore#NOT_REGISTERED} if the provider is no longer registered.
+         */
+        int checked(Provider provider, long handle, Boolean result, Throwable exception);
+    }
+
+    /**
+     * Amount of subsequent successful pings after which a provider is considered steady.
+     */
+    static final int STEADY_PINGS = 5;
+
+    /**
+     * Maximum relative deviation of a check from its schedule, so that providers registered at the
+     * same time drift apart.
+     */
+    private static final double JITTER = 0.1;
+
+    private static final class Check {
+
+        private final Provider provider;
+
+        private final long handle;
+
+        private volatile ScheduledFuture<?> future;
+
+        private volatile boolean cancelled;
+
+        private Check(Provider provider, long handle) {
+            this.provider = provider;
+            this.handle = handle;
+        }
+    }
+
+    private final ScheduledThreadPoolExecutor timer;
+
+    private final long checkAliveInterval;
+
+    private final long aliveTimeout;
+
+    private final Executor executor;
+
+    private final Listener listener;
+
+    private final Map<Provider, Check> checks = new ConcurrentHashMap<>();
+
+    private final AtomicInteger checksInFlight = new AtomicInteger();
+
+    private volatile int maxConcurrentChecks = Integer.MAX_VALUE;
+
+    /**
+     * Providers that were not checked yet during the current sweep.
+     */
+    private final Set<Provider> sweepRemaining = ConcurrentHashMap.newKeySet();
+
+    private volatile long sweepStart = System.nanoTime();
+
+    private volatile Duration lastSweepDuration = Duration.ZERO;
+
+    private final LatencyHistogram checkLatency = new LatencyHistogram();
+
+    /**
+     * @param name Name of the timer thread.
+     * @param checkAliveInterval Interval (in milliseconds) between the checks of a provider.
+     * @param aliveTimeout Timeout (in milliseconds) of a check.
+     * @param executor Executor the checks run on.
+     * @param listener Receives the outcome of each check.
+     */
+    HealthCheckScheduler(String name, long checkAliveInterval, long aliveTimeout,
+            Executor executor, Listener listener) {
+        this.checkAliveInterval = checkAliveInterval;
+        this.aliveTimeout = aliveTimeout;
+        this.executor = executor;
+        this.listener = listener;
+
+        timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Start checking the provider, at a random phase of the check interval.
+     *
+     * @param provider The provider.
+     * @param handle {@link HealthStore} handle of the provider, passed back to the listener.
+     */
+    void schedule(Provider provider, long handle) {
+        Check check = new Check(provider, handle);
+        Check previous = checks.put(provider, check);
+        if (previous != null) {
+            cancel(previous);
+        }
+
+        sweepRemaining.add(provider);
+        scheduleNext(check, ThreadLocalRandom.current().nextLong(checkAliveInterval));
+    }
+
+    /**
+     * Stop checking the provider.
+     *
+     * @param provider The provider.
+     */
+    void cancel(Provider provider) {
+        Check check = checks.remove(provider);
+        if (check != null) {
+            cancel(check);
+        }
+
+        if (sweepRemaining.remove(provider)) {
+            completeSweep();
+        }
+    }
+
+    /**
+     * Stop checking all providers.
+     */
+    void cancelAll() {
+        checks.keySet().forEach(this::cancel);
+    }
+
+    /**
+     * @param maxConcurrentChecks Maximum amount of checks in flight at the same time, including
+     *        the timed out ones that did not return yet. Checks over the limit are postponed.
+     */
+    void setMaxConcurrentChecks(int maxConcurrentChecks) {
+        this.maxConcurrentChecks = maxConcurrentChecks;
+    }
+
+    /**
+     * @return Time it took to check every registered provider at least once, during the last
+     *         completed sweep. {@link Duration#ZERO} until the first sweep completes.
+     */
+    Duration getLastSweepDuration() {
+        return lastSweepDuration;
+    }
+
+    /**
+     * @return Latencies of the checks, including the failed and timed out ones.
+     */
+    LatencyHistogram getCheckLatency() {
+        return checkLatency;
+    }
+
+    private void cancel(Check check) {
+        check.cancelled = true;
+
+        ScheduledFuture<?> future = check.future;
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    private void scheduleNext(Check check, long delay) {
+        if (!check.cancelled) {
+            check.future = timer.schedule(() -> run(check), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void run(Check check) {
+        if (check.cancelled) {
+            return;
+        }
+
+        // Too many checks in flight, try again a bit later
+        if (checksInFlight.incrementAndGet() > maxConcurrentChecks) {
+            checksInFlight.decrementAndGet();
+            scheduleNext(check, jitter(checkAliveInterval / 10));
+            return;
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<Boolean> future =
+                CompletableFuture.supplyAsync(check.provider::check, executor);
+
+        // @formatter:off
+        future.copy()
+                .orTimeout(aliveTimeout, TimeUnit.MILLISECONDS)
+                .whenComplete((result, e) -> completed(check, future, start, result, e));
+        // @formatter:on
+    }
+
+    private void completed(Check check, CompletableFuture<Boolean> future, long start,
+            Boolean result, Throwable exception) {
+        checkLatency.record(System.nanoTime() - start);
+        int pings = check.cancelled ? HealthStore.NOT_REGISTERED
+                : listener.checked(check.provider, check.handle, result, exception);
+        if (pings != HealthStore.NOT_REGISTERED && sweepRemaining.remove(check.provider)) {
+            completeSweep();
+        }
+
+        // A timed out check may still block its thread, so it keeps its slot and the provider is
+        // not checked again until it returns
+        future.whenComplete((r, e) -> returned(check, pings));
+    }
+
+    private void returned(Check check, int pings) {
+        checksInFlight.decrementAndGet();
+        if (check.cancelled || pings == HealthStore.NOT_REGISTERED) {
+            return;
+        }
+
+        // Check sick providers more often and steady ones less often
+        long interval = checkAliveInterval;
+        if (pings < 0) {
+            interval = checkAliveInterval / 2;
+        } else if (pings >= STEADY_PINGS) {
+            interval = checkAliveInterval * 2;
+        }
+
+        scheduleNext(check, jitter(interval));
+    }
+
+    private void completeSweep() {
+
+        synchronized (sweepRemaining) {
+            if (!sweepRemaining.isEmpty()) {
+                return;
+            }
+
+            // No providers left to check means there was no sweep, the providers registered from
+            // now on start a new one
+            long now = System.nanoTime();
+            if (!checks.isEmpty()) {
+                lastSweepDuration = Duration.ofNanos(now - sweepStart);
+                sweepRemaining.addAll(checks.keySet());
+            }
+            sweepStart = now;
+        }
+    }
+
+    private static long jitter(long delay) {
+        double factor = 1.0 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER);
+        return Math.max(1, (long) (delay * factor));
+    }
+}
@@ -0,0 +1,489 @@
+package com.corcoja.demo.impl;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import com.corcoja.demo.protocol.Provider;
+
+/**
+ * Health state of the providers registered on a {@link BaseLoadBalancer}, kept in primitive arrays.
+ * Each provider is assigned a dense integer slot when registered, and both the health checks and
+ * the requests routed to it update its state through a handle (slot and generation) without
+ * hashing, boxing or locking. The state of a provider is made of its ping count, the amount of
+ * subsequent failed requests and its average request latency, together with request counters
+ * reported as metrics.
+ *
+ * @implNote The cells are stored in fixed size pages that are never copied, so growing the store
+ *           never loses a concurrent update. The ping and failure cells pack the generation of the
+ *           slot (upper 32 bits) together with the count (lower 32 bits). Freeing a slot bumps its
+ *           generation, so that checks and requests still in flight for the previous owner are
+ *           rejected. Allocating and freeing slots is expected to be serialized by the caller.
+ *           The slots are padded (see {@link #STRIDE}), at the cost of {@code 128} bytes per slot
+ *           instead of {@code 72}.
+ */
+final class HealthStore {
+
+    /**
+     * Returned instead of a ping count when the handle no longer belongs to a registered provider.
+     */
+    static final int NOT_REGISTERED = Integer.MIN_VALUE;
+
+    /**
+     * Returned instead of a handle for providers without a slot.
+     */
+    static final long NO_HANDLE = -1;
+
+    private static final int PAGE_BITS = 10;
+
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    /**
+     * Longs between the first cells of two slots ({@code 128} bytes), for 9 cells: ping count,
+     * subsequent failed requests, average latency, completed requests, failed requests, requests in
+     * flight, the limit of requests in flight, the same limit in thousandths (see
+     * {@link AdaptiveLimit}) and the lowest latency. The cells updated on each request of a
+     * provider then never share a cache line with the ones of another provider, which would make
+     * the cores serving them invalidate each other's caches (false sharing). Only the lowest
+     * latency of a slot may share one with the ping count of the next one, and both change rarely.
+     */
+    private static final int STRIDE = 16;
+
+    private static final int PINGS = 0;
+
+    private static final int FAILURES = 1;
+
+    private static final int LATENCY = 2;
+
+    private static final int REQUESTS = 3;
+
+    private static final int FAILED_REQUESTS = 4;
+
+    private static final int IN_FLIGHT = 5;
+
+    private static final int LIMIT = 6;
+
+    private static final int PRECISE_LIMIT = 7;
+
+    private static final int MIN_LATENCY = 8;
+
+    /**
+     * Weight of the newest latency sample in the exponentially weighted average, as a power of
+     * {@code 2} ({@code 1/8}).
+     */
+    private static final int LATENCY_SHIFT = 3;
+
+    private volatile AtomicLongArray[] pages = new AtomicLongArray[0];
+
+    private final Map<Provider, Long> handles = new ConcurrentHashMap<>();
+
+    private int[] freeSlots = new int[0];
+
+    private int freeSlotCount;
+
+    private int nextSlot;
+
+    /**
+     * Assign a slot to the provider, with a ping count of {@code 0}, no requests and its capacity
+     * as the limit of requests in flight.
+     *
+     * @param provider The provider, must not be registered yet.
+     *
+     * @return Handle of the slot.
+     */
+    long allocate(Provider provider) {
+        int slot = freeSlotCount > 0 ? freeSlots[--freeSlotCount] : nextSlot++;
+
+        // Grow by one page
+        AtomicLongArray[] pages = this.pages;
+        if ((slot >>> PAGE_BITS) >= pages.length) {
+            pages = Arrays.copyOf(pages, pages.length + 1);
+            pages[pages.length - 1] = new AtomicLongArray(PAGE_SIZE * STRIDE);
+            this.pages = pages;
+        }
+
+        AtomicLongArray cells = cells(slot);
+        int generation = generation(cells.get(index(slot, PINGS)));
+        cells.set(index(slot, FAILURES), pack(generation, 0));
+        cells.set(index(slot, LATENCY), 0);
+        cells.set(index(slot, REQUESTS), 0);
+        cells.set(index(slot, FAILED_REQUESTS), 0);
+        cells.set(index(slot, IN_FLIGHT), 0);
+        long capacity = Math.max(1, provider.getCapacity());
+        cells.set(index(slot, LIMIT), capacity);
+        cells.set(index(slot, PRECISE_LIMIT), capacity * AdaptiveLimit.UNIT);
+        cells.set(index(slot, MIN_LATENCY), 0);
+        cells.set(index(slot, PINGS), pack(generation, 0));
+
+        long handle = pack(generation, slot);
+        handles.put(provider, handle);
+
+        return handle;
+    }
+
+    /**
+     * Release the slot of the provider, so that it can be assigned to another one.
+     *
+     * @param provider The provider.
+     *
+     * @return {@code True} if the provider had a slot, {@code False} otherwise.
+     */
+    boolean free(Provider provider) {
+        Long handle = handles.remove(provider);
+        if (handle == null) {
+            return false;
+        }
+
+        // Invalidate the handles of the previous owner
+        int slot = slot(handle);
+        AtomicLongArray cells = cells(slot);
+        cells.set(index(slot, PINGS), pack(generation(handle) + 1, 0));
+        cells.set(index(slot, FAILURES), pack(generation(handle) + 1, 0));
+
+        if (freeSlotCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, Math.max(16, freeSlots.length * 2));
+        }
+        freeSlots[freeSlotCount++] = slot;
+
+        return true;
+    }
+
+    /**
+     * Release the slots of all providers.
+     */
+    void clear() {
+        handles.keySet().forEach(this::free);
+    }
+
+    /**
+     * @param provider The provider.
+     *
+     * @return {@code True} if the provider has a slot, {@code False} otherwise.
+     */
+    boolean contains(Provider provider) {
+        return handles.containsKey(provider);
+    }
+
+    /**
+     * @param provider The provider.
+     *
+     * @return Handle of the slot of the provider, or {@link #NO_HANDLE} if it has none.
+     */
+    long handleOf(Provider provider) {
+        return handles.getOrDefault(provider, NO_HANDLE);
+    }
+
+    /**
+     * @param handle Handle of the slot.
+     *
+     * @return The ping count, or {@link #NOT_REGISTERED}.
+     */
+    int getPings(long handle) {
+        int slot = slot(handle);
+        long cell = cells(slot).get(index(slot, PINGS));
+        return generation(cell) == generation(handle) ? count(cell) : NOT_REGISTERED;
+    }
+
+    /**
+     * Increment the ping count.
+     *
+     * @param handle Handle of the slot.
+     *
+     * @return The new ping count, or {@link #NOT_REGISTERED}.
+     */
+    int recordPing(long handle) {
+        return increment(handle, PINGS);
+    }
+
+    /**
+     * Reset the ping count, together with the request statistics, so that the provider starts over
+     * once it becomes alive again.
+     *
+     * @param handle Handle of the slot.
+     * @param pings The new ping count.
+     *
+     * @return The previous ping count, or {@link #NOT_REGISTERED}.
+     */
+    int resetPings(long handle, int pings) {
+        int slot = slot(handle);
+        AtomicLongArray cells = cells(slot);
+
+        while (true) {
+            long cell = cells.get(index(slot, PINGS));
+            if (generation(cell) != generation(handle)) {
+                return NOT_REGISTERED;
+            }
+
+            if (cells.compareAndSet(index(slot, PINGS), cell, pack(generation(cell), pings))) {
+                cells.set(index(slot, FAILURES), pack(generation(cell), 0));
+                cells.set(index(slot, LATENCY), 0);
+                cells.set(index(slot, MIN_LATENCY), 0);
+                return count(cell);
+            }
+        }
+    }
+
+    /**
+     * Record a request that completed successfully.
+     *
+     * @param handle Handle of the slot.
+     * @param latency Latency of the request, in nanoseconds.
+     *
+     * @return The average latency (in nanoseconds) of the requests, including this one, or
+     *         {@link #NOT_REGISTERED} if the slot belongs to another provider.
+     */
+    long recordRequestSuccess(long handle, long latency) {
+        int slot = slot(handle);
+        AtomicLongArray cells = cells(slot);
+
+        // Only write the failure count when it changes, so that successful requests don't contend
+        long failures = cells.get(index(slot, FAILURES));
+        if (generation(failures) != generation(handle)) {
+            return NOT_REGISTERED;
+        }
+        if (count(failures) != 0) {
+            cells.compareAndSet(index(slot, FAILURES), failures, pack(generation(failures), 0));
+        }
+
+        // Exponentially weighted average, the first request sets it
+        while (true) {
+            long average = cells.get(index(slot, LATENCY));
+            long newAverage =
+                    average == 0 ? latency : average + ((latency - average) >> LATENCY_SHIFT);
+            if (cells.compareAndSet(index(slot, LATENCY), average, Math.max(1, newAverage))) {
+                return Math.max(1, newAverage);
+            }
+        }
+    }
+
+    /**
+     * Record a request that failed.
+     *
+     * @param handle Handle of the slot.
+     *
+     * @return The amount of subsequent failed requests, including this one, or
+     *         {@link #NOT_REGISTERED}.
+     */
+    int recordRequestFailure(long handle) {
+        return increment(handle, FAILURES);
+    }
+
+    /**
+     * Count a request sent to the provider as in flight.
+     *
+     * @param handle Handle of the slot.
+     */
+    void startRequest(long handle) {
+        if (isCurrent(handle)) {
+            cells(slot(handle)).incrementAndGet(index(slot(handle), IN_FLIGHT));
+        }
+    }
+
+    /**
+     * Count a request sent to the provider as in flight, unless its limit of requests in flight
+     * is reached.
+     *
+     * @param handle Handle of the slot.
+     *
+     * @return {@code True} if the request was counted, {@code False} if the limit is reached or
+     *         the slot belongs to another provider.
+     */
+    boolean tryStartRequest(long handle) {
+        if (!isCurrent(handle)) {
+            return false;
+        }
+
+        int slot = slot(handle);
+        AtomicLongArray cells = cells(slot);
+        while (true) {
+            long inFlight = cells.get(index(slot, IN_FLIGHT));
+            if (inFlight >= cells.get(index(slot, LIMIT))) {
+                return false;
+            }
+            if (cells.compareAndSet(index(slot, IN_FLIGHT), inFlight, inFlight + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Count a request started with {@link #startRequest(long)} (or
+     * {@link #tryStartRequest(long)}) as no longer in flight.
+     *
+     * @param handle Handle of the slot.
+     * @param completed {@code True} if the provider handled the request, {@code False} if it
+     *        rejected it right away.
+     * @param failed {@code True} if the request failed, {@code False} otherwise.
+     */
+    void finishRequest(long handle, boolean completed, boolean failed) {
+        if (!isCurrent(handle)) {
+            return;
+        }
+
+        int slot = slot(handle);
+        AtomicLongArray cells = cells(slot);
+        cells.decrementAndGet(index(slot, IN_FLIGHT));
+        if (completed) {
+            cells.incrementAndGet(index(slot, REQUESTS));
+        }
+        if (failed) {
+            cells.incrementAndGet(index(slot, FAILED_REQUESTS));
+        }
+    }
+
+    /**
+     * @param handle Handle of the slot.
+     *
+     * @return Amount of requests handled by the provider since it was registered, including the
+     *         failed ones.
+     */
+    long getRequests(long handle) {
+        return cells(slot(handle)).get(index(slot(handle), REQUESTS));
+    }
+
+    /**
+     * @param handle Handle of the slot.
+     *
+     * @return Amount of failed requests since the provider was registered.
+     */
+    long getFailedRequests(long handle) {
+        return cells(slot(handle)).get(index(slot(handle), FAILED_REQUESTS));
+    }
+
+    /**
+     * @param handle Handle of the slot.
+     *
+     * @return Amount of requests in flight.
+     */
+    long getRequestsInFlight(long handle) {
+
+        // Requests sent to the previous owner of the slot may finish after it was re-assigned
+        return Math.max(0, cells(slot(handle)).get(index(slot(handle), IN_FLIGHT)));
+    }
+
+    /**
+     * Adapt the limit of requests in flight to the outcome of a request (see
+     * {@link AdaptiveLimit}).
+     *
+     * @param handle Handle of the slot.
+     * @param latency Latency of the request, in nanoseconds.
+     * @param failed {@code True} if the request failed or was rejected by the provider.
+     * @param adaptiveLimit The algorithm.
+     *
+     * @return {@code True} if the limit grew, {@code False} otherwise.
+     */
+    boolean adaptLimit(long handle, long latency, boolean failed, AdaptiveLimit adaptiveLimit) {
+        if (!isCurrent(handle)) {
+            return false;
+        }
+
+        int slot = slot(handle);
+        AtomicLongArray cells = cells(slot);
+
+        long minLatency = cells.get(index(slot, MIN_LATENCY));
+        while (!failed && (minLatency == 0 || latency < minLatency)) {
+            if (cells.compareAndSet(index(slot, MIN_LATENCY), minLatency, Math.max(1, latency))) {
+                minLatency = Math.max(1, latency);
+                break;
+            }
+            minLatency = cells.get(index(slot, MIN_LATENCY));
+        }
+
+        long inFlight = getRequestsInFlight(handle);
+        while (true) {
+            long limit = cells.get(index(slot, PRECISE_LIMIT));
+            long newLimit = adaptiveLimit.next(limit, minLatency, latency, inFlight, failed);
+            if (newLimit == limit) {
+                return false;
+            }
+            if (cells.compareAndSet(index(slot, PRECISE_LIMIT), limit, newLimit)) {
+                long requests = Math.max(1, newLimit / AdaptiveLimit.UNIT);
+                return cells.getAndSet(index(slot, LIMIT), requests) < requests;
+            }
+        }
+    }
+
+    /**
+     * Set the limit of requests in flight of each provider back to its capacity.
+     */
+    void resetLimits() {
+        handles.forEach((provider, handle) -> {
+            int slot = slot(handle);
+            long capacity = Math.max(1, provider.getCapacity());
+            cells(slot).set(index(slot, PRECISE_LIMIT), capacity * AdaptiveLimit.UNIT);
+            cells(slot).set(index(slot, LIMIT), capacity);
+        });
+    }
+
+    /**
+     * @param handle Handle of the slot.
+     *
+     * @return Limit of requests in flight (see {@link #tryStartRequest(long)}).
+     */
+    long getLimit(long handle) {
+        return cells(slot(handle)).get(index(slot(handle), LIMIT));
+    }
+
+    /**
+     * @param handle Handle of the slot.
+     *
+     * @return Requests in flight relative to their limit, between {@code 0.0} and {@code 1.0}.
+     */
+    float getLoad(long handle) {
+        return Math.min(1.0f, (float) getRequestsInFlight(handle) / getLimit(handle));
+    }
+
+    private boolean isCurrent(long handle) {
+        int slot = slot(handle);
+        return generation(cells(slot).get(index(slot, PINGS))) == generation(handle);
+    }
+
+    private int increment(long handle, int offset) {
+        int slot = slot(handle);
+        AtomicLongArray cells = cells(slot);
+
+        while (true) {
+            long cell = cells.get(index(slot, offset));
+            if (generation(cell) != generation(handle)) {
+                return NOT_REGISTERED;
+            }
+
+            // Saturate instead of overflowing into a negative (e. g. not alive) count
+            int count = count(cell) == Integer.MAX_VALUE ? Integer.MAX_VALUE : count(cell) + 1;
+            if (cells.compareAndSet(index(slot, offset), cell, pack(generation(cell), count))) {
+                return count;
+            }
+        }
+    }
+
+    /**
+     * @param handle Handle of a slot.
+     *
+     * @return The slot.
+     */
+    static int slot(long handle) {
+        return (int) handle;
+    }
+
+    private AtomicLongArray cells(int slot) {
+        return pages[slot >>> PAGE_BITS];
+    }
+
+    private static int index(int slot, int offset) {
+        return (slot & PAGE_MASK) * STRIDE + offset;
+    }
+
+    private static long pack(int generation, int value) {
+        return ((long) generation << 32) | (value & 0xFFFFFFFFL);
+    }
+
+    private static int generation(long cell) {
+        return (int) (cell >>> 32);
+    }
+
+    private static int count(long cell) {
+        return (int) cell;
+    }
+}
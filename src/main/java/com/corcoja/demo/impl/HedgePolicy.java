@@ -0,0 +1,142 @@
+package com.corcoja.demo.impl;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides when a request is hedged, i. e. sent to a second provider because the first one is slow
+ * to answer. The delay is a percentile of the latencies of the most recent requests, and a token
+ * bucket filled by the successful requests limits the extra traffic, so that hedging doesn't
+ * amplify an overload.
+ */
+final class HedgePolicy {
+
+    /**
+     * Amount of recent latencies the percentile is computed from.
+     */
+    private static final int SAMPLES = 1024;
+
+    /**
+     * Requests are not hedged until this amount of latencies are known.
+     */
+    private static final int MIN_SAMPLES = 100;
+
+    /**
+     * The percentile is computed again each time this amount of latencies are recorded.
+     */
+    private static final int RECOMPUTE_INTERVAL = 128;
+
+    /**
+     * One hedge costs one token, stored in thousandths so that fractions can be deposited.
+     */
+    private static final long TOKEN = 1000;
+
+    private static final long MAX_TOKENS = 10 * TOKEN;
+
+    private final double percentile;
+
+    private final long deposit;
+
+    private final AtomicLongArray samples = new AtomicLongArray(SAMPLES);
+
+    private final AtomicLong sampleCount = new AtomicLong();
+
+    private volatile long delay = -1;
+
+    private final AtomicLong tokens = new AtomicLong(MAX_TOKENS);
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder hedges = new LongAdder();
+
+    private final LongAdder hedgeWins = new LongAdder();
+
+    /**
+     * @param percentile Percentile of the latencies after which a request is hedged, between
+     *        {@code 0.0} and {@code 1.0} (exclusive).
+     * @param budgetRatio Hedges allowed for each successful request, e. g. {@code 0.1} allows at
+     *        most 10% extra requests.
+     */
+    HedgePolicy(double percentile, double budgetRatio) {
+        this.percentile = percentile;
+        this.deposit = Math.round(budgetRatio * TOKEN);
+    }
+
+    /**
+     * Record the latency of a successful request and deposit its share of the budget.
+     *
+     * @param latency The latency, in nanoseconds.
+     */
+    void recordSuccess(long latency) {
+        long count = sampleCount.incrementAndGet();
+        samples.set((int) ((count - 1) % SAMPLES), latency);
+        tokens.accumulateAndGet(deposit, (current, added) -> Math.min(MAX_TOKENS, current + added));
+
+        if (count == MIN_SAMPLES || (count > MIN_SAMPLES && count % RECOMPUTE_INTERVAL == 0)) {
+            recomputeDelay(count);
+        }
+    }
+
+    /**
+     * @return Delay (in nanoseconds) after which a request should be hedged, or {@code -1} while
+     *         too few latencies are known.
+     */
+    long getDelay() {
+        return delay;
+    }
+
+    /**
+     * Take a token from the budget, for a new hedge.
+     *
+     * @return {@code True} if the request may be hedged, {@code False} if the budget is exhausted.
+     */
+    boolean tryAcquire() {
+
+        while (true) {
+            long current = tokens.get();
+            if (current < TOKEN) {
+                return false;
+            }
+            if (tokens.compareAndSet(current, current - TOKEN)) {
+                hedges.increment();
+                return true;
+            }
+        }
+    }
+
+    void recordRequest() {
+        requests.increment();
+    }
+
+    void recordHedgeWin() {
+        hedgeWins.increment();
+    }
+
+    /**
+     * @return Share of the requests that were hedged.
+     */
+    double getHedgeRate() {
+        long requests = this.requests.sum();
+        return requests == 0 ? 0.0 : (double) hedges.sum() / requests;
+    }
+
+    /**
+     * @return Share of the hedges answered before the first request, i. e. that cut the latency.
+     */
+    double getHedgeWinRate() {
+        long hedges = this.hedges.sum();
+        return hedges == 0 ? 0.0 : (double) hedgeWins.sum() / hedges;
+    }
+
+    private void recomputeDelay(long count) {
+        long[] latencies = new long[(int) Math.min(count, SAMPLES)];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = samples.get(i);
+        }
+
+        Arrays.sort(latencies);
+        delay = latencies[(int) Math.floor(percentile * (latencies.length - 1))];
+    }
+}
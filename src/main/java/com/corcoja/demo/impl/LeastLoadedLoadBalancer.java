@@ -0,0 +1,101 @@
+package com.corcoja.demo.impl;
+
+import java.util.concurrent.ThreadLocalRandom;
+import com.corcoja.demo.error.MaxLoadException;
+
+/**
+ * Load Balancer that sends each request to the less loaded of two randomly picked alive providers
+ * ("power of two random choices"). Comparing only two providers keeps the selection constant-time,
+ * while being enough to keep requests away from the providers that are close to their full load.
+ * Small pools can be scanned entirely instead, so that the least loaded provider is always picked.
+ */
+public class LeastLoadedLoadBalancer extends BaseLoadBalancer {
+
+    private final Integer fullScanMaxProviders;
+
+    /**
+     * Create a Load Balancer that always uses the power of two random choices.
+     *
+     * @param checkAliveInterval Interval (in milliseconds) between provider health checks.
+     * @param aliveTimeout Timeout (in milliseconds) of a provider health check.
+     */
+    public LeastLoadedLoadBalancer(Long checkAliveInterval, Long aliveTimeout) {
+        this(checkAliveInterval, aliveTimeout, 0);
+    }
+
+    /**
+     * Create a Load Balancer that picks the least loaded of all alive providers as long as there
+     * are at most {@code fullScanMaxProviders} of them, and uses the power of two random choices
+     * for bigger pools.
+     *
+     * @param checkAliveInterval Interval (in milliseconds) between provider health checks.
+     * @param aliveTimeout Timeout (in milliseconds) of a provider health check.
+     * @param fullScanMaxProviders Maximum amount of alive providers for which all of them are
+     *        compared.
+     */
+    public LeastLoadedLoadBalancer(Long checkAliveInterval, Long aliveTimeout,
+            Integer fullScanMaxProviders) {
+        super(checkAliveInterval, aliveTimeout);
+
+        // Sanity check
+        if (fullScanMaxProviders < 0) {
+            throw new IllegalArgumentException("Full scan pool size cannot be negative!");
+        }
+
+        this.fullScanMaxProviders = fullScanMaxProviders;
+    }
+
+    @Override
+    protected int select(RoutingSnapshot snapshot) throws MaxLoadException {
+        int aliveCount = snapshot.getAliveCount();
+
+        // Check if there are alive provides
+        if (aliveCount == 0) {
+            throw new MaxLoadException("All providers are down or overloaded!");
+        }
+
+        if (aliveCount > 1 && aliveCount > fullScanMaxProviders) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+
+            // Pick two distinct alive providers
+            int first = random.nextInt(aliveCount);
+            int second = random.nextInt(aliveCount - 1);
+            if (second >= first) {
+                second++;
+            }
+
+            int firstIdx = snapshot.getAliveIndex(first);
+            int secondIdx = snapshot.getAliveIndex(second);
+            float firstLoad = snapshot.getLoad(firstIdx);
+            float secondLoad = snapshot.getLoad(secondIdx);
+
+            if (Math.min(firstLoad, secondLoad) < 1.0) {
+                return firstLoad <= secondLoad ? firstIdx : secondIdx;
+            }
+
+            // Both of them are overloaded, fall back to looking at all providers
+        }
+
+        return selectLeastLoaded(snapshot);
+    }
+
+    private int selectLeastLoaded(RoutingSnapshot snapshot) throws MaxLoadException {
+        int selectedIdx = -1;
+        float selectedLoad = 1.0f;
+
+        for (int i = 0; i < snapshot.getAliveCount(); i++) {
+            int idx = snapshot.getAliveIndex(i);
+            float load = snapshot.getLoad(idx);
+            if (load < selectedLoad) {
+                selectedIdx = idx;
+                selectedLoad = load;
+            }
+        }
+
+        if (selectedIdx < 0) {
+            throw new MaxLoadException("All providers are down or overloaded!");
+        }
+
+        return selectedIdx;
+    }
+}
@@ -0,0 +1,287 @@
+package com.corcoja.demo.impl;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import com.corcoja.demo.error.MaxLoadException;
+import com.corcoja.demo.error.ProviderNotFoundException;
+
+/**
+ * Stream of unique identifiers requested from a {@link BaseLoadBalancer}, for consumers that pull
+ * identifiers continuously. Each subscriber gets its own stream, and only as many identifiers as
+ * it requested: the requests sent to the load balancer are bounded by the outstanding demand, by
+ * the free capacity of the alive providers and by a limit of requests in flight per subscriber.
+ * While the alive providers have no free capacity, the stream checks it again at each tick of the
+ * {@link HashedWheelTimer} (i. e. about every millisecond).
+ * While requests are rejected anyway (with {@link MaxLoadException}, e. g. because of other
+ * clients) or no provider is registered, the stream slows down instead of failing, and retries
+ * after a delay that doubles up to 100 ms. Any other failure of a
+ * request terminates the stream with that failure.
+ *
+ * @implNote Like in {@link java.util.concurrent.SubmissionPublisher}, the identifiers are
+ *           delivered by a task of the given executor, so that neither the subscriber requesting
+ *           them nor the threads completing the requests are held by a busy stream. A single task
+ *           at a time runs for each subscriber, the other threads only ask it for another pass
+ *           (like in {@link AdmissionQueue}).
+ */
+public final class LoadBalancerPublisher implements Flow.Publisher<String> {
+
+    private static final int DEFAULT_MAX_REQUESTS_IN_FLIGHT = 256;
+
+    private static final Duration MIN_RETRY_DELAY = Duration.ofMillis(1);
+
+    private static final Duration MAX_RETRY_DELAY = Duration.ofMillis(100);
+
+    private final BaseLoadBalancer loadBalancer;
+
+    private final Executor executor;
+
+    private final int maxRequestsInFlight;
+
+    /**
+     * Stream delivered on the common fork-join pool, with at most
+     * {@value #DEFAULT_MAX_REQUESTS_IN_FLIGHT} requests in flight per subscriber.
+     *
+     * @param loadBalancer The load balancer the identifiers are requested from.
+     */
+    public LoadBalancerPublisher(BaseLoadBalancer loadBalancer) {
+        this(loadBalancer, ForkJoinPool.commonPool(), DEFAULT_MAX_REQUESTS_IN_FLIGHT);
+    }
+
+    /**
+     * @param loadBalancer The load balancer the identifiers are requested from.
+     * @param executor Executor the identifiers are delivered on.
+     * @param maxRequestsInFlight Amount of requests each subscriber may have in flight at the same
+     *        time, must be greater than {@code 0}.
+     */
+    public LoadBalancerPublisher(BaseLoadBalancer loadBalancer, Executor executor,
+            Integer maxRequestsInFlight) {
+
+        // Sanity check
+        if (maxRequestsInFlight <= 0) {
+            throw new IllegalArgumentException(
+                    "Maximum requests in flight must be greater than 0!");
+        }
+
+        this.loadBalancer = loadBalancer;
+        this.executor = executor;
+        this.maxRequestsInFlight = maxRequestsInFlight;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super String> subscriber) {
+
+        // Sanity check
+        if (subscriber == null) {
+            throw new NullPointerException("Subscriber cannot be `null`!");
+        }
+
+        Subscription subscription = new Subscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.drain();
+    }
+
+    private final class Subscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super String> subscriber;
+
+        /**
+         * Identifiers requested by the subscriber and not yet delivered, {@link Long#MAX_VALUE} if
+         * unbounded.
+         */
+        private final AtomicLong demand = new AtomicLong();
+
+        private final AtomicInteger requestsInFlight = new AtomicInteger();
+
+        /**
+         * Identifiers received from the load balancer and not yet delivered.
+         */
+        private final Queue<String> results = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Passes requested over the subscription, see {@link #drain()}.
+         */
+        private final AtomicInteger drainRequests = new AtomicInteger();
+
+        private volatile Throwable failure;
+
+        private volatile boolean cancelled;
+
+        private volatile boolean retryPending;
+
+        private volatile long retryDelay = MIN_RETRY_DELAY.toNanos();
+
+        private Subscription(Flow.Subscriber<? super String> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+
+            // Sanity check
+            if (n <= 0) {
+                fail(new IllegalArgumentException(
+                        "Amount of requested identifiers must be greater than 0!"));
+                return;
+            }
+
+            demand.accumulateAndGet(n, (current, added) -> {
+                long sum = current + added;
+                return sum < 0 ? Long.MAX_VALUE : sum;
+            });
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        /**
+         * Deliver the received identifiers and send the requests the demand still calls for.
+         * Invoked each time the subscriber requests identifiers, a request completes or a retry is
+         * due.
+         */
+        private void drain() {
+
+            // Otherwise the running task is asked for another pass
+            if (drainRequests.getAndIncrement() == 0) {
+                executor.execute(this::run);
+            }
+        }
+
+        private void run() {
+
+            int missed = 1;
+            do {
+                if (cancelled) {
+                    results.clear();
+                    return;
+                }
+
+                deliver();
+
+                Throwable failure = this.failure;
+                if (failure != null) {
+                    cancelled = true;
+                    results.clear();
+                    subscriber.onError(failure);
+                    return;
+                }
+
+                send();
+                missed = drainRequests.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void deliver() {
+
+            long delivered = 0;
+            long requested = demand.get();
+            while (delivered < requested && !cancelled) {
+                String result = results.poll();
+                if (result == null) {
+                    break;
+                }
+
+                subscriber.onNext(result);
+                delivered++;
+            }
+
+            if (delivered > 0 && requested != Long.MAX_VALUE) {
+                demand.addAndGet(-delivered);
+            }
+        }
+
+        private void send() {
+
+            // Wait for the retry instead of hammering an overloaded fleet
+            if (retryPending) {
+                return;
+            }
+
+            long missing = demand.get() - results.size() - requestsInFlight.get();
+            long allowed = Math.min(missing, maxRequestsInFlight - requestsInFlight.get());
+            if (allowed <= 0) {
+                return;
+            }
+
+            long count = loadBalancer.getFreeCapacity(allowed);
+
+            // Nothing in flight would trigger another pass once the providers have room again. The
+            // free capacity is cheap to check, so check it again right away.
+            if (count == 0) {
+                if (requestsInFlight.get() == 0) {
+                    retry(false);
+                }
+                return;
+            }
+
+            for (long i = 0; i < count && !cancelled; i++) {
+                requestsInFlight.incrementAndGet();
+                loadBalancer.getAsync().whenComplete(this::receive);
+            }
+        }
+
+        private void receive(String result, Throwable exception) {
+            requestsInFlight.decrementAndGet();
+
+            if (exception == null) {
+                retryDelay = MIN_RETRY_DELAY.toNanos();
+                results.offer(result);
+            } else {
+                Throwable cause = exception instanceof CompletionException
+                        && exception.getCause() != null ? exception.getCause() : exception;
+
+                // The fleet is busy, slow down
+                if (cause instanceof MaxLoadException
+                        || cause instanceof ProviderNotFoundException) {
+                    retry(true);
+                } else if (failure == null) {
+                    failure = cause;
+                }
+            }
+
+            drain();
+        }
+
+        /**
+         * @param backOff {@code True} to wait longer than for the previous retry (since the last
+         *        successful request), {@code False} to retry at the next tick of the timer, i. e.
+         *        right after the providers whose requests finish meanwhile release their load.
+         */
+        private void retry(boolean backOff) {
+
+            if (retryPending || cancelled) {
+                return;
+            }
+
+            retryPending = true;
+            long delay = 0;
+            if (backOff) {
+                delay = retryDelay;
+                retryDelay = Math.min(delay * 2, MAX_RETRY_DELAY.toNanos());
+            }
+
+            HashedWheelTimer.SHARED.schedule(() -> {
+                retryPending = false;
+                drain();
+            }, Duration.ofNanos(delay));
+        }
+
+        private void fail(Throwable exception) {
+
+            if (failure == null) {
+                failure = exception;
+            }
+            drain();
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.corcoja.demo.impl;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiFunction;
+import com.corcoja.demo.error.MaxLoadException;
+import com.corcoja.demo.error.ProviderNotFoundException;
+import com.corcoja.demo.protocol.Provider;
+
+/**
+ * Load Balancer that keeps the requests in the lowest locality tier (see
+ * {@link Provider#getTier()}), e. g. in the caller's zone, as long as enough of its capacity is
+ * healthy, and spills them over to the next tiers otherwise. Within a tier, the provider is
+ * selected by the inner strategy (e. g. {@link RoundRobinLoadBalancer}).
+ *
+ * A tier gets all the requests not taken by the lower tiers, as long as the capacity of its alive
+ * providers is at least the spillover threshold (see {@link #setSpilloverThreshold(Double)}) of
+ * its total capacity. Below it, the tier gets a share of these requests proportional to its
+ * healthy capacity, and the missing share spills over to the next tier. With a threshold of
+ * {@code 0.7}, a local tier with half of its capacity down keeps {@code 0.5 / 0.7 = 71%} of the
+ * requests. Requests that find all the providers of their tier overloaded spill over to the other
+ * tiers, lowest first.
+ *
+ * @implNote The tiers and their shares are computed on the write path (see
+ *           {@link #prepare(RoutingSnapshot)}), i. e. each time a provider is registered,
+ *           unregistered or changes its alive state, or a tier or the threshold changes. The inner
+ *           strategy is given a view of the snapshot for each tier, where only the providers of
+ *           the tier are alive, together with the selection tables it prepared for that view. The
+ *           request path only reads them, whichever the inner strategy.
+ */
+public class LocalityAwareLoadBalancer extends BaseLoadBalancer {
+
+    /**
+     * Like an overprovisioning factor of {@code 1.4}, a tier keeps all its requests while at
+     * least 70% of its capacity is healthy.
+     */
+    private static final double DEFAULT_SPILLOVER_THRESHOLD = 0.7;
+
+    /**
+     * Locality tiers of a snapshot, lowest first.
+     */
+    private static final class Tiers {
+
+        private final int[] tiers;
+
+        /**
+         * View of the snapshot for each tier (see {@link RoutingSnapshot#withAliveSubset}), with
+         * the selection tables of the inner strategy.
+         */
+        private final RoutingSnapshot[] views;
+
+        /**
+         * Share of the requests sent to each tier and the lower ones.
+         */
+        private final double[] cumulativeShares;
+
+        private Tiers(int[] tiers, RoutingSnapshot[] views, double[] cumulativeShares) {
+            this.tiers = tiers;
+            this.views = views;
+            this.cumulativeShares = cumulativeShares;
+        }
+
+        /**
+         * @param random Random number between {@code 0.0} (inclusive) and {@code 1.0}
+         *        (exclusive).
+         *
+         * @return Position of the tier the request is sent to.
+         */
+        private int pick(double random) {
+            for (int i = 0; i < cumulativeShares.length - 1; i++) {
+                if (random < cumulativeShares[i]) {
+                    return i;
+                }
+            }
+            return cumulativeShares.length - 1;
+        }
+    }
+
+    private final BaseLoadBalancer innerStrategy;
+
+    private final Map<Provider, Integer> tiers = new ConcurrentHashMap<>();
+
+    private volatile double spilloverThreshold = DEFAULT_SPILLOVER_THRESHOLD;
+
+    /**
+     * @param checkAliveInterval Interval (in milliseconds) between provider health checks.
+     * @param aliveTimeout Timeout (in milliseconds) of a provider health check.
+     * @param innerStrategy Creates the Load Balancer that selects the providers within a tier
+     *        (e. g. {@code RoundRobinLoadBalancer::new}). Only its selection is used, the
+     *        providers are never registered on it, so it never creates a health check scheduler
+     *        nor an executor.
+     */
+    public LocalityAwareLoadBalancer(Long checkAliveInterval, Long aliveTimeout,
+            BiFunction<Long, Long, ? extends BaseLoadBalancer> innerStrategy) {
+        super(checkAliveInterval, aliveTimeout);
+        this.innerStrategy = innerStrategy.apply(checkAliveInterval, aliveTimeout);
+    }
+
+    /**
+     * Override the locality tier of a registered provider.
+     *
+     * @param provider Registered provider.
+     * @param tier New tier, cannot be negative.
+     *
+     * @throws ProviderNotFoundException Thrown if the provider is not registered on this Load
+     *         Balancer.
+     */
+    public void setTier(Provider provider, Integer tier) throws ProviderNotFoundException {
+
+        // Sanity check
+        if (tier < 0) {
+            throw new IllegalArgumentException("Provider tier cannot be negative!");
+        }
+
+        updateStrategyState(provider, () -> tiers.put(provider, tier));
+    }
+
+    /**
+     * @param provider The provider.
+     *
+     * @return Explicit tier of the provider if set, the one it reports otherwise.
+     */
+    public Integer getTier(Provider provider) {
+        Integer tier = tiers.get(provider);
+        return tier != null ? tier : Math.max(0, provider.getTier());
+    }
+
+    /**
+     * Keep all the requests in a tier as long as the capacity of its alive providers is at least
+     * this fraction of its total capacity. Defaults to {@value #DEFAULT_SPILLOVER_THRESHOLD}.
+     *
+     * @param spilloverThreshold The fraction, greater than {@code 0.0} and at most {@code 1.0}.
+     */
+    public void setSpilloverThreshold(Double spilloverThreshold) {
+
+        // Sanity check
+        if (spilloverThreshold <= 0.0 || spilloverThreshold > 1.0) {
+            throw new IllegalArgumentException(
+                    "Spillover threshold must be greater than 0 and at most 1!");
+        }
+
+        this.spilloverThreshold = spilloverThreshold;
+        refreshStrategyState();
+    }
+
+    /**
+     * @return Share of the requests currently sent to each tier, lowest tier first. Requests that
+     *         spill over because all the providers of their tier are overloaded are not included.
+     */
+    public Map<Integer, Double> getTierShares() {
+        Map<Integer, Double> shares = new LinkedHashMap<>();
+        RoutingSnapshot snapshot = this.snapshot;
+        if (snapshot.isEmpty()) {
+            return shares;
+        }
+
+        Tiers tiers = getTiers(snapshot);
+        double previous = 0.0;
+        for (int i = 0; i < tiers.tiers.length; i++) {
+            shares.put(tiers.tiers[i], tiers.cumulativeShares[i] - previous);
+            previous = tiers.cumulativeShares[i];
+        }
+        return shares;
+    }
+
+    @Override
+    protected void clearStrategyState() {
+        tiers.clear();
+    }
+
+    @Override
+    public void removeProvider(Provider provider) throws ProviderNotFoundException {
+        super.removeProvider(provider);
+        tiers.remove(provider);
+    }
+
+    @Override
+    protected int select(RoutingSnapshot snapshot) throws MaxLoadException {
+        return select(snapshot, null, List.of());
+    }
+
+    @Override
+    protected int select(RoutingSnapshot snapshot, String key, List<Provider> excludedProviders)
+            throws MaxLoadException {
+
+        // Check if there are alive provides
+        if (snapshot.getAliveCount() == 0) {
+            throw new MaxLoadException("All providers are down!");
+        }
+
+        Tiers tiers = getTiers(snapshot);
+        int picked = tiers.pick(ThreadLocalRandom.current().nextDouble());
+
+        // Spill over to the other tiers, lowest first, while all the providers of the tier are
+        // overloaded
+        for (int i = -1; i < tiers.views.length; i++) {
+            int position = i < 0 ? picked : i;
+            if (i == picked) {
+                continue;
+            }
+
+            RoutingSnapshot view = tiers.views[position];
+            if (view.getAliveCount() == 0) {
+                continue;
+            }
+
+            try {
+                return key == null && excludedProviders.isEmpty() ? innerStrategy.select(view)
+                        : innerStrategy.select(view, key, excludedProviders);
+            } catch (MaxLoadException e) {
+                continue;
+            }
+        }
+
+        throw new MaxLoadException("All providers are down or overloaded!");
+    }
+
+    @Override
+    protected int[] selectBatch(RoutingSnapshot snapshot, int count) throws MaxLoadException {
+        int idx = select(snapshot);
+
+        // Deal the whole batch within the tier of the first request
+        RoutingSnapshot view = snapshot;
+        for (RoutingSnapshot tierView : getTiers(snapshot).views) {
+            if (tierView.isAlive(idx)) {
+                view = tierView;
+                break;
+            }
+        }
+
+        return deal(view, count, view.getAlivePosition(idx));
+    }
+
+    private Tiers getTiers(RoutingSnapshot snapshot) {
+        Tiers tiers = (Tiers) snapshot.getStrategyState();
+
+        // Snapshot not published by this load balancer, e. g. a subset of the providers
+        if (tiers == null) {
+            tiers = (Tiers) prepare(snapshot);
+        }
+        return tiers;
+    }
+
+    @Override
+    protected Object prepare(RoutingSnapshot snapshot) {
+        double threshold = spilloverThreshold;
+
+        // Total and healthy capacity of each tier, lowest tier first
+        TreeMap<Integer, long[]> capacities = new TreeMap<>();
+        int[] tierOf = new int[snapshot.size()];
+        for (int idx = 0; idx < snapshot.size(); idx++) {
+            Provider provider = snapshot.getProvider(idx);
+            int capacity = Math.max(1, provider.getCapacity());
+            tierOf[idx] = getTier(provider);
+
+            long[] tierCapacity = capacities.computeIfAbsent(tierOf[idx], tier -> new long[2]);
+            tierCapacity[0] += capacity;
+            if (snapshot.isAlive(idx)) {
+                tierCapacity[1] += capacity;
+            }
+        }
+
+        int[] tiers = new int[capacities.size()];
+        RoutingSnapshot[] views = new RoutingSnapshot[tiers.length];
+        double[] shares = new double[tiers.length];
+        double remaining = 1.0;
+        int position = 0;
+        for (Map.Entry<Integer, long[]> entry : capacities.entrySet()) {
+            tiers[position] = entry.getKey();
+
+            boolean[] included = new boolean[snapshot.size()];
+            for (int idx = 0; idx < included.length; idx++) {
+                included[idx] = tierOf[idx] == entry.getKey();
+            }
+            RoutingSnapshot view = snapshot.withAliveSubset(included);
+            views[position] = view.withStrategyState(innerStrategy.prepare(view));
+
+            // The share missing because of the unhealthy providers spills over to the next tier
+            double healthy = (double) entry.getValue()[1] / entry.getValue()[0];
+            shares[position] = Math.min(remaining, Math.min(1.0, healthy / threshold));
+            remaining -= shares[position];
+            position++;
+        }
+
+        // Not enough healthy capacity in any tier, split the requests between the healthy ones
+        double total = 1.0 - remaining;
+        double[] cumulativeShares = new double[tiers.length];
+        double cumulative = 0.0;
+        for (int i = 0; i < tiers.length; i++) {
+            cumulative += total > 0.0 ? shares[i] / total : 0.0;
+            cumulativeShares[i] = cumulative;
+        }
+
+        return new Tiers(tiers, views, cumulativeShares);
+    }
+}
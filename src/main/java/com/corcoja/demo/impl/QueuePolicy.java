@@ -0,0 +1,29 @@
+package com.corcoja.demo.impl;
+
+/**
+ * Order in which the requests waiting in the admission queue of a {@link BaseLoadBalancer} are
+ * handed the provider slots that free up (see
+ * {@link BaseLoadBalancer#setAdmissionQueue(Integer, java.time.Duration, QueuePolicy)}).
+ */
+public enum QueuePolicy {
+
+    /**
+     * Oldest request first. Fair, but during a long overload every request waits for almost the
+     * whole queue timeout.
+     */
+    FIFO,
+
+    /**
+     * Newest request first. During an overload the oldest requests time out, while the newest ones
+     * (whose callers are still likely to be waiting for them) are served quickly.
+     */
+    LIFO,
+
+    /**
+     * Oldest request first while the queue keeps draining. Once it hasn't been empty for a whole
+     * queue timeout, and until it drains again, the newest request is served first and the
+     * requests that waited longer than a short target (1/20 of the queue timeout) are rejected, so
+     * that a standing queue doesn't add latency to every request.
+     */
+    CODEL
+}
@@ -1,42 +1,48 @@
 package com.corcoja.demo.impl;
 
-import java.util.List;
-import java.util.Map;
-import java.util.Random;
-import java.util.stream.Collectors;
+import java.util.concurrent.ThreadLocalRandom;
 import com.corcoja.demo.error.MaxLoadException;
-import com.corcoja.demo.error.ProviderNotFoundException;
-import com.corcoja.demo.protocol.Provider;
 
 public class RandomLoadBalancer extends BaseLoadBalancer {
 
-    private Random random = new Random();
+    /**
+     * Amount of random picks among the alive providers before falling back to a full scan. As long
+     * as most of the alive providers are not overloaded, one of the first picks will succeed.
+     */
+    private static final int MAX_RANDOM_PICKS = 4;
 
     public RandomLoadBalancer(Long checkAliveInterval, Long aliveTimeout) {
         super(checkAliveInterval, aliveTimeout);
     }
 
     @Override
-    public String get() throws MaxLoadException {
+    protected int select(RoutingSnapshot snapshot) throws MaxLoadException {
+        int aliveCount = snapshot.getAliveCount();
 
-        // Sanity check
-        if (providers.isEmpty()) {
-            throw new ProviderNotFoundException("Load Balancer has no registered providers!");
+        // Check if there are alive provides
+        if (aliveCount == 0) {
+            throw new MaxLoadException("All providers are down or overloaded!");
         }
 
-        // Filter out dead/unresponsive providers or the providers that are overloaded
-        // @formatter:off
-        List<Provider> aliveProviders = alivePings.entrySet().stream()
-                .filter(entry -> entry.getValue() >= 0 && entry.getKey().getCurrentLoad() < 1.0)
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
-        // @formatter:on
+        ThreadLocalRandom random = ThreadLocalRandom.current();
 
-        // Check if there are alive provides
-        if (aliveProviders.isEmpty()) {
-            throw new MaxLoadException("All providers are down or overloaded!");
+        // Pick random alive providers and reject the ones that are overloaded
+        for (int i = 0; i < MAX_RANDOM_PICKS; i++) {
+            int idx = snapshot.getAliveIndex(random.nextInt(aliveCount));
+            if (snapshot.getLoad(idx) < 1.0) {
+                return idx;
+            }
+        }
+
+        // Most of the providers are overloaded, scan all of them starting at a random position
+        int offset = random.nextInt(aliveCount);
+        for (int i = 0; i < aliveCount; i++) {
+            int idx = snapshot.getAliveIndex((offset + i) % aliveCount);
+            if (snapshot.getLoad(idx) < 1.0) {
+                return idx;
+            }
         }
 
-        return aliveProviders.get(random.nextInt(aliveProviders.size())).get();
+        throw new MaxLoadException("All providers are down or overloaded!");
     }
 }
@@ -1,60 +1,73 @@
 package com.corcoja.demo.impl;
 
 import java.util.List;
-import java.util.function.IntPredicate;
+import java.util.concurrent.atomic.AtomicLong;
 import com.corcoja.demo.error.MaxLoadException;
-import com.corcoja.demo.error.ProviderNotFoundException;
 import com.corcoja.demo.protocol.Provider;
 
 public class RoundRobinLoadBalancer extends BaseLoadBalancer {
 
-    private Integer lastIdx = -1;
+    /**
+     * Ticket of the next request. Each request takes its own ticket, so concurrent callers never
+     * observe the same position in the Round Robin sequence.
+     */
+    private final AtomicLong cursor = new AtomicLong();
 
     public RoundRobinLoadBalancer(Long checkAliveInterval, Long aliveTimeout) {
         super(checkAliveInterval, aliveTimeout);
     }
 
     @Override
-    public String get() throws MaxLoadException {
+    protected int select(RoutingSnapshot snapshot) throws MaxLoadException {
+        int aliveCount = snapshot.getAliveCount();
 
-        // Sanity check
-        if (providers.isEmpty()) {
-            throw new ProviderNotFoundException("Load Balancer has no registered providers!");
+        // Only alive providers take part in the Round Robin sequence
+        if (aliveCount == 0) {
+            throw new MaxLoadException("All providers are down!");
         }
 
         // Get next provider in Round Robin sequence
-        Integer count = providers.size();
-        Integer iterationIdx = lastIdx + 1;
-
-        // Helper function to identify if the provider at a certain iteration is alive
-        IntPredicate isProviderAtIterationAlive = i -> {
-            Provider provider = providers.get(i % count);
-            return alivePings.get(provider) >= 0 && provider.getCurrentLoad() < 1.0;
-        };
-
-        // Loop through providers until we find one that is available and not overloaded
-        while (!isProviderAtIterationAlive.test(iterationIdx)) {
-
-            // If we have made an entire loop around all providers and none of them are alive, throw
-            // an exception
-            if (iterationIdx % count == lastIdx || lastIdx == -1 && iterationIdx.equals(count)) {
-                throw new MaxLoadException("All providers are down!");
+        long ticket = cursor.getAndIncrement();
+        int position = (int) Math.floorMod(ticket, (long) aliveCount);
+
+        // Loop through providers until we find one that is not overloaded
+        for (int i = 0; i < aliveCount; i++) {
+            int idx = snapshot.getAliveIndex((position + i) % aliveCount);
+            if (snapshot.getLoad(idx) < 1.0) {
+
+                // Skip the overloaded providers for the next requests as well, unless another
+                // request already moved the cursor
+                if (i > 0) {
+                    cursor.compareAndSet(ticket + 1, ticket + 1 + i);
+                }
+                return idx;
             }
+        }
+
+        // We have made an entire loop around all alive providers and all of them are overloaded
+        throw new MaxLoadException("All providers are down!");
+    }
+
+    @Override
+    protected int[] selectBatch(RoutingSnapshot snapshot, int count) throws MaxLoadException {
+        int aliveCount = snapshot.getAliveCount();
 
-            // Current provider is not alive, skip it and move on to the next on
-            iterationIdx = iterationIdx + 1;
+        // Only alive providers take part in the Round Robin sequence
+        if (aliveCount == 0) {
+            throw new MaxLoadException("All providers are down!");
         }
 
-        // Send request to the provider and update last provider index
-        lastIdx = iterationIdx % count;
-        return providers.get(lastIdx).get();
+        // Take the tickets of the whole batch at once, so that the next requests continue the
+        // sequence after the batch
+        long ticket = cursor.getAndAdd(count);
+        return deal(snapshot, count, (int) Math.floorMod(ticket, (long) aliveCount));
     }
 
     @Override
     public void registerProviders(List<Provider> providers) {
         super.registerProviders(providers);
 
-        // Reset the index to start over the iteration on providers
-        lastIdx = -1;
+        // Reset the cursor to start over the iteration on providers
+        cursor.set(0);
     }
 }
@@ -0,0 +1,328 @@
+package com.corcoja.demo.impl;
+
+import java.util.Arrays;
+import java.util.List;
+import com.corcoja.demo.protocol.Provider;
+
+/**
+ * Immutable view of the providers registered on a {@link BaseLoadBalancer} together with their
+ * health state. A new instance is published every time a provider is registered, unregistered,
+ * changes its alive state or its circuit breaker state, so the request path only needs to read a
+ * single volatile reference and never blocks.
+ *
+ * @implNote Instances are never modified after construction, all the {@code with*} methods return
+ *           a copy. The {@link HalfOpenState} of the providers whose breaker is half-open is shared
+ *           between copies. The selection tables of the strategy are only kept by the copies with
+ *           the same alive providers.
+ */
+public final class RoutingSnapshot {
+
+    static final RoutingSnapshot EMPTY = new RoutingSnapshot(new Provider[0], new long[0],
+            new boolean[0], new HalfOpenState[0], null);
+
+    private final Provider[] providers;
+
+    /**
+     * {@link HealthStore} handle of each provider.
+     */
+    private final long[] handles;
+
+    private final boolean[] alive;
+
+    private final int[] aliveIndices;
+
+    /**
+     * Breaker state of each provider, {@code null} unless half-open.
+     */
+    private final HalfOpenState[] halfOpen;
+
+    /**
+     * Provider index of each {@link HealthStore} slot, {@code -1} for slots of other providers.
+     */
+    private final int[] indicesBySlot;
+
+    /**
+     * Requests in flight tracked by the load balancer, {@code null} to use the load reported by
+     * the providers.
+     */
+    private final HealthStore loadTracker;
+
+    /**
+     * Selection tables the strategy pre-computed for this snapshot (see
+     * {@link BaseLoadBalancer#prepare(RoutingSnapshot)}), {@code null} if none.
+     */
+    private final Object strategyState;
+
+    private RoutingSnapshot(Provider[] providers, long[] handles, boolean[] alive,
+            HalfOpenState[] halfOpen, HealthStore loadTracker) {
+        this(providers, handles, alive, halfOpen, indexSlots(handles), loadTracker);
+    }
+
+    private RoutingSnapshot(Provider[] providers, long[] handles, boolean[] alive,
+            HalfOpenState[] halfOpen, int[] indicesBySlot, HealthStore loadTracker) {
+        this(providers, handles, alive, indexAlive(alive), halfOpen, indicesBySlot, loadTracker,
+                null);
+    }
+
+    private RoutingSnapshot(Provider[] providers, long[] handles, boolean[] alive,
+            int[] aliveIndices, HalfOpenState[] halfOpen, int[] indicesBySlot,
+            HealthStore loadTracker, Object strategyState) {
+        this.providers = providers;
+        this.handles = handles;
+        this.alive = alive;
+        this.aliveIndices = aliveIndices;
+        this.halfOpen = halfOpen;
+        this.indicesBySlot = indicesBySlot;
+        this.loadTracker = loadTracker;
+        this.strategyState = strategyState;
+    }
+
+    /**
+     * Create a snapshot where all the given providers are considered alive.
+     *
+     * @param providers The list of providers.
+     * @param handles {@link HealthStore} handle of each provider.
+     * @param loadTracker Store of the requests in flight the loads are computed from (see
+     *        {@link #withLoadTracker(HealthStore)}), {@code null} to use the load reported by the
+     *        providers.
+     *
+     * @return New snapshot.
+     */
+    static RoutingSnapshot of(List<Provider> providers, long[] handles, HealthStore loadTracker) {
+        boolean[] alive = new boolean[providers.size()];
+        Arrays.fill(alive, true);
+        return new RoutingSnapshot(providers.toArray(new Provider[0]), handles, alive,
+                new HalfOpenState[providers.size()], loadTracker);
+    }
+
+    RoutingSnapshot withProvider(Provider provider, long handle) {
+        Provider[] newProviders = Arrays.copyOf(providers, providers.length + 1);
+        long[] newHandles = Arrays.copyOf(handles, handles.length + 1);
+        boolean[] newAlive = Arrays.copyOf(alive, alive.length + 1);
+        HalfOpenState[] newHalfOpen = Arrays.copyOf(halfOpen, halfOpen.length + 1);
+        newProviders[providers.length] = provider;
+        newHandles[handles.length] = handle;
+        newAlive[alive.length] = true;
+        return new RoutingSnapshot(newProviders, newHandles, newAlive, newHalfOpen, loadTracker);
+    }
+
+    RoutingSnapshot withoutProvider(int idx) {
+        Provider[] newProviders = new Provider[providers.length - 1];
+        long[] newHandles = new long[handles.length - 1];
+        boolean[] newAlive = new boolean[alive.length - 1];
+        HalfOpenState[] newHalfOpen = new HalfOpenState[halfOpen.length - 1];
+        System.arraycopy(providers, 0, newProviders, 0, idx);
+        System.arraycopy(providers, idx + 1, newProviders, idx, providers.length - idx - 1);
+        System.arraycopy(handles, 0, newHandles, 0, idx);
+        System.arraycopy(handles, idx + 1, newHandles, idx, handles.length - idx - 1);
+        System.arraycopy(alive, 0, newAlive, 0, idx);
+        System.arraycopy(alive, idx + 1, newAlive, idx, alive.length - idx - 1);
+        System.arraycopy(halfOpen, 0, newHalfOpen, 0, idx);
+        System.arraycopy(halfOpen, idx + 1, newHalfOpen, idx, halfOpen.length - idx - 1);
+        return new RoutingSnapshot(newProviders, newHandles, newAlive, newHalfOpen, loadTracker);
+    }
+
+    /**
+     * @param idx Provider index.
+     * @param isAlive The alive state.
+     * @param halfOpenState Breaker state of the provider, {@code null} if closed. Ignored unless
+     *        the provider is alive.
+     *
+     * @return New snapshot.
+     */
+    RoutingSnapshot withAlive(int idx, boolean isAlive, HalfOpenState halfOpenState) {
+        boolean[] newAlive = alive.clone();
+        HalfOpenState[] newHalfOpen = halfOpen.clone();
+        newAlive[idx] = isAlive;
+        newHalfOpen[idx] = isAlive ? halfOpenState : null;
+        return new RoutingSnapshot(providers, handles, newAlive, newHalfOpen, indicesBySlot,
+                loadTracker);
+    }
+
+    /**
+     * @param loadTracker Store of the requests in flight tracked by the load balancer, so that the
+     *        load of each provider is its requests in flight relative to their limit (see
+     *        {@link HealthStore#getLoad(long)}) instead of {@link Provider#getCurrentLoad()}.
+     *        {@code null} to use the load reported by the providers.
+     *
+     * @return New snapshot.
+     */
+    RoutingSnapshot withLoadTracker(HealthStore loadTracker) {
+        return new RoutingSnapshot(providers, handles, alive, aliveIndices, halfOpen,
+                indicesBySlot, loadTracker, strategyState);
+    }
+
+    /**
+     * @param strategyState Selection tables the strategy pre-computed for this snapshot,
+     *        {@code null} if none.
+     *
+     * @return New snapshot, with the same providers and health state.
+     */
+    RoutingSnapshot withStrategyState(Object strategyState) {
+        return new RoutingSnapshot(providers, handles, alive, aliveIndices, halfOpen,
+                indicesBySlot, loadTracker, strategyState);
+    }
+
+    /**
+     * @param included Whether each provider (by index) belongs to the subset.
+     *
+     * @return View of the snapshot where only the alive providers of the subset are alive, with
+     *         the same provider indices, so that a strategy can select among the subset only.
+     */
+    RoutingSnapshot withAliveSubset(boolean[] included) {
+        boolean[] newAlive = alive.clone();
+        for (int i = 0; i < newAlive.length; i++) {
+            newAlive[i] &= included[i];
+        }
+        return new RoutingSnapshot(providers, handles, newAlive, halfOpen, indicesBySlot,
+                loadTracker);
+    }
+
+    /**
+     * @return Selection tables the strategy pre-computed for this snapshot, {@code null} if none.
+     */
+    Object getStrategyState() {
+        return strategyState;
+    }
+
+    /**
+     * @param idx Provider index.
+     *
+     * @return Breaker state of the provider at the given index, {@code null} unless half-open.
+     */
+    HalfOpenState getHalfOpenState(int idx) {
+        return halfOpen[idx];
+    }
+
+    /**
+     * @param idx Provider index, between {@code 0} and {@link #size()} (exclusive).
+     *
+     * @return {@link HealthStore} handle of the provider at the given index.
+     */
+    long getHandle(int idx) {
+        return handles[idx];
+    }
+
+    /**
+     * @param slot {@link HealthStore} slot.
+     *
+     * @return Index of the provider assigned to the slot, or {@code -1} if it is not part of this
+     *         snapshot.
+     */
+    int indexOfSlot(int slot) {
+        return slot >= 0 && slot < indicesBySlot.length ? indicesBySlot[slot] : -1;
+    }
+
+    /**
+     * @param other Another snapshot.
+     *
+     * @return {@code True} if both snapshots have the same providers at the same indices, i. e. one
+     *         only differs from the other by the health state of its providers.
+     */
+    boolean hasSameProviders(RoutingSnapshot other) {
+        return providers == other.providers;
+    }
+
+    /**
+     * @return Number of registered providers (both alive and not alive).
+     */
+    public int size() {
+        return providers.length;
+    }
+
+    /**
+     * @return {@code True} if there are no registered providers, {@code False} otherwise.
+     */
+    public boolean isEmpty() {
+        return providers.length == 0;
+    }
+
+    /**
+     * @param idx Provider index, between {@code 0} and {@link #size()} (exclusive).
+     *
+     * @return The provider at the given index.
+     */
+    public Provider getProvider(int idx) {
+        return providers[idx];
+    }
+
+    /**
+     * @param idx Provider index, between {@code 0} and {@link #size()} (exclusive).
+     *
+     * @return {@code True} if the provider at the given index passed its health checks,
+     *         {@code False} otherwise.
+     */
+    public boolean isAlive(int idx) {
+        return alive[idx];
+    }
+
+    /**
+     * @param idx Provider index, between {@code 0} and {@link #size()} (exclusive).
+     *
+     * @return The load of the provider at the given index (see {@link Provider#getCurrentLoad()}),
+     *         or its requests in flight relative to their limit while the load balancer tracks
+     *         them itself. While its circuit breaker is half-open, the provider is reported at its
+     *         full load once the allowed probe requests are in flight.
+     */
+    public float getLoad(int idx) {
+        float load = loadTracker != null ? loadTracker.getLoad(handles[idx])
+                : providers[idx].getCurrentLoad();
+        HalfOpenState halfOpenState = halfOpen[idx];
+        return halfOpenState != null ? Math.max(load, halfOpenState.getLoad()) : load;
+    }
+
+    /**
+     * @return Number of providers that passed their health checks.
+     */
+    public int getAliveCount() {
+        return aliveIndices.length;
+    }
+
+    /**
+     * @param aliveIdx Index between {@code 0} and {@link #getAliveCount()} (exclusive).
+     *
+     * @return The provider index (see {@link #getProvider(int)}) of the n-th alive provider.
+     */
+    public int getAliveIndex(int aliveIdx) {
+        return aliveIndices[aliveIdx];
+    }
+
+    /**
+     * @param idx Index of an alive provider (see {@link #getProvider(int)}).
+     *
+     * @return Position of the provider among the alive ones (see {@link #getAliveIndex(int)}).
+     */
+    int getAlivePosition(int idx) {
+        return Math.max(0, Arrays.binarySearch(aliveIndices, idx));
+    }
+
+    private static int[] indexAlive(boolean[] alive) {
+
+        // Pre-compute the indices of alive providers so that strategies don't have to filter them
+        int aliveCount = 0;
+        for (boolean isAlive : alive) {
+            aliveCount += isAlive ? 1 : 0;
+        }
+        int[] aliveIndices = new int[aliveCount];
+        for (int i = 0, j = 0; i < alive.length; i++) {
+            if (alive[i]) {
+                aliveIndices[j++] = i;
+            }
+        }
+        return aliveIndices;
+    }
+
+    private static int[] indexSlots(long[] handles) {
+        int maxSlot = -1;
+        for (long handle : handles) {
+            maxSlot = Math.max(maxSlot, HealthStore.slot(handle));
+        }
+
+        int[] indicesBySlot = new int[maxSlot + 1];
+        Arrays.fill(indicesBySlot, -1);
+        for (int i = 0; i < handles.length; i++) {
+            indicesBySlot[HealthStore.slot(handles[i])] = i;
+        }
+        return indicesBySlot;
+    }
+}
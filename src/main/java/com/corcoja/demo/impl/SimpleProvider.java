@@ -1,20 +1,28 @@
 package com.corcoja.demo.impl;
 
-import java.text.MessageFormat;
 import java.time.Duration;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.util.Strings;
+import com.corcoja.demo.metrics.HistogramSnapshot;
+import com.corcoja.demo.metrics.LatencyHistogram;
+import com.corcoja.demo.metrics.MetricsSnapshot;
+import com.corcoja.demo.metrics.MetricsSource;
 import com.corcoja.demo.protocol.Provider;
 
-public class SimpleProvider implements Provider {
+public class SimpleProvider implements Provider, MetricsSource {
 
     private static Logger logger = LogManager.getLogger(SimpleProvider.class);
 
@@ -26,10 +34,33 @@ public class SimpleProvider implements Provider {
 
     private AtomicInteger currentRequests = new AtomicInteger();
 
-    private Lock availabilityLock = new ReentrantLock();
-
     private Semaphore semaphore;
 
+    private volatile boolean available = true;
+
+    /**
+     * Threads blocked in {@link #get()} or {@link #check()} until the provider becomes available.
+     */
+    private final Queue<Thread> unavailableWaiters = new ConcurrentLinkedQueue<>();
+
+    private final LongAdder servedRequests = new LongAdder();
+
+    private final LongAdder rejectedRequests = new LongAdder();
+
+    private final LongAdder checks = new LongAdder();
+
+    /**
+     * Time the blocking requests waited for the load to decrease.
+     */
+    private final LatencyHistogram getLatency = new LatencyHistogram();
+
+    private final LatencyHistogram checkLatency = new LatencyHistogram();
+
+    /**
+     * Asynchronous requests waiting for the load to decrease, in arrival order.
+     */
+    private final Queue<CompletableFuture<String>> waiters = new ConcurrentLinkedQueue<>();
+
     /**
      * Create a new instance of {@link SimpleProvider}. Each time this provider is invoked, it will
      * create an artificial load on it by sleeping for {@link #oneRequestProcessingTime}. Creating
@@ -78,36 +109,204 @@ public class SimpleProvider implements Provider {
 
     @Override
     public String get() {
-
-        availabilityLock.lock();
+        long start = System.nanoTime();
 
         // Acquire the semaphore and increase the load by incrementing the current number of
         // concurrent requests
-        semaphore.acquireUninterruptibly();
-        currentRequests.incrementAndGet();
+        acquire(Long.MAX_VALUE);
+        getLatency.record(System.nanoTime() - start);
+        startRequest();
+
+        return uuid;
+    }
+
+    @Override
+    public String tryGet() {
+
+        if (!available || !semaphore.tryAcquire()) {
+            rejectedRequests.increment();
+            return null;
+        }
+
+        getLatency.record(0);
+        startRequest();
+        return uuid;
+    }
+
+    @Override
+    public String tryGet(Duration timeout) {
+        long start = System.nanoTime();
+
+        if (!acquire(start + timeout.toNanos())) {
+            rejectedRequests.increment();
+            return null;
+        }
+
+        getLatency.record(System.nanoTime() - start);
+        startRequest();
+        return uuid;
+    }
+
+    /**
+     * Wait until the provider is available and a semaphore permit is free.
+     *
+     * @param deadline {@link System#nanoTime()} after which to give up, {@link Long#MAX_VALUE} to
+     *        wait uninterruptibly for as long as it takes.
+     *
+     * @return {@code True} if a permit was acquired, {@code False} if the deadline passed or the
+     *         thread was interrupted.
+     */
+    private boolean acquire(long deadline) {
+        boolean timed = deadline != Long.MAX_VALUE;
+
+        while (true) {
+            if (!awaitAvailable(deadline)) {
+                return false;
+            }
+
+            if (!timed) {
+                semaphore.acquireUninterruptibly();
+            } else {
+                try {
+                    if (!semaphore.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                        return false;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+
+            // Became unavailable while waiting for the permit
+            if (available) {
+                return true;
+            }
+            semaphore.release();
+        }
+    }
+
+    /**
+     * Park the calling thread while the provider is not available. Returns right away otherwise,
+     * without any synchronization.
+     *
+     * @param deadline See {@link #acquire(long)}.
+     *
+     * @return {@code True} if the provider is available, {@code False} if the deadline passed or
+     *         the thread was interrupted.
+     */
+    private boolean awaitAvailable(long deadline) {
+
+        if (available) {
+            return true;
+        }
+
+        // Register before checking again, so that setAvailability(true) either sees this thread or
+        // is seen by it
+        Thread thread = Thread.currentThread();
+        unavailableWaiters.add(thread);
+        boolean interrupted = false;
 
-        // Create a timer that will release the semaphore after pre-defined processing time
-        TimerTask task = new TimerTask() {
-            @Override
-            public void run() {
+        try {
+            while (!available) {
+                if (deadline == Long.MAX_VALUE) {
+                    LockSupport.park(this);
+                    interrupted |= Thread.interrupted();
+                    continue;
+                }
+
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                if (Thread.interrupted()) {
+                    interrupted = true;
+                    return false;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+
+            return true;
+        } finally {
+            unavailableWaiters.remove(thread);
+            if (interrupted) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync() {
+        CompletableFuture<String> future = new CompletableFuture<>();
+
+        // Queue the request and serve it right away if the load allows this
+        waiters.add(future);
+        dispatchWaiters();
+
+        return future;
+    }
+
+    /**
+     * Hand the free semaphore permits to the queued asynchronous requests. Invoked each time a
+     * request is queued, a permit is released or the provider becomes available.
+     */
+    private void dispatchWaiters() {
+
+        while (available && !waiters.isEmpty() && semaphore.tryAcquire()) {
+            CompletableFuture<String> waiter = waiters.poll();
+
+            // Another thread served the queued requests meanwhile
+            if (waiter == null) {
                 semaphore.release();
-                currentRequests.decrementAndGet();
+                return;
             }
-        };
-        Timer timer = new Timer(MessageFormat.format("timer_{0}", UUID.randomUUID()));
-        timer.schedule(task, oneRequestProcessingTime.toMillis());
 
-        availabilityLock.unlock();
-        return uuid;
+            // Skip the requests cancelled by the caller (e. g. timed out)
+            if (waiter.isDone()) {
+                semaphore.release();
+                continue;
+            }
+
+            startRequest();
+            waiter.complete(uuid);
+        }
+    }
+
+    /**
+     * Increase the load and schedule its decrease after the pre-defined processing time.
+     *
+     * @implNote The caller must have acquired the semaphore.
+     */
+    private void startRequest() {
+        currentRequests.incrementAndGet();
+        servedRequests.increment();
+
+        // Release the semaphore after pre-defined processing time, on the timer shared by all
+        // providers
+        HashedWheelTimer.SHARED.schedule(this::finishRequest, oneRequestProcessingTime);
+    }
+
+    /**
+     * Decrease the load. Runs on the shared timer, so the queued asynchronous requests are served
+     * on the common pool: completing them runs the stages of their callers.
+     */
+    private void finishRequest() {
+        semaphore.release();
+        currentRequests.decrementAndGet();
+        if (!waiters.isEmpty()) {
+            ForkJoinPool.commonPool().execute(this::dispatchWaiters);
+        }
     }
 
     @Override
     public Boolean check() {
+        long start = System.nanoTime();
 
-        availabilityLock.lock();
-        semaphore.acquireUninterruptibly();
+        acquire(Long.MAX_VALUE);
         semaphore.release();
-        availabilityLock.unlock();
+        dispatchWaiters();
+
+        checks.increment();
+        checkLatency.record(System.nanoTime() - start);
 
         return true;
     }
@@ -117,15 +316,47 @@ public class SimpleProvider implements Provider {
         return (float) currentRequests.get() / (float) maxConcurrentRequests;
     }
 
+    @Override
+    public Integer getCapacity() {
+        return maxConcurrentRequests;
+    }
+
+    /**
+     * Metrics of the provider since it was created. The counters are {@code requests} (served,
+     * including the asynchronous ones), {@code requests.rejected} (by {@link #tryGet()} and
+     * {@link #tryGet(Duration)}), {@code requests.inFlight}, {@code checks} and {@code available}
+     * ({@code 1} if available, {@code 0} otherwise). The histograms are {@code get.latency}, the
+     * time the synchronous requests waited for the load to decrease, and {@code check.latency}.
+     */
+    @Override
+    public MetricsSnapshot getMetrics() {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        counters.put("requests", servedRequests.sum());
+        counters.put("requests.rejected", rejectedRequests.sum());
+        counters.put("requests.inFlight", (long) currentRequests.get());
+        counters.put("checks", checks.sum());
+        counters.put("available", available ? 1L : 0L);
+
+        Map<String, HistogramSnapshot> histograms = new LinkedHashMap<>();
+        histograms.put("get.latency", getLatency.snapshot());
+        histograms.put("check.latency", checkLatency.snapshot());
+
+        return new MetricsSnapshot(counters, histograms);
+    }
+
     @Override
     public void setAvailability(Boolean availability) {
 
-        if (Boolean.FALSE.equals(availability)) {
-            if (!availabilityLock.tryLock()) {
-                logger.warn("Availability already set to `true`.");
-            }
-        } else {
-            availabilityLock.unlock();
+        boolean newAvailable = !Boolean.FALSE.equals(availability);
+        if (available == newAvailable) {
+            logger.warn("Availability already set to `{}`.", newAvailable);
+            return;
+        }
+
+        available = newAvailable;
+        if (newAvailable) {
+            unavailableWaiters.forEach(LockSupport::unpark);
+            dispatchWaiters();
         }
     }
 }
@@ -0,0 +1,124 @@
+package com.corcoja.demo.impl;
+
+import java.util.concurrent.ThreadLocalRandom;
+import com.corcoja.demo.error.MaxLoadException;
+
+/**
+ * Weighted Random Load Balancer. Each alive provider is selected with a probability proportional
+ * to its weight, in constant time, using the alias method (Vose).
+ */
+public class WeightedRandomLoadBalancer extends BaseWeightedLoadBalancer {
+
+    /**
+     * Amount of weighted random picks before falling back to a scan for providers that are not
+     * overloaded.
+     */
+    private static final int MAX_RANDOM_PICKS = 4;
+
+    /**
+     * Pre-computed alias table of a snapshot. Entry {@code i} keeps the alive provider {@code i}
+     * with probability {@code probabilities[i]}, otherwise it selects the alive provider
+     * {@code aliases[i]}.
+     */
+    private static final class AliasTable {
+
+        private final double[] probabilities;
+
+        private final int[] aliases;
+
+        private AliasTable(double[] probabilities, int[] aliases) {
+            this.probabilities = probabilities;
+            this.aliases = aliases;
+        }
+    }
+
+    public WeightedRandomLoadBalancer(Long checkAliveInterval, Long aliveTimeout) {
+        super(checkAliveInterval, aliveTimeout);
+    }
+
+    @Override
+    protected int select(RoutingSnapshot snapshot) throws MaxLoadException {
+        int aliveCount = snapshot.getAliveCount();
+
+        // Check if there are alive provides
+        if (aliveCount == 0) {
+            throw new MaxLoadException("All providers are down or overloaded!");
+        }
+
+        AliasTable table = (AliasTable) snapshot.getStrategyState();
+
+        // Snapshot not published by this load balancer, e. g. a subset of the providers
+        if (table == null) {
+            table = (AliasTable) prepare(snapshot);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        // Pick weighted random alive providers and reject the ones that are overloaded
+        for (int i = 0; i < MAX_RANDOM_PICKS; i++) {
+            int aliveIdx = random.nextInt(aliveCount);
+            if (random.nextDouble() >= table.probabilities[aliveIdx]) {
+                aliveIdx = table.aliases[aliveIdx];
+            }
+
+            int idx = snapshot.getAliveIndex(aliveIdx);
+            if (snapshot.getLoad(idx) < 1.0) {
+                return idx;
+            }
+        }
+
+        // Most of the providers are overloaded, scan all of them starting at a random position
+        return selectNotOverloaded(snapshot, random.nextInt(aliveCount));
+    }
+
+    @Override
+    protected Object prepare(RoutingSnapshot snapshot) {
+        int aliveCount = snapshot.getAliveCount();
+        double[] probabilities = new double[aliveCount];
+        int[] aliases = new int[aliveCount];
+
+        long totalWeight = 0;
+        for (int i = 0; i < aliveCount; i++) {
+            probabilities[i] = getWeight(snapshot.getProvider(snapshot.getAliveIndex(i)));
+            totalWeight += (long) probabilities[i];
+        }
+
+        // Scale the weights so that their average is 1, then split them into entries below and
+        // above the average
+        int[] small = new int[aliveCount];
+        int[] large = new int[aliveCount];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < aliveCount; i++) {
+            probabilities[i] = probabilities[i] * aliveCount / totalWeight;
+            if (probabilities[i] < 1.0) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+
+        // Fill every entry below the average with the excess of an entry above the average
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+
+            aliases[less] = more;
+            probabilities[more] = probabilities[more] + probabilities[less] - 1.0;
+            if (probabilities[more] < 1.0) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+
+        // Remaining entries are (up to rounding errors) exactly at the average
+        while (largeCount > 0) {
+            probabilities[large[--largeCount]] = 1.0;
+        }
+        while (smallCount > 0) {
+            probabilities[small[--smallCount]] = 1.0;
+        }
+
+        return new AliasTable(probabilities, aliases);
+    }
+}
@@ -0,0 +1,121 @@
+package com.corcoja.demo.impl;
+
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import com.corcoja.demo.error.MaxLoadException;
+import com.corcoja.demo.protocol.Provider;
+
+/**
+ * Smooth Weighted Round Robin Load Balancer. Within one cycle each alive provider is selected as
+ * many times as its weight and, like in nginx, the selections of a provider are spread evenly over
+ * the cycle instead of being sent in a burst (weights {@code 5, 1, 1} result in the sequence
+ * {@code a a a b c a a}).
+ */
+public class WeightedRoundRobinLoadBalancer extends BaseWeightedLoadBalancer {
+
+    /**
+     * Longest cycle of provider selections, unless there are more alive providers. Longer cycles
+     * have their weights scaled down, so the shares of the providers are approximated.
+     */
+    private static final int MAX_SEQUENCE_LENGTH = 1 << 16;
+
+    private final AtomicLong cursor = new AtomicLong();
+
+    public WeightedRoundRobinLoadBalancer(Long checkAliveInterval, Long aliveTimeout) {
+        super(checkAliveInterval, aliveTimeout);
+    }
+
+    @Override
+    protected int select(RoutingSnapshot snapshot) throws MaxLoadException {
+
+        // Check if there are alive provides
+        if (snapshot.getAliveCount() == 0) {
+            throw new MaxLoadException("All providers are down!");
+        }
+
+        int[] providerIndices = (int[]) snapshot.getStrategyState();
+
+        // Snapshot not published by this load balancer, e. g. a subset of the providers
+        if (providerIndices == null) {
+            providerIndices = (int[]) prepare(snapshot);
+        }
+
+        // Get next provider in Weighted Round Robin sequence
+        long ticket = cursor.getAndIncrement();
+        int idx = providerIndices[(int) Math.floorMod(ticket, (long) providerIndices.length)];
+
+        if (snapshot.getLoad(idx) < 1.0) {
+            return idx;
+        }
+
+        // Provider is overloaded, fall back to the next alive provider that is not
+        return selectNotOverloaded(snapshot, Math.floorMod(ticket, snapshot.getAliveCount()));
+    }
+
+    @Override
+    public void registerProviders(List<Provider> providers) {
+        super.registerProviders(providers);
+
+        // Reset the cursor to start over the iteration on providers
+        cursor.set(0);
+    }
+
+    /**
+     * Every alive provider with weight {@code w} gets {@code w} slots at the virtual times
+     * {@code (k + 0.5) / w}, where {@code 0 <= k < w}, and the sequence lists the slots of all
+     * providers in chronological order. Weights are divided by their greatest common divisor first,
+     * to keep the sequence as short as possible, and scaled down (to at least {@code 1}) if the
+     * sequence would still be longer than {@value #MAX_SEQUENCE_LENGTH}.
+     */
+    @Override
+    protected Object prepare(RoutingSnapshot snapshot) {
+        int aliveCount = snapshot.getAliveCount();
+        int[] weights = new int[aliveCount];
+        int divisor = 0;
+        for (int i = 0; i < aliveCount; i++) {
+            weights[i] = getWeight(snapshot.getProvider(snapshot.getAliveIndex(i)));
+            divisor = gcd(divisor, weights[i]);
+        }
+
+        long totalWeight = 0;
+        for (int i = 0; i < aliveCount; i++) {
+            weights[i] /= divisor;
+            totalWeight += weights[i];
+        }
+
+        int length = 0;
+        for (int i = 0; i < aliveCount; i++) {
+            if (totalWeight > MAX_SEQUENCE_LENGTH) {
+                weights[i] = (int) Math.max(1,
+                        (long) weights[i] * MAX_SEQUENCE_LENGTH / totalWeight);
+            }
+            length += weights[i];
+        }
+
+        // Each entry is {alive index, slot}, ordered by virtual time, then by alive index
+        PriorityQueue<int[]> slots = new PriorityQueue<>(Math.max(1, aliveCount), (a, b) -> {
+            int compare = Double.compare((a[1] + 0.5) / weights[a[0]],
+                    (b[1] + 0.5) / weights[b[0]]);
+            return compare != 0 ? compare : Integer.compare(a[0], b[0]);
+        });
+        for (int i = 0; i < aliveCount; i++) {
+            slots.add(new int[] {i, 0});
+        }
+
+        int[] providerIndices = new int[length];
+        for (int i = 0; i < length; i++) {
+            int[] slot = slots.poll();
+            providerIndices[i] = snapshot.getAliveIndex(slot[0]);
+            if (++slot[1] < weights[slot[0]]) {
+                slots.add(slot);
+            }
+        }
+
+        return providerIndices;
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+}
@@ -0,0 +1,79 @@
+package com.corcoja.demo.metrics;
+
+import java.time.Duration;
+
+/**
+ * Immutable copy of the values recorded by a {@link LatencyHistogram}.
+ */
+public final class HistogramSnapshot {
+
+    private final long[] counts;
+
+    private final long count;
+
+    private final long sum;
+
+    private final long max;
+
+    HistogramSnapshot(long[] counts, long sum, long max) {
+        this.counts = counts;
+        this.sum = sum;
+        this.max = max;
+
+        long count = 0;
+        for (long bucketCount : counts) {
+            count += bucketCount;
+        }
+        this.count = count;
+    }
+
+    /**
+     * @return Amount of recorded values.
+     */
+    public Long getCount() {
+        return count;
+    }
+
+    /**
+     * @return Average of the recorded values, {@link Duration#ZERO} if there are none.
+     */
+    public Duration getMean() {
+        return Duration.ofNanos(count == 0 ? 0 : sum / count);
+    }
+
+    /**
+     * @return Highest recorded value, {@link Duration#ZERO} if there are none.
+     */
+    public Duration getMax() {
+        return Duration.ofNanos(max);
+    }
+
+    /**
+     * @param percentile Percentile between {@code 0.0} and {@code 1.0}.
+     *
+     * @return The value below which the given percentage of recorded values fall, rounded up to
+     *         the bucket it was counted in. {@link Duration#ZERO} if there are no values.
+     */
+    public Duration getValueAtPercentile(Double percentile) {
+
+        // Sanity check
+        if (percentile < 0.0 || percentile > 1.0) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 1!");
+        }
+
+        if (count == 0) {
+            return Duration.ZERO;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Duration.ofNanos(Math.min(LatencyHistogram.highestValueOf(bucket), max));
+            }
+        }
+
+        return Duration.ofNanos(max);
+    }
+}
@@ -0,0 +1,92 @@
+package com.corcoja.demo.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies with a bounded relative error, in the spirit of HdrHistogram. Values are
+ * counted in buckets whose width grows with the value: each power of {@code 2} is split in
+ * {@link #SUB_BUCKETS} buckets, so any value is reported at most about 3% above its actual value.
+ * Recording takes constant time, never locks and never allocates, so the histogram can stay enabled
+ * on the request path.
+ *
+ * @implNote Values above {@link #MAX_VALUE} are counted in the last bucket. Reading the histogram
+ *           while values are recorded may miss the most recent ones, but never loses them.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Highest value (in nanoseconds) told apart from the ones above it, about 18 minutes.
+     */
+    static final long MAX_VALUE = (1L << 40) - 1;
+
+    private static final int BUCKETS = bucketOf(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder sum = new LongAdder();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos The latency, in nanoseconds. Negative values are recorded as {@code 0}.
+     */
+    public void record(long nanos) {
+        long value = Math.min(Math.max(0, nanos), MAX_VALUE);
+        counts.incrementAndGet(bucketOf(value));
+        sum.add(value);
+
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * @return Copy of the values recorded so far.
+     */
+    public HistogramSnapshot snapshot() {
+        long[] snapshotCounts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshotCounts[i] = counts.get(i);
+        }
+        return new HistogramSnapshot(snapshotCounts, sum.sum(), max.get());
+    }
+
+    /**
+     * @param value Value between {@code 0} and {@link #MAX_VALUE}.
+     *
+     * @return Index of the bucket the value is counted in. Values below {@code 2 * SUB_BUCKETS}
+     *         have a bucket each, then each power of {@code 2} has {@code SUB_BUCKETS} buckets.
+     */
+    static int bucketOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * @param bucket Index of a bucket.
+     *
+     * @return Highest value counted in the bucket.
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket - shift * SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
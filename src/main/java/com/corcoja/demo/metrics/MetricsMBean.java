@@ -0,0 +1,152 @@
+package com.corcoja.demo.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.text.MessageFormat;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Exposes the metrics of a {@link MetricsSource} through JMX, as read-only attributes. Each counter
+ * is an attribute, each histogram is exposed through its count, mean, maximum and a few percentiles
+ * (in nanoseconds), e. g. {@code request.latency.p99}.
+ */
+public final class MetricsMBean implements DynamicMBean {
+
+    private static final String DOMAIN = "com.corcoja.demo";
+
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    private static final double[] PERCENTILES = {0.50, 0.90, 0.99, 0.999};
+
+    private final MetricsSource source;
+
+    private final MBeanInfo info;
+
+    /**
+     * @param source Source of the metrics. Its counters and histograms are expected not to change
+     *        after construction.
+     */
+    public MetricsMBean(MetricsSource source) {
+        this.source = source;
+
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String name : attributes(source.getMetrics()).keySet()) {
+            attributes.add(new MBeanAttributeInfo(name, Long.class.getName(), name, true, false,
+                    false));
+        }
+
+        info = new MBeanInfo(MetricsMBean.class.getName(),
+                MessageFormat.format("Metrics of {0}", source.getClass().getSimpleName()),
+                attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+
+    /**
+     * Register the metrics of the source on the platform MBean server, under
+     * {@code com.corcoja.demo:type=<class of the source>,name=<name>}.
+     *
+     * @param name Name that tells the source apart from the other ones of the same class.
+     * @param source Source of the metrics.
+     *
+     * @return Name of the registered MBean, to unregister it with
+     *         {@link #unregister(ObjectName)}.
+     */
+    public static ObjectName register(String name, MetricsSource source) {
+
+        try {
+            ObjectName objectName = new ObjectName(MessageFormat.format("{0}:type={1},name={2}",
+                    DOMAIN, source.getClass().getSimpleName(), ObjectName.quote(name)));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(source),
+                    objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException(
+                    MessageFormat.format("Metrics `{0}` could not be registered!", name), e);
+        }
+    }
+
+    /**
+     * @param objectName Name returned by {@link #register(String, MetricsSource)}.
+     */
+    public static void unregister(ObjectName objectName) {
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException(
+                    MessageFormat.format("Metrics `{0}` could not be unregistered!", objectName),
+                    e);
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Long value = attributes(source.getMetrics()).get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Long> values = attributes(source.getMetrics());
+
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            if (values.containsKey(attribute)) {
+                list.add(new Attribute(attribute, values.get(attribute)));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only!");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature)
+            throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName),
+                "Metrics have no operations!");
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        return info;
+    }
+
+    private static Map<String, Long> attributes(MetricsSnapshot metrics) {
+        Map<String, Long> attributes = new LinkedHashMap<>(metrics.getCounters());
+
+        metrics.getHistograms().forEach((name, histogram) -> {
+            attributes.put(name + ".count", histogram.getCount());
+            attributes.put(name + ".mean", histogram.getMean().toNanos());
+            attributes.put(name + ".max", histogram.getMax().toNanos());
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                Duration value = histogram.getValueAtPercentile(PERCENTILES[i]);
+                attributes.put(name + "." + PERCENTILE_NAMES[i], value.toNanos());
+            }
+        });
+
+        return attributes;
+    }
+}
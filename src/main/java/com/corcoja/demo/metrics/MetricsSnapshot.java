@@ -0,0 +1,75 @@
+package com.corcoja.demo.metrics;
+
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable copy of the metrics of a {@link MetricsSource}: named counters (and gauges) together
+ * with named latency histograms. Exporters only depend on this class, so any source can be
+ * published to any monitoring system (see {@link MetricsMBean} for JMX).
+ */
+public final class MetricsSnapshot {
+
+    private final Map<String, Long> counters;
+
+    private final Map<String, HistogramSnapshot> histograms;
+
+    /**
+     * @param counters Value of each counter, by name.
+     * @param histograms Each histogram, by name.
+     */
+    public MetricsSnapshot(Map<String, Long> counters, Map<String, HistogramSnapshot> histograms) {
+        this.counters = Collections.unmodifiableMap(new LinkedHashMap<>(counters));
+        this.histograms = Collections.unmodifiableMap(new LinkedHashMap<>(histograms));
+    }
+
+    /**
+     * @return Value of each counter, by name, in a stable order.
+     */
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    /**
+     * @return Each histogram, by name, in a stable order.
+     */
+    public Map<String, HistogramSnapshot> getHistograms() {
+        return histograms;
+    }
+
+    /**
+     * @param name Name of the counter.
+     *
+     * @return Value of the counter.
+     */
+    public Long getCounter(String name) {
+        Long value = counters.get(name);
+
+        // Sanity check
+        if (value == null) {
+            throw new IllegalArgumentException(
+                    MessageFormat.format("Unknown counter `{0}`!", name));
+        }
+
+        return value;
+    }
+
+    /**
+     * @param name Name of the histogram.
+     *
+     * @return The histogram.
+     */
+    public HistogramSnapshot getHistogram(String name) {
+        HistogramSnapshot histogram = histograms.get(name);
+
+        // Sanity check
+        if (histogram == null) {
+            throw new IllegalArgumentException(
+                    MessageFormat.format("Unknown histogram `{0}`!", name));
+        }
+
+        return histogram;
+    }
+}
@@ -0,0 +1,16 @@
+package com.corcoja.demo.metrics;
+
+/**
+ * Anything that records metrics, e. g. a load balancer or a provider.
+ */
+public interface MetricsSource {
+
+    /**
+     * Returns a copy of the metrics recorded so far.
+     * 
+     * @return Metrics snapshot.
+     * 
+     * @note Recording the metrics never allocates nor blocks, only taking a snapshot does.
+     */
+    MetricsSnapshot getMetrics();
+}
@@ -1,9 +1,12 @@
 package com.corcoja.demo.protocol;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import com.corcoja.demo.error.MaxLoadException;
 import com.corcoja.demo.error.ProviderAlreadyRegisteredException;
 import com.corcoja.demo.error.ProviderNotFoundException;
+import com.corcoja.demo.error.RequestTimeoutException;
 
 public interface LoadBalancer {
 
@@ -43,4 +46,65 @@ public interface LoadBalancer {
      * @throws MaxLoadException Thrown if all registered providers are at their maximum load.
      */
     String get() throws MaxLoadException;
+
+    /**
+     * Passes the {@code get} request to one of the registered providers, chosen based on the given
+     * key. Load Balancers with key affinity (e. g. consistent hashing) send the requests with the
+     * same key to the same provider as long as it is alive and not overloaded, the other ones
+     * ignore the key.
+     * 
+     * @param key Request key, e. g. the identifier of a cached entity.
+     * 
+     * @return Unique identifier.
+     * 
+     * @throws MaxLoadException Thrown if all registered providers are at their maximum load.
+     */
+    String get(String key) throws MaxLoadException;
+
+    /**
+     * Passes the {@code get} request to one of the registered providers, giving up after the given
+     * time. A provider that doesn't answer in time is abandoned and, if the time left allows it,
+     * the request is retried on another provider.
+     * 
+     * @param timeout Maximum time to wait for the unique identifier.
+     * 
+     * @return Unique identifier.
+     * 
+     * @throws MaxLoadException Thrown if all registered providers are at their maximum load.
+     * @throws RequestTimeoutException Thrown if no provider answered in time.
+     */
+    String get(Duration timeout) throws MaxLoadException, RequestTimeoutException;
+
+    /**
+     * Passes the {@code get} request to one of the registered providers, without blocking the
+     * caller while the provider processes it.
+     * 
+     * @return A future completed with the unique identifier, or completed exceptionally with
+     *         {@link MaxLoadException} if all registered providers are at their maximum load.
+     */
+    CompletableFuture<String> getAsync();
+
+    /**
+     * Passes a batch of {@code get} requests to the registered providers. The providers are
+     * selected for the whole batch at once, and the requests are processed in parallel.
+     * 
+     * @param count Amount of requests, must be greater than {@code 0}.
+     * 
+     * @return Unique identifiers, in the order the requests were sent.
+     * 
+     * @throws MaxLoadException Thrown if all registered providers are at their maximum load.
+     */
+    List<String> getBatch(Integer count) throws MaxLoadException;
+
+    /**
+     * Passes a batch of {@code get} requests to the registered providers, without blocking the
+     * caller while the providers process them.
+     * 
+     * @param count Amount of requests, must be greater than {@code 0}.
+     * 
+     * @return A future completed with the unique identifiers, in the order the requests were sent,
+     *         or completed exceptionally with the first failure, e. g. {@link MaxLoadException} if
+     *         all registered providers are at their maximum load.
+     */
+    CompletableFuture<List<String>> getBatchAsync(Integer count);
 }
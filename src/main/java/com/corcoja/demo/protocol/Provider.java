@@ -1,5 +1,8 @@
 package com.corcoja.demo.protocol;
 
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
 public interface Provider {
 
     /**
@@ -12,6 +15,50 @@ public interface Provider {
      */
     String get();
 
+    /**
+     * Returns an unique identifier of the provider instance, only if the load on the provider
+     * allows this right away.
+     * 
+     * @return Unique identifier, or {@code null} if the provider is at its full load or not
+     *         available.
+     * 
+     * @note This method never blocks the execution. Unless overridden, {@link #get()} is invoked if
+     *       {@link #getCurrentLoad()} is below {@code 1.0}, which may still block if the load
+     *       increases meanwhile.
+     */
+    default String tryGet() {
+        return getCurrentLoad() < 1.0f ? get() : null;
+    }
+
+    /**
+     * Returns an unique identifier of the provider instance, if the load on the provider allows
+     * this within the given timeout.
+     * 
+     * @param timeout Maximum time to wait for the load to decrease.
+     * 
+     * @return Unique identifier, or {@code null} if the provider was at its full load or not
+     *         available for the whole timeout.
+     * 
+     * @note Unless overridden, the same as {@link #tryGet()}, i. e. it doesn't wait at all.
+     */
+    default String tryGet(Duration timeout) {
+        return tryGet();
+    }
+
+    /**
+     * Returns an unique identifier of the provider instance, without blocking the caller.
+     * 
+     * @return A future completed with the unique identifier.
+     * 
+     * @note The future will be completed immediately if the load on the provider allows this,
+     *       otherwise the request is queued and the future is completed once the load decreases.
+     *       Unless overridden, {@link #get()} is invoked on the common fork-join pool, which does
+     *       block one of its threads while the provider is at its full load.
+     */
+    default CompletableFuture<String> getAsync() {
+        return CompletableFuture.supplyAsync(this::get);
+    }
+
     /**
      * Check if the provider is alive or not.
      * 
@@ -32,6 +79,32 @@ public interface Provider {
      */
     Float getCurrentLoad();
 
+    /**
+     * Returns the amount of requests the provider can handle at the same time. Load Balancers may
+     * use it to send proportionally more requests to the providers with a higher capacity.
+     * 
+     * @return A positive {@code Integer}, {@code 1} unless overridden.
+     * 
+     * @note Will always return immediately the provider's capacity.
+     */
+    default Integer getCapacity() {
+        return 1;
+    }
+
+    /**
+     * Returns the locality tier of the provider, e. g. {@code 0} for the providers in the same zone
+     * as the caller, {@code 1} for the other zones of its region and {@code 2} for other regions.
+     * Locality-aware Load Balancers keep the requests in the lowest tier as long as it has enough
+     * healthy capacity.
+     * 
+     * @return A non-negative {@code Integer}, {@code 0} unless overridden.
+     * 
+     * @note Will always return immediately the provider's tier.
+     */
+    default Integer getTier() {
+        return 0;
+    }
+
     /**
      * Sets the availability of the provider. To simulate a provider that currently is not available
      * (e. g. overloaded with requests, shut down, crashed, restarting, etc.), set the availability
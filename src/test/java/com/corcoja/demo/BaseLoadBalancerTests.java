@@ -2,20 +2,48 @@ package com.corcoja.demo;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import java.text.MessageFormat;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import org.awaitility.Awaitility;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 import com.corcoja.demo.Utils.AliveProvidersLoadBalancer;
+import com.corcoja.demo.Utils.BlockingProvider;
+import com.corcoja.demo.Utils.CheckCounter;
+import com.corcoja.demo.Utils.ConcurrencyCountProvider;
+import com.corcoja.demo.Utils.FailingProvider;
+import com.corcoja.demo.Utils.SaturatingProvider;
+import com.corcoja.demo.Utils.SlowCheckProvider;
+import com.corcoja.demo.Utils.StaleLoadProvider;
+import com.corcoja.demo.Utils.TailLatencyProvider;
 import com.corcoja.demo.error.MaxLoadException;
+import com.corcoja.demo.impl.BaseLoadBalancer;
+import com.corcoja.demo.impl.ExecutionMode;
+import com.corcoja.demo.impl.QueuePolicy;
+import com.corcoja.demo.impl.RandomLoadBalancer;
+import com.corcoja.demo.impl.SimpleProvider;
+import com.corcoja.demo.metrics.MetricsSnapshot;
 import com.corcoja.demo.error.ProviderNotFoundException;
+import com.corcoja.demo.error.RequestTimeoutException;
 import com.corcoja.demo.protocol.LoadBalancer;
 import com.corcoja.demo.protocol.Provider;
 
@@ -329,4 +357,1236 @@ public class BaseLoadBalancerTests {
             }
         }
     }
+
+    @ParameterizedTest
+    @CsvSource({"4,100", "16,300"})
+    void testProvidersChurnDuringRequests(Integer providerCount, Integer iterations) {
+        List<String> providerNames = Utils.getDummyProviderNames(providerCount);
+        LoadBalancer loadBalancer = Utils.createRandomLoadBalancer();
+
+        // Providers with enough capacity for all the requests sent by this test
+        List<Provider> providers = providerNames.stream()
+                .map((name) -> Utils.createCheckCountProvider(name, iterations * 3))
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(providers.subList(0, 1));
+
+        System.out.println(
+                "Add and remove providers while other threads send requests to load balancer");
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        // @formatter:off
+        CompletableFuture<?> requests = CompletableFuture.allOf(IntStream.range(0, 3)
+                .mapToObj(t -> CompletableFuture.runAsync(() -> {
+                    for (int i = 0; i < iterations; i++) {
+                        loadBalancer.get();
+                    }
+                }, executor))
+                .toArray(CompletableFuture[]::new));
+        // @formatter:on
+
+        for (int i = 0; i < iterations; i++) {
+            Provider provider = providers.get(1 + i % (providerCount - 1));
+            loadBalancer.addProvider(provider);
+            loadBalancer.removeProvider(provider);
+        }
+
+        assertDoesNotThrow(() -> requests.get());
+        executor.shutdown();
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1,10", "4,3", "10,10"})
+    void testProvidersAsync(Integer providerCount, Integer requestsPerProvider) {
+        List<String> providerNames = Utils.getDummyProviderNames(providerCount);
+        LoadBalancer loadBalancer = Utils.createRoundRobinLoadBalancer();
+
+        // Create providers and register them on the load balancer
+        List<Provider> providers = providerNames.stream()
+                .map((name) -> Utils.createCheckCountProvider(name, requestsPerProvider))
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(providers);
+
+        System.out.println("Check that asynchronous requests are forwarded to all providers");
+
+        Map<String, Integer> responses = new HashMap<>();
+
+        for (int i = 0; i < providerCount * requestsPerProvider; i++) {
+            CompletableFuture<String> future = loadBalancer.getAsync();
+            String uuid = assertDoesNotThrow(() -> future.get());
+            responses.put(uuid, responses.getOrDefault(uuid, 0) + 1);
+        }
+
+        for (String providerName : providerNames) {
+            assertEquals(requestsPerProvider, responses.getOrDefault(providerName, 0));
+        }
+
+        System.out.println("All providers are at their full load, check that the future completes "
+                + "exceptionally");
+
+        ExecutionException exception =
+                assertThrows(ExecutionException.class, () -> loadBalancer.getAsync().get());
+        assertInstanceOf(MaxLoadException.class, exception.getCause());
+    }
+
+    @ParameterizedTest
+    @CsvSource({"10,100000"})
+    void testVirtualThreadsInFlightRequests(Integer providerCount, Integer requests) {
+        List<String> providerNames = Utils.getDummyProviderNames(providerCount);
+        BaseLoadBalancer loadBalancer = (BaseLoadBalancer) Utils.createRandomLoadBalancer();
+        loadBalancer.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+
+        // Create providers that block the caller for a while and register them
+        Duration processingTime = Duration.ofSeconds(2);
+        List<BlockingProvider> providers = providerNames.stream()
+                .map(name -> new BlockingProvider(name, processingTime))
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(List.copyOf(providers));
+
+        Set<Thread> threads = Thread.getAllStackTraces().keySet();
+
+        System.out.println(MessageFormat.format(
+                "Send {0} asynchronous requests that all block in the providers", requests));
+
+        List<CompletableFuture<String>> futures = IntStream.range(0, requests)
+                .mapToObj(i -> loadBalancer.getAsync()).collect(Collectors.toList());
+
+        System.out.println("Check that all requests are in flight at the same time, without "
+                + "creating a platform thread for each of them");
+
+        assertTrue(futures.stream().noneMatch(CompletableFuture::isDone));
+
+        Integer newThreads = Utils.countNewThreads(threads);
+        System.out.println(MessageFormat.format("{0} new platform threads", newThreads));
+        assertTrue(newThreads <= Runtime.getRuntime().availableProcessors() + 2);
+
+        // @formatter:off
+        assertDoesNotThrow(() -> Awaitility.await()
+                .atMost(processingTime.multipliedBy(5))
+                .pollInterval(Duration.ofMillis(500))
+                .until(() -> futures.stream().allMatch(CompletableFuture::isDone)));
+        // @formatter:on
+
+        Integer total = providers.stream().mapToInt(BlockingProvider::getRequestCount).sum();
+        assertEquals(requests, total);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"10,100000"})
+    void testVirtualThreadsBlockingRequests(Integer providerCount, Integer requests) {
+        List<String> providerNames = Utils.getDummyProviderNames(providerCount);
+        BaseLoadBalancer loadBalancer = (BaseLoadBalancer) Utils.createRandomLoadBalancer();
+        loadBalancer.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+
+        // Create providers that block the caller for a while and register them
+        Duration processingTime = Duration.ofSeconds(5);
+        List<BlockingProvider> providers = providerNames.stream()
+                .map(name -> new BlockingProvider(name, processingTime))
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(List.copyOf(providers));
+
+        Set<Thread> threads = Thread.getAllStackTraces().keySet();
+
+        System.out.println(MessageFormat.format(
+                "Send {0} blocking requests, each from its own virtual thread", requests));
+
+        ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor();
+        for (int i = 0; i < requests; i++) {
+            callers.execute(loadBalancer::get);
+        }
+
+        System.out.println("Check that all requests are in flight at the same time, without "
+                + "creating a platform thread for each of them");
+
+        // @formatter:off
+        assertDoesNotThrow(() -> Awaitility.await()
+                .atMost(processingTime)
+                .pollInterval(Duration.ofMillis(100))
+                .until(() -> loadBalancer.getMetrics().getCounter("requests.inFlight") == requests.longValue()));
+        // @formatter:on
+
+        Integer newThreads = Utils.countNewThreads(threads);
+        System.out.println(MessageFormat.format("{0} new platform threads", newThreads));
+        assertTrue(newThreads <= Runtime.getRuntime().availableProcessors() + 2);
+
+        callers.shutdown();
+        assertDoesNotThrow(() -> callers.awaitTermination(processingTime.toMillis() * 5,
+                TimeUnit.MILLISECONDS));
+
+        Integer total = providers.stream().mapToInt(BlockingProvider::getRequestCount).sum();
+        assertEquals(requests, total);
+    }
+
+    @Test
+    void testExecutionModeSwitch() {
+        BaseLoadBalancer loadBalancer = new RandomLoadBalancer(20L, 10L);
+        loadBalancer.registerProviders(Utils.getDummyProviderNames(4).stream()
+                .map(Utils::createRequestCountProvider).collect(Collectors.toList()));
+
+        System.out.println("Switch the execution mode back and forth while requests and health "
+                + "checks run");
+
+        for (int i = 0; i < 50; i++) {
+            loadBalancer.setExecutionMode(i % 2 == 0 ? ExecutionMode.VIRTUAL_THREADS
+                    : ExecutionMode.PLATFORM_THREADS);
+            for (int j = 0; j < 10; j++) {
+                assertDoesNotThrow(() -> loadBalancer.getAsync().get());
+            }
+            Utils.sleep(Duration.ofMillis(5));
+        }
+
+        System.out.println("Check that no task was rejected by a previous executor");
+
+        MetricsSnapshot metrics = loadBalancer.getMetrics();
+        assertEquals(0L, metrics.getCounter("requests.failed"));
+        assertEquals(4L, metrics.getCounter("providers.alive"));
+    }
+
+    @Test
+    public void testHealthCheckSweepDuration() {
+        Long checkAliveInterval = 200L;
+        List<String> providerNames = Utils.getDummyProviderNames(50);
+        BaseLoadBalancer loadBalancer = new RandomLoadBalancer(checkAliveInterval, 100L);
+
+        System.out.println("Check that no sweep completed before registering providers");
+
+        assertEquals(Duration.ZERO, loadBalancer.getLastHealthCheckSweepDuration());
+
+        List<Provider> providers = providerNames.stream().map(Utils::createRequestCountProvider)
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(providers);
+
+        System.out.println("Wait until all providers were checked at least once");
+
+        // @formatter:off
+        assertDoesNotThrow(() -> Awaitility.await()
+                .atMost(Duration.ofMillis(checkAliveInterval * 20))
+                .pollInterval(Duration.ofMillis(checkAliveInterval / 4))
+                .until(() -> loadBalancer.getLastHealthCheckSweepDuration().compareTo(Duration.ZERO) > 0));
+        // @formatter:on
+
+        Duration sweepDuration = loadBalancer.getLastHealthCheckSweepDuration();
+        System.out.println(MessageFormat.format("Sweep took {0} ms", sweepDuration.toMillis()));
+        assertTrue(sweepDuration.toMillis() <= checkAliveInterval * 10);
+
+        // Stop the health checks of these providers
+        loadBalancer.registerProviders(List.of());
+    }
+
+    @Test
+    public void testHealthCheckMaxConcurrentChecks() {
+        Integer maxConcurrentChecks = 3;
+        Long checkAliveInterval = 500L;
+        Duration checkTime = Duration.ofMillis(200);
+        List<String> providerNames = Utils.getDummyProviderNames(20);
+        BaseLoadBalancer loadBalancer = new RandomLoadBalancer(checkAliveInterval, 400L);
+        loadBalancer.setMaxConcurrentHealthChecks(maxConcurrentChecks);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> loadBalancer.setMaxConcurrentHealthChecks(0));
+
+        // Without a limit most of the checks would overlap
+        CheckCounter checkCounter = new CheckCounter();
+        List<SlowCheckProvider> providers = providerNames.stream()
+                .map(name -> new SlowCheckProvider(name, checkTime, checkCounter))
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(List.copyOf(providers));
+
+        System.out.println("Wait until all providers were checked at least once");
+
+        // @formatter:off
+        assertDoesNotThrow(() -> Awaitility.await()
+                .atMost(Duration.ofSeconds(10))
+                .pollInterval(checkTime)
+                .until(() -> loadBalancer.getLastHealthCheckSweepDuration().compareTo(Duration.ZERO) > 0));
+        // @formatter:on
+
+        System.out.println(MessageFormat.format("Check that at most {0} checks were in flight",
+                maxConcurrentChecks));
+
+        Integer maxChecksInFlight = checkCounter.getMaxChecksInFlight();
+        System.out.println(MessageFormat.format("{0} checks in flight", maxChecksInFlight));
+        assertTrue(maxChecksInFlight <= maxConcurrentChecks);
+
+        Duration sweepDuration = loadBalancer.getLastHealthCheckSweepDuration();
+        System.out.println(MessageFormat.format("Sweep took {0} ms", sweepDuration.toMillis()));
+        assertTrue(providers.stream().allMatch(provider -> provider.getCheckCount() > 0));
+        assertTrue(sweepDuration.toMillis()
+                >= checkTime.toMillis() * providers.size() / maxConcurrentChecks);
+
+        // Stop the health checks of these providers
+        loadBalancer.registerProviders(List.of());
+    }
+
+    @Test
+    public void testHealthCheckTimedOutChecks() {
+        Long checkAliveInterval = 100L;
+        Duration checkTime = Duration.ofMillis(checkAliveInterval * 10);
+        BaseLoadBalancer loadBalancer = new RandomLoadBalancer(checkAliveInterval, 50L);
+
+        CheckCounter checkCounter = new CheckCounter();
+        SlowCheckProvider hangingProvider =
+                new SlowCheckProvider("hanging", checkTime, checkCounter);
+        loadBalancer.registerProviders(List.of(hangingProvider));
+
+        System.out.println("Check that the provider is marked down once its check times out");
+
+        // @formatter:off
+        assertDoesNotThrow(() -> Awaitility.await()
+                .atMost(Duration.ofMillis(checkAliveInterval * 10))
+                .until(() -> loadBalancer.getMetrics().getCounter("providers.alive") == 0L));
+        // @formatter:on
+
+        System.out.println("Let the health checks run for a while");
+
+        Utils.sleep(checkTime.multipliedBy(3));
+
+        System.out.println("Check that the provider was not checked again while its check hung");
+
+        System.out.println(MessageFormat.format("{0} checks in flight at most",
+                checkCounter.getMaxChecksInFlight()));
+        assertEquals(1, checkCounter.getMaxChecksInFlight());
+        assertTrue(hangingProvider.getCheckCount() >= 2);
+
+        // Stop the health checks of this provider
+        loadBalancer.registerProviders(List.of());
+    }
+
+    @Test
+    public void testHealthCheckAdaptiveInterval() {
+        Long checkAliveInterval = 200L;
+        BaseLoadBalancer loadBalancer = new RandomLoadBalancer(checkAliveInterval, 100L);
+
+        CheckCounter checkCounter = new CheckCounter();
+        SlowCheckProvider steadyProvider =
+                new SlowCheckProvider("steady", Duration.ZERO, checkCounter);
+        SlowCheckProvider sickProvider =
+                new SlowCheckProvider("sick", Duration.ZERO, checkCounter);
+        sickProvider.setAvailability(false);
+        loadBalancer.registerProviders(List.of(steadyProvider, sickProvider));
+
+        System.out.println("Let the health checks run for a while");
+
+        Utils.sleep(Duration.ofMillis(checkAliveInterval * 20));
+
+        System.out.println(MessageFormat.format(
+                "Steady provider checked {0} times, sick provider checked {1} times",
+                steadyProvider.getCheckCount(), sickProvider.getCheckCount()));
+
+        System.out.println("Check that the sick provider is checked more often");
+
+        assertTrue(sickProvider.getCheckCount() > steadyProvider.getCheckCount() * 2);
+
+        System.out.println("Check that requests are forwarded to the steady provider only");
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("steady", assertDoesNotThrow(() -> loadBalancer.get()));
+        }
+
+        // Stop the health checks of these providers
+        loadBalancer.registerProviders(List.of());
+    }
+
+    @ParameterizedTest
+    @CsvSource({"100000,1000"})
+    void testProvidersLargePool(Integer providerCount, Integer providersToReplace) {
+        List<String> providerNames = Utils.getDummyProviderNames(providerCount);
+        AliveProvidersLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+
+        List<Provider> providers = providerNames.stream().map(Utils::createRequestCountProvider)
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(providers);
+
+        System.out.println(MessageFormat.format("Replace {0} of the {1} providers",
+                providersToReplace, providerCount));
+
+        List<Provider> removedProviders = providers.subList(0, providersToReplace);
+        removedProviders.forEach(loadBalancer::removeProvider);
+
+        List<String> newProviderNames =
+                Utils.getDummyProviderNames(providersToReplace, providerCount);
+        newProviderNames.stream().map(Utils::createRequestCountProvider)
+                .forEach(loadBalancer::addProvider);
+
+        System.out.println("Check that removed providers are no longer known to the load balancer");
+
+        assertEquals(providerCount, loadBalancer.getAliveProviders().size());
+        for (Provider provider : removedProviders) {
+            assertThrows(ProviderNotFoundException.class,
+                    () -> loadBalancer.removeProvider(provider));
+        }
+
+        System.out.println("Check that requests are forwarded to the new providers too");
+
+        Map<String, Integer> responses = new HashMap<>();
+        for (int i = 0; i < providerCount; i++) {
+            String uuid = assertDoesNotThrow(() -> loadBalancer.get());
+            responses.put(uuid, responses.getOrDefault(uuid, 0) + 1);
+        }
+
+        assertEquals(providerCount, responses.size());
+        assertTrue(newProviderNames.stream().allMatch(responses::containsKey));
+
+        // Stop the health checks of this big pool
+        loadBalancer.registerProviders(List.of());
+    }
+
+    @ParameterizedTest
+    @CsvSource({"4,3", "2,1", "10,5"})
+    void testProvidersPassiveEjection(Integer providerCount, Integer maxConsecutiveFailures) {
+        List<String> providerNames = Utils.getDummyProviderNames(providerCount);
+        AliveProvidersLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+        loadBalancer.setMaxConsecutiveFailures(maxConsecutiveFailures);
+
+        List<FailingProvider> providers = providerNames.stream().map(FailingProvider::new)
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(List.copyOf(providers));
+
+        System.out.println("Make the requests to the first provider fail");
+
+        FailingProvider failingProvider = providers.get(0);
+        failingProvider.setFailing(true);
+
+        Integer failures = 0;
+        for (int i = 0; i < providerCount * (maxConsecutiveFailures + 1); i++) {
+            try {
+                loadBalancer.get();
+            } catch (IllegalStateException e) {
+                failures++;
+            }
+        }
+
+        System.out.println(MessageFormat.format(
+                "Check that the provider was ejected after {0} failed requests",
+                maxConsecutiveFailures));
+
+        assertEquals(maxConsecutiveFailures, failures);
+        assertEquals(providerCount - 1, loadBalancer.getAliveProviders().size());
+        assertTrue(!loadBalancer.getAliveProviders().contains(failingProvider));
+
+        System.out.println("Fix the provider and wait until it passes its health checks again");
+
+        failingProvider.setFailing(false);
+
+        // @formatter:off
+        assertDoesNotThrow(() -> Awaitility.await()
+                .forever()
+                .pollInterval(Constants.providerRequestProcessingTime.dividedBy(2))
+                .until(() -> loadBalancer.getAliveProviders().size() == providerCount));
+        // @formatter:on
+
+        Integer requestCount = failingProvider.getRequestCount();
+        for (int i = 0; i < providerCount; i++) {
+            assertDoesNotThrow(() -> loadBalancer.get());
+        }
+        assertEquals(requestCount + 1, failingProvider.getRequestCount());
+    }
+
+    @ParameterizedTest
+    @CsvSource({"4,50", "10,30", "3,0"})
+    void testProvidersEjectionLimit(Integer providerCount, Integer maxEjectionPercent) {
+        List<String> providerNames = Utils.getDummyProviderNames(providerCount);
+        AliveProvidersLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+        loadBalancer.setMaxConsecutiveFailures(1);
+        loadBalancer.setMaxEjectionPercent(maxEjectionPercent);
+
+        assertThrows(IllegalArgumentException.class, () -> loadBalancer.setMaxEjectionPercent(101));
+
+        List<FailingProvider> providers = providerNames.stream().map(FailingProvider::new)
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(List.copyOf(providers));
+
+        System.out.println("Make the requests to all providers fail");
+
+        providers.forEach(provider -> provider.setFailing(true));
+        for (int i = 0; i < providerCount * 2; i++) {
+            assertThrows(IllegalStateException.class, loadBalancer::get);
+        }
+
+        System.out.println(MessageFormat.format(
+                "Check that at most {0}% of the providers were ejected", maxEjectionPercent));
+
+        Integer ejected = providerCount - loadBalancer.getAliveProviders().size();
+        assertEquals(providerCount * maxEjectionPercent / 100, ejected);
+    }
+
+    @Test
+    public void testProvidersEjectionLimitFreed() {
+        AliveProvidersLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+        loadBalancer.setMaxConsecutiveFailures(2);
+        loadBalancer.setMaxEjectionPercent(25);
+
+        List<FailingProvider> providers = Utils.getDummyProviderNames(4).stream()
+                .map(FailingProvider::new).collect(Collectors.toList());
+        loadBalancer.registerProviders(List.copyOf(providers));
+
+        System.out.println("Make the requests to the first provider fail until it is ejected");
+
+        providers.get(0).setFailing(true);
+        sendIgnoringFailures(loadBalancer, 8);
+        assertEquals(providers.subList(1, 4), loadBalancer.getAliveProviders());
+
+        System.out.println("Check that the second failing provider is kept by the limit");
+
+        providers.get(1).setFailing(true);
+        sendIgnoringFailures(loadBalancer, 9);
+        assertEquals(providers.subList(1, 4), loadBalancer.getAliveProviders());
+
+        System.out.println("Raise the limit and check that its next failure ejects it");
+
+        loadBalancer.setMaxEjectionPercent(50);
+        sendIgnoringFailures(loadBalancer, 3);
+        assertEquals(providers.subList(2, 4), loadBalancer.getAliveProviders());
+    }
+
+    @Test
+    public void testProvidersLatencyEjection() {
+        Duration slowProcessingTime = Duration.ofMillis(50);
+        AliveProvidersLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+        loadBalancer.setMaxAverageLatency(slowProcessingTime.dividedBy(2));
+
+        Provider fastProvider = Utils.createRequestCountProvider("fast");
+        Provider slowProvider = new BlockingProvider("slow", slowProcessingTime);
+        loadBalancer.registerProviders(List.of(fastProvider, slowProvider));
+
+        System.out.println("Check that the slow provider is ejected after its first request");
+
+        assertEquals("fast", loadBalancer.get());
+        assertEquals("slow", loadBalancer.get());
+        assertEquals(List.of(fastProvider), loadBalancer.getAliveProviders());
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("fast", assertDoesNotThrow(() -> loadBalancer.get()));
+        }
+    }
+
+    @Test
+    public void testProvidersHalfOpenProbes() throws InterruptedException {
+        Integer maxHalfOpenProbes = 2;
+        Duration processingTime = Duration.ofMillis(200);
+        AliveProvidersLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+        loadBalancer.setMaxConsecutiveFailures(1);
+        loadBalancer.setMaxHalfOpenProbes(maxHalfOpenProbes);
+
+        FailingProvider probedProvider = new FailingProvider("probed", processingTime);
+        Provider otherProvider = Utils.createRequestCountProvider("other");
+        loadBalancer.registerProviders(List.of(probedProvider, otherProvider));
+
+        System.out.println("Make the requests to the first provider fail until it is ejected");
+
+        probedProvider.setFailing(true);
+        assertThrows(IllegalStateException.class, loadBalancer::get);
+        assertEquals(List.of(otherProvider), loadBalancer.getAliveProviders());
+
+        System.out.println("Wait until it passes its health checks and becomes half-open");
+
+        // @formatter:off
+        assertDoesNotThrow(() -> Awaitility.await()
+                .forever()
+                .pollInterval(Constants.providerRequestProcessingTime.dividedBy(10))
+                .until(() -> loadBalancer.getAliveProviders().size() == 2));
+        // @formatter:on
+
+        System.out.println("Check that a single failed probe ejects it again");
+
+        Integer failures = 0;
+        for (int i = 0; i < 4; i++) {
+            try {
+                loadBalancer.get();
+            } catch (IllegalStateException e) {
+                failures++;
+            }
+        }
+        assertEquals(1, failures);
+        assertEquals(List.of(otherProvider), loadBalancer.getAliveProviders());
+
+        System.out.println("Fix the provider and wait until it becomes half-open again");
+
+        probedProvider.setFailing(false);
+
+        // @formatter:off
+        assertDoesNotThrow(() -> Awaitility.await()
+                .forever()
+                .pollInterval(Constants.providerRequestProcessingTime.dividedBy(10))
+                .until(() -> loadBalancer.getAliveProviders().size() == 2));
+        // @formatter:on
+
+        System.out.println(MessageFormat.format(
+                "Check that at most {0} concurrent requests are sent to the half-open provider",
+                maxHalfOpenProbes));
+
+        Integer threads = 10;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<CompletableFuture<String>> futures = IntStream.range(0, threads)
+                .mapToObj(i -> CompletableFuture.supplyAsync(loadBalancer::get, executor))
+                .collect(Collectors.toList());
+        Long probes = futures.stream().map(CompletableFuture::join).filter("probed"::equals).count();
+        executor.shutdown();
+
+        System.out.println(MessageFormat.format("{0} probe requests", probes));
+        assertTrue(probes > 0 && probes <= maxHalfOpenProbes);
+
+        System.out.println("Check that the breaker closed after the successful probes");
+
+        Integer requestCount = probedProvider.getRequestCount();
+        for (int i = 0; i < threads; i++) {
+            assertDoesNotThrow(() -> loadBalancer.get());
+        }
+        assertEquals(requestCount + threads / 2, probedProvider.getRequestCount());
+    }
+
+    @Test
+    public void testProvidersHalfOpenSlowProbe() {
+        Duration processingTime = Duration.ofMillis(50);
+        AliveProvidersLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+        loadBalancer.setMaxAverageLatency(processingTime.dividedBy(2));
+        loadBalancer.setMaxHalfOpenProbes(1);
+
+        ConcurrencyCountProvider slowProvider =
+                new ConcurrencyCountProvider("slow", 10, processingTime);
+        Provider fastProvider = Utils.createRequestCountProvider("fast");
+        loadBalancer.registerProviders(List.of(slowProvider, fastProvider));
+
+        System.out.println("Eject the slow provider and wait until it becomes half-open");
+
+        assertEquals("slow", loadBalancer.get());
+        assertEquals(List.of(fastProvider), loadBalancer.getAliveProviders());
+
+        // @formatter:off
+        assertDoesNotThrow(() -> Awaitility.await()
+                .forever()
+                .pollInterval(Constants.providerRequestProcessingTime.dividedBy(10))
+                .until(() -> loadBalancer.getAliveProviders().size() == 2));
+        // @formatter:on
+
+        System.out.println("Check that a slow probe closes the breaker if it can't be ejected");
+
+        loadBalancer.setMaxEjectionPercent(0);
+        while (!"slow".equals(loadBalancer.get())) {
+            continue;
+        }
+
+        Integer threads = 10;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<CompletableFuture<String>> futures = IntStream.range(0, threads)
+                .mapToObj(i -> CompletableFuture.supplyAsync(loadBalancer::get, executor))
+                .collect(Collectors.toList());
+        futures.forEach(future -> assertDoesNotThrow(() -> future.get()));
+        executor.shutdown();
+
+        System.out.println(MessageFormat.format("{0} concurrent requests to the slow provider",
+                slowProvider.getMaxRequestsInFlight()));
+        assertTrue(slowProvider.getMaxRequestsInFlight() > 1);
+        assertEquals(2, loadBalancer.getAliveProviders().size());
+    }
+
+    @Test
+    public void testProvidersTimeoutRetry() {
+        Duration timeout = Duration.ofSeconds(1);
+        AliveProvidersLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+        loadBalancer.setMaxAttempts(2);
+        loadBalancer.setMaxConsecutiveFailures(1);
+
+        // The blocked provider is tried first
+        Provider blockedProvider = new BlockingProvider("blocked", Duration.ofSeconds(10));
+        Provider fastProvider = Utils.createRequestCountProvider("fast");
+        loadBalancer.registerProviders(List.of(blockedProvider, fastProvider));
+
+        System.out.println("Check that the request is retried on the other provider in time");
+
+        long start = System.nanoTime();
+        assertEquals("fast", loadBalancer.get(timeout));
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        System.out.println(MessageFormat.format("Request took {0} ms", elapsed.toMillis()));
+        assertTrue(elapsed.compareTo(timeout.dividedBy(2)) >= 0);
+        assertTrue(elapsed.compareTo(timeout) < 0);
+
+        System.out.println("Check that the blocked provider was ejected after its timeout");
+
+        assertEquals(List.of(fastProvider), loadBalancer.getAliveProviders());
+        for (int i = 0; i < 5; i++) {
+            assertEquals("fast", loadBalancer.get(timeout));
+        }
+    }
+
+    @Test
+    public void testProvidersTimeoutAllBlocked() {
+        Duration timeout = Duration.ofMillis(300);
+        LoadBalancer loadBalancer = Utils.createRoundRobinLoadBalancer();
+
+        Provider provider = Utils.createSimpleProvider();
+        loadBalancer.registerProviders(List.of(provider));
+
+        assertThrows(IllegalArgumentException.class, () -> loadBalancer.get(Duration.ZERO));
+
+        System.out.println("Make the only provider block its callers");
+
+        provider.setAvailability(false);
+
+        System.out.println("Check that the request gives up after the timeout");
+
+        long start = System.nanoTime();
+        assertThrows(RequestTimeoutException.class, () -> loadBalancer.get(timeout));
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        System.out.println(MessageFormat.format("Request took {0} ms", elapsed.toMillis()));
+        assertTrue(elapsed.compareTo(timeout) >= 0);
+        assertTrue(elapsed.compareTo(timeout.multipliedBy(2)) < 0);
+
+        System.out.println("Check that the abandoned request is dropped by the provider");
+
+        provider.setAvailability(true);
+        assertTrue(provider.getCurrentLoad() < Constants.eps);
+    }
+
+    @Test
+    public void testProvidersDefaultTimeout() {
+        Duration timeout = Duration.ofMillis(300);
+        BaseLoadBalancer loadBalancer = (BaseLoadBalancer) Utils.createRandomLoadBalancer();
+        loadBalancer.setDefaultTimeout(timeout);
+
+        Provider provider = Utils.createSimpleProvider();
+        loadBalancer.registerProviders(List.of(provider));
+        provider.setAvailability(false);
+
+        System.out.println("Check that both synchronous and asynchronous requests time out");
+
+        assertThrows(RequestTimeoutException.class, loadBalancer::get);
+
+        CompletableFuture<String> future = loadBalancer.getAsync();
+        ExecutionException exception = assertThrows(ExecutionException.class, future::get);
+        assertInstanceOf(TimeoutException.class, exception.getCause());
+
+        System.out.println("Disable the default timeout");
+
+        loadBalancer.setDefaultTimeout(null);
+        provider.setAvailability(true);
+        assertEquals(provider.get(), loadBalancer.get());
+    }
+
+    @Test
+    public void testProvidersHedging() {
+        Integer requests = 600;
+        Double budgetRatio = 0.2;
+        BaseLoadBalancer loadBalancer = (BaseLoadBalancer) Utils.createRandomLoadBalancer();
+        loadBalancer.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+
+        // 5% of the requests take 100 ms instead of almost nothing
+        List<Provider> providers = IntStream.range(0, 4)
+                .mapToObj(i -> (Provider) new TailLatencyProvider("provider-" + i,
+                        Duration.ofMillis(100), 0.05))
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(providers);
+
+        System.out.println("Measure the latency without hedging");
+
+        Long p99 = Utils.percentile(measureLatencies(loadBalancer, requests), 0.99);
+
+        System.out.println("Measure the latency when hedging after the 90th percentile");
+
+        loadBalancer.setHedging(0.9, budgetRatio);
+        measureLatencies(loadBalancer, requests / 2);
+        Long hedgedP99 = Utils.percentile(measureLatencies(loadBalancer, requests), 0.99);
+
+        System.out.println(MessageFormat.format(
+                "p99 latency: {0} us without hedging, {1} us with hedging (hedge rate: {2}, hedge win rate: {3})",
+                p99 / 1000, hedgedP99 / 1000, loadBalancer.getHedgeRate(),
+                loadBalancer.getHedgeWinRate()));
+        assertTrue(hedgedP99 < p99 / 2);
+        assertTrue(loadBalancer.getHedgeRate() > 0.0);
+        assertTrue(loadBalancer.getHedgeRate() <= budgetRatio + 10.0 / requests);
+        assertTrue(loadBalancer.getHedgeWinRate() > 0.0);
+
+        System.out.println("Disable hedging");
+
+        loadBalancer.setHedging(null, null);
+        assertEquals(0.0, loadBalancer.getHedgeRate());
+        assertDoesNotThrow(() -> loadBalancer.get());
+    }
+
+    @Test
+    public void testProvidersHedgingLatencyMetric() {
+        Integer requests = 300;
+        BaseLoadBalancer loadBalancer = (BaseLoadBalancer) Utils.createRoundRobinLoadBalancer();
+        loadBalancer.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+        loadBalancer.setHedging(0.4, 1.0);
+
+        // Every other request goes to the slow provider and is hedged to the fast one
+        loadBalancer.registerProviders(List.of(new BlockingProvider("fast", Duration.ofMillis(10)),
+                new BlockingProvider("slow", Duration.ofMillis(100))));
+
+        System.out.println("Compare the latency seen by the caller with the recorded one");
+
+        List<Long> latencies = measureLatencies(loadBalancer, requests);
+        Double mean = latencies.stream().mapToLong(Long::longValue).average().getAsDouble();
+        Duration recordedMean = loadBalancer.getMetrics().getHistogram("request.latency").getMean();
+
+        System.out.println(MessageFormat.format(
+                "Mean latency: {0} us seen, {1} us recorded (hedge rate: {2})",
+                Math.round(mean / 1000), recordedMean.toNanos() / 1000,
+                loadBalancer.getHedgeRate()));
+        assertTrue(loadBalancer.getHedgeRate() > 0.3);
+
+        // A hedge answers after the delay it was sent with, not right after it was sent
+        assertTrue(recordedMean.toNanos() > mean * 0.95);
+
+        loadBalancer.registerProviders(List.of());
+    }
+
+    @Test
+    public void testProvidersFullFallThrough() {
+        Duration processingTime = Duration.ofSeconds(2);
+        AliveProvidersLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+
+        // Both providers look idle to the strategy, even once they are full
+        List<Provider> providers = List.of(new StaleLoadProvider("first", 1, processingTime),
+                new StaleLoadProvider("second", 1, processingTime));
+        loadBalancer.registerProviders(providers);
+
+        System.out.println("Check that a full provider is skipped for the next candidate");
+
+        assertEquals(Set.of("first", "second"),
+                Set.of(loadBalancer.get(), loadBalancer.get()));
+
+        System.out.println("Check that the request is rejected instead of waiting when all are full");
+
+        long start = System.nanoTime();
+        assertThrows(MaxLoadException.class, () -> loadBalancer.get());
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        System.out.println(MessageFormat.format("Rejection took {0} ms", elapsed.toMillis()));
+        assertTrue(elapsed.compareTo(processingTime.dividedBy(2)) < 0);
+        assertEquals(providers, loadBalancer.getAliveProviders());
+    }
+
+    @Test
+    public void testProvidersMetrics() {
+        AliveProvidersLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+        loadBalancer.setMaxConsecutiveFailures(2);
+
+        FailingProvider failingProvider = new FailingProvider("failing");
+        Provider fullProvider = new StaleLoadProvider("full", 1, Duration.ofSeconds(2));
+        loadBalancer.registerProviders(List.of(failingProvider, fullProvider));
+
+        System.out.println("Send requests to a provider that fills up and one that fails");
+
+        // The full provider answers once, then the requests fall through to the failing one until
+        // it is ejected
+        assertEquals(Set.of("failing", "full"), Set.of(loadBalancer.get(), loadBalancer.get()));
+        failingProvider.setFailing(true);
+        assertThrows(IllegalStateException.class, () -> loadBalancer.get());
+        assertThrows(IllegalStateException.class, () -> loadBalancer.get());
+        assertThrows(MaxLoadException.class, () -> loadBalancer.get());
+
+        MetricsSnapshot metrics = loadBalancer.getMetrics();
+        System.out.println(MessageFormat.format("Metrics: {0}", metrics.getCounters()));
+
+        assertEquals(4, metrics.getCounter("requests"));
+        assertEquals(2, metrics.getCounter("requests.failed"));
+        assertEquals(1, metrics.getCounter("requests.rejected"));
+        assertEquals(0, metrics.getCounter("requests.inFlight"));
+        assertEquals(2, metrics.getCounter("providers.registered"));
+        assertEquals(1, metrics.getCounter("providers.alive"));
+        assertEquals(1, metrics.getCounter("providers.ejected"));
+        assertEquals(2, metrics.getHistogram("request.latency").getCount());
+
+        System.out.println("Check the metrics of each provider");
+
+        MetricsSnapshot failingMetrics = loadBalancer.getProviderMetrics(failingProvider);
+        assertEquals(3, failingMetrics.getCounter("requests"));
+        assertEquals(2, failingMetrics.getCounter("requests.failed"));
+        assertEquals(0, failingMetrics.getCounter("alive"));
+
+        MetricsSnapshot fullMetrics = loadBalancer.getProviderMetrics(fullProvider);
+        assertEquals(1, fullMetrics.getCounter("requests"));
+        assertEquals(1, fullMetrics.getCounter("alive"));
+
+        assertThrows(ProviderNotFoundException.class, () -> loadBalancer
+                .getProviderMetrics(Utils.createRequestCountProvider("unknown")));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1,1,5", "2,2,12", "4,3,30"})
+    public void testProvidersAdmissionQueue(Integer providerCount, Integer capacity,
+            Integer requests) {
+        Duration processingTime = Duration.ofMillis(200);
+        AliveProvidersLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+        loadBalancer.setAdmissionQueue(requests, Duration.ofSeconds(10), QueuePolicy.FIFO);
+
+        // Providers that never report any load, only the load balancer limits their requests
+        List<ConcurrencyCountProvider> providers = Utils.getDummyProviderNames(providerCount)
+                .stream().map(name -> new ConcurrencyCountProvider(name, capacity, processingTime))
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(List.copyOf(providers));
+
+        System.out.println(MessageFormat.format(
+                "Send {0} requests at the same time, more than the providers can handle", requests));
+
+        ExecutorService executor = Executors.newFixedThreadPool(requests);
+        long start = System.nanoTime();
+        List<CompletableFuture<String>> futures = IntStream.range(0, requests)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> loadBalancer.get(), executor))
+                .collect(Collectors.toList());
+
+        System.out.println("Check that all requests are served, without exceeding the capacities");
+
+        futures.forEach(future -> assertDoesNotThrow(() -> future.get()));
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        executor.shutdown();
+
+        Integer rounds = (requests + providerCount * capacity - 1) / (providerCount * capacity);
+        System.out.println(MessageFormat.format("Requests took {0} ms, {1} rounds expected",
+                elapsed.toMillis(), rounds));
+        assertTrue(elapsed.compareTo(processingTime.multipliedBy(rounds - 1)) > 0);
+        for (ConcurrencyCountProvider provider : providers) {
+            assertTrue(provider.getMaxRequestsInFlight() <= capacity);
+        }
+
+        MetricsSnapshot metrics = loadBalancer.getMetrics();
+        assertEquals(0, metrics.getCounter("queue.depth"));
+        assertEquals(0, metrics.getCounter("requests.rejected"));
+        assertEquals(requests.longValue(), metrics.getHistogram("queue.latency").getCount());
+    }
+
+    @Test
+    public void testProvidersAdmissionQueueLimits() {
+        Duration processingTime = Duration.ofSeconds(1);
+        Duration timeout = Duration.ofMillis(300);
+        AliveProvidersLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+        loadBalancer.setAdmissionQueue(2, timeout, QueuePolicy.FIFO);
+        loadBalancer.registerProviders(
+                List.of(new ConcurrencyCountProvider("provider", 1, processingTime)));
+
+        System.out.println("Check that the requests beyond the queue depth are rejected right "
+                + "away and the queued ones after the queue timeout");
+
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        List<CompletableFuture<Long>> futures = IntStream.range(0, 5)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> {
+                    long start = System.nanoTime();
+                    try {
+                        loadBalancer.get();
+                        return -1L;
+                    } catch (MaxLoadException e) {
+                        return System.nanoTime() - start;
+                    }
+                }, executor)).collect(Collectors.toList());
+
+        // One request is served by the provider, the other ones are rejected
+        List<Long> rejections = futures.stream().map(CompletableFuture::join)
+                .filter(elapsed -> elapsed >= 0).sorted().collect(Collectors.toList());
+        executor.shutdown();
+
+        System.out.println(MessageFormat.format("Rejections took {0} ns", rejections));
+        assertEquals(4, rejections.size());
+        assertTrue(rejections.get(1) < timeout.toNanos() / 2);
+        assertTrue(rejections.get(2) >= timeout.toNanos());
+        assertTrue(rejections.get(3) < processingTime.toNanos());
+        assertEquals(4, loadBalancer.getMetrics().getCounter("requests.rejected"));
+
+        System.out.println("Disable the queue and check that the requests are still served");
+
+        loadBalancer.setAdmissionQueue(null, null, null);
+        assertEquals("provider", loadBalancer.get());
+        assertEquals("provider", loadBalancer.get());
+    }
+
+    @Test
+    public void testProvidersAdmissionQueueTimeout() {
+        Duration processingTime = Duration.ofMillis(500);
+        Duration timeout = Duration.ofMillis(100);
+        AliveProvidersLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+        loadBalancer.setAdmissionQueue(2, Duration.ofSeconds(10), QueuePolicy.FIFO);
+        ConcurrencyCountProvider provider =
+                new ConcurrencyCountProvider("provider", 1, processingTime);
+        loadBalancer.registerProviders(List.of(provider));
+
+        System.out.println("Keep the provider busy and let a queued request time out");
+
+        CompletableFuture<String> served = loadBalancer.getAsync();
+        loadBalancer.setDefaultTimeout(timeout);
+        CompletableFuture<String> queued = loadBalancer.getAsync();
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> queued.get());
+        assertInstanceOf(TimeoutException.class, exception.getCause());
+
+        System.out.println("Check that the timed out request gave up its place in the queue");
+
+        assertEquals(0, loadBalancer.getMetrics().getCounter("queue.depth"));
+
+        System.out.println("Check that the freed slot is not handed to the timed out request");
+
+        assertEquals("provider", assertDoesNotThrow(() -> served.get()));
+        Utils.sleep(processingTime);
+        assertEquals(1, provider.getRequestCount());
+        assertEquals(0, loadBalancer.getMetrics().getCounter("requests.inFlight"));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"FIFO,123", "LIFO,321"})
+    public void testProvidersAdmissionQueuePolicy(QueuePolicy policy, String expectedOrder) {
+        Duration processingTime = Duration.ofMillis(300);
+        AliveProvidersLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+        loadBalancer.setAdmissionQueue(10, Duration.ofSeconds(10), policy);
+        loadBalancer.registerProviders(
+                List.of(new ConcurrencyCountProvider("provider", 1, processingTime)));
+
+        System.out.println(MessageFormat.format(
+                "Queue three requests behind a busy provider and check they are served in {0} "
+                        + "order", policy));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            String request = String.valueOf(i);
+            futures.add(CompletableFuture.runAsync(() -> {
+                loadBalancer.get();
+                order.add(request);
+            }, executor));
+            Utils.sleep(processingTime.dividedBy(10));
+        }
+
+        futures.forEach(future -> assertDoesNotThrow(() -> future.get()));
+        executor.shutdown();
+
+        System.out.println(MessageFormat.format("Requests served in order {0}", order));
+        assertEquals("0", order.get(0));
+        assertEquals(expectedOrder, String.join("", order.subList(1, order.size())));
+    }
+
+    @Test
+    public void testProvidersAdmissionQueueCoDel() {
+        Duration processingTime = Duration.ofMillis(50);
+        Duration timeout = Duration.ofMillis(500);
+        Duration duration = Duration.ofSeconds(3);
+        Integer clients = 10;
+
+        Map<QueuePolicy, Long> medians = new HashMap<>();
+        for (QueuePolicy policy : List.of(QueuePolicy.FIFO, QueuePolicy.CODEL)) {
+            AliveProvidersLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+            loadBalancer.setAdmissionQueue(clients, timeout, policy);
+            loadBalancer.registerProviders(
+                    List.of(new ConcurrencyCountProvider("provider", 1, processingTime)));
+
+            System.out.println(MessageFormat.format(
+                    "Overload the provider with {0} clients for {1} ms, {2} policy", clients,
+                    duration.toMillis(), policy));
+
+            ExecutorService executor = Executors.newFixedThreadPool(clients);
+            long end = System.nanoTime() + duration.toNanos();
+            CompletableFuture.allOf(IntStream.range(0, clients)
+                    .mapToObj(i -> CompletableFuture.runAsync(() -> {
+                        while (System.nanoTime() < end) {
+                            try {
+                                loadBalancer.get();
+                            } catch (MaxLoadException e) {
+                                Utils.sleep(processingTime);
+                            }
+                        }
+                    }, executor)).toArray(CompletableFuture[]::new)).join();
+            executor.shutdown();
+
+            MetricsSnapshot metrics = loadBalancer.getMetrics();
+            Long median =
+                    metrics.getHistogram("queue.latency").getValueAtPercentile(0.5).toMillis();
+            medians.put(policy, median);
+
+            System.out.println(MessageFormat.format(
+                    "{0} requests, {1} rejected, half of them waited less than {2} ms",
+                    metrics.getCounter("requests"), metrics.getCounter("requests.rejected"),
+                    median));
+        }
+
+        System.out.println("Check that the standing queue was dropped with CoDel");
+
+        assertTrue(medians.get(QueuePolicy.CODEL) < medians.get(QueuePolicy.FIFO) / 2);
+    }
+
+    @Test
+    public void testProvidersAdaptiveLimits() {
+        Duration processingTime = Duration.ofMillis(20);
+        Duration duration = Duration.ofSeconds(2);
+        Integer clients = 32;
+        List<Integer> trueCapacities = List.of(4, 16);
+
+        Map<Boolean, Long> completed = new HashMap<>();
+        for (Boolean adaptive : List.of(false, true)) {
+            AliveProvidersLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+            loadBalancer.setAdmissionQueue(clients, Duration.ofMillis(500), QueuePolicy.FIFO);
+            if (adaptive) {
+                loadBalancer.setAdaptiveLimits(100);
+            }
+
+            // Providers only report a capacity of 1, whatever they really handle
+            List<Provider> providers = IntStream.range(0, trueCapacities.size())
+                    .mapToObj(idx -> new SaturatingProvider("provider" + idx,
+                            trueCapacities.get(idx), processingTime))
+                    .collect(Collectors.toList());
+            loadBalancer.registerProviders(providers);
+
+            System.out.println(MessageFormat.format(
+                    "Send requests from {0} clients for {1} ms, adaptive limits: {2}", clients,
+                    duration.toMillis(), adaptive));
+
+            ExecutorService executor = Executors.newFixedThreadPool(clients);
+            long end = System.nanoTime() + duration.toNanos();
+            CompletableFuture.allOf(IntStream.range(0, clients)
+                    .mapToObj(i -> CompletableFuture.runAsync(() -> {
+                        while (System.nanoTime() < end) {
+                            try {
+                                loadBalancer.get();
+                            } catch (MaxLoadException e) {
+                                Utils.sleep(processingTime);
+                            }
+                        }
+                    }, executor)).toArray(CompletableFuture[]::new)).join();
+            executor.shutdown();
+
+            MetricsSnapshot metrics = loadBalancer.getMetrics();
+            Long requests = metrics.getCounter("requests") - metrics.getCounter("requests.failed")
+                    - metrics.getCounter("requests.rejected");
+            completed.put(adaptive, requests);
+            System.out.println(MessageFormat.format("{0} requests completed", requests));
+
+            for (int idx = 0; idx < providers.size(); idx++) {
+                Long limit = loadBalancer.getProviderMetrics(providers.get(idx)).getCounter("limit");
+                System.out.println(MessageFormat.format(
+                        "Provider handles {0} requests at the same time, limit is {1}",
+                        trueCapacities.get(idx), limit));
+
+                if (adaptive) {
+                    assertTrue(limit > 1);
+                    assertTrue(limit <= 2 * trueCapacities.get(idx) + 6);
+                } else {
+                    assertEquals(1L, limit);
+                }
+            }
+        }
+
+        System.out.println("Check that the learned limits increased the throughput");
+
+        assertTrue(completed.get(true) > 2 * completed.get(false));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1,10", "4,10", "10,4", "10,1000"})
+    public void testProvidersBatch(Integer providerCount, Integer count) {
+        LoadBalancer loadBalancer = Utils.createRandomLoadBalancer();
+
+        // Providers that are never loaded and report a capacity of a single request
+        loadBalancer.registerProviders(Utils.getDummyProviderNames(providerCount).stream()
+                .map(Utils::createRequestCountProvider).collect(Collectors.toList()));
+
+        System.out.println(MessageFormat.format("Send a batch of {0} requests", count));
+
+        List<String> results = loadBalancer.getBatch(count);
+        assertEquals(count, results.size());
+
+        System.out.println("Check that the requests were spread evenly over the providers");
+
+        Map<String, Integer> requestsPerProvider = new HashMap<>();
+        results.forEach(uuid -> requestsPerProvider.merge(uuid, 1, Integer::sum));
+        assertEquals(Math.min(count, providerCount), requestsPerProvider.size());
+        for (Integer requests : requestsPerProvider.values()) {
+            assertTrue(requests <= (count + providerCount - 1) / providerCount);
+            assertTrue(requests >= count / providerCount);
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> loadBalancer.getBatch(0));
+    }
+
+    @Test
+    public void testProvidersBatchCapacity() {
+        LoadBalancer loadBalancer = Utils.createRoundRobinLoadBalancer();
+        loadBalancer.registerProviders(
+                List.of(new SimpleProvider("small", 1, Constants.providerRequestProcessingTime),
+                        new SimpleProvider("large", 3, Constants.providerRequestProcessingTime)));
+
+        System.out.println("Check that a batch is spread according to the free capacity");
+
+        List<String> results = loadBalancer.getBatch(4);
+        assertEquals(1, Collections.frequency(results, "small"));
+        assertEquals(3, Collections.frequency(results, "large"));
+
+        System.out.println("Check that a batch is rejected while the providers are full");
+
+        assertThrows(MaxLoadException.class, () -> loadBalancer.getBatch(4));
+        assertInstanceOf(MaxLoadException.class, assertThrows(ExecutionException.class,
+                () -> loadBalancer.getBatchAsync(1).get()).getCause());
+    }
+
+    @Test
+    public void testProvidersBatchParallel() {
+        Duration processingTime = Duration.ofMillis(200);
+        BaseLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+        loadBalancer.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+        loadBalancer.registerProviders(Utils.getDummyProviderNames(4).stream()
+                .map(name -> new BlockingProvider(name, processingTime))
+                .collect(Collectors.toList()));
+
+        System.out.println("Send a batch of 8 requests to providers that block for 200 ms each");
+
+        long start = System.nanoTime();
+        List<String> results = loadBalancer.getBatch(8);
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        System.out.println(MessageFormat.format("Batch took {0} ms", elapsed.toMillis()));
+        System.out.println("Check that the requests were processed in parallel");
+
+        assertEquals(8, results.size());
+        assertTrue(elapsed.compareTo(processingTime.multipliedBy(2)) < 0);
+
+        // The outcome of the last request may be recorded right after the batch completed
+        // @formatter:off
+        assertDoesNotThrow(() -> Awaitility.await()
+                .atMost(processingTime)
+                .until(() -> loadBalancer.getMetrics().getCounter("requests") == 8L));
+        // @formatter:on
+    }
+
+    @Test
+    public void testProvidersBatchAdmissionQueue() {
+        Duration processingTime = Duration.ofMillis(100);
+        AliveProvidersLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+        loadBalancer.setAdmissionQueue(10, Duration.ofSeconds(10), QueuePolicy.FIFO);
+
+        List<ConcurrencyCountProvider> providers = Utils.getDummyProviderNames(2).stream()
+                .map(name -> new ConcurrencyCountProvider(name, 2, processingTime))
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(List.copyOf(providers));
+
+        System.out.println("Send a batch larger than the providers can handle at the same time");
+
+        List<String> results = assertDoesNotThrow(() -> loadBalancer.getBatchAsync(10).get());
+
+        System.out.println("Check that the batch waited in the queue, without exceeding the limits");
+
+        assertEquals(10, results.size());
+        for (ConcurrencyCountProvider provider : providers) {
+            assertTrue(provider.getMaxRequestsInFlight() <= 2);
+        }
+        assertEquals(0L, loadBalancer.getMetrics().getCounter("requests.rejected"));
+    }
+
+    private static List<Long> measureLatencies(LoadBalancer loadBalancer, Integer requests) {
+        List<Long> latencies = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            long start = System.nanoTime();
+            loadBalancer.get();
+            latencies.add(System.nanoTime() - start);
+        }
+        return latencies;
+    }
+
+    private static void sendIgnoringFailures(LoadBalancer loadBalancer, Integer requests) {
+        for (int i = 0; i < requests; i++) {
+            try {
+                loadBalancer.get();
+            } catch (IllegalStateException e) {
+                continue;
+            }
+        }
+    }
 }
@@ -0,0 +1,195 @@
+package com.corcoja.demo;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.text.MessageFormat;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import com.corcoja.demo.error.MaxLoadException;
+import com.corcoja.demo.impl.ConsistentHashLoadBalancer;
+import com.corcoja.demo.impl.SimpleProvider;
+import com.corcoja.demo.protocol.LoadBalancer;
+import com.corcoja.demo.protocol.Provider;
+
+public class ConsistentHashLoadBalancerTests {
+
+    @ParameterizedTest
+    @CsvSource({"1,1000", "4,10000", "10,10000"})
+    public void testConsistentHashStickyKeys(Integer providerCount, Integer keys) {
+        LoadBalancer loadBalancer = Utils.createConsistentHashLoadBalancer();
+
+        // Create providers and register them on the load balancer
+        loadBalancer.registerProviders(Utils.getDummyProviderNames(providerCount).stream()
+                .map(Utils::createRequestCountProvider).collect(Collectors.toList()));
+
+        System.out.println("Check that each key is always sent to the same provider");
+
+        Map<String, String> owners = route(loadBalancer, keys);
+        for (int round = 0; round < 3; round++) {
+            assertEquals(owners, route(loadBalancer, keys));
+        }
+
+        System.out.println("Check that keys are spread over all providers");
+
+        Map<String, Integer> keysPerProvider = new HashMap<>();
+        owners.values().forEach(uuid -> keysPerProvider.merge(uuid, 1, Integer::sum));
+        for (Integer count : keysPerProvider.values()) {
+            System.out.println(MessageFormat.format("Provider owns {0} keys", count));
+        }
+        assertEquals(providerCount, keysPerProvider.size());
+        for (Integer count : keysPerProvider.values()) {
+            assertTrue(count > 0.5 * keys / providerCount);
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"4,10000", "10,10000"})
+    public void testConsistentHashRebalance(Integer providerCount, Integer keys) {
+        List<String> providerNames = Utils.getDummyProviderNames(providerCount);
+        LoadBalancer loadBalancer = Utils.createConsistentHashLoadBalancer();
+
+        // Create providers and register them on the load balancer
+        List<Provider> providers = providerNames.stream().map(Utils::createRequestCountProvider)
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(providers);
+        Map<String, String> owners = route(loadBalancer, keys);
+
+        System.out.println("Add a provider and check that only the keys it now owns moved");
+
+        Provider newProvider = Utils.createRequestCountProvider("new");
+        loadBalancer.addProvider(newProvider);
+        Map<String, String> ownersAfterAdd = route(loadBalancer, keys);
+
+        Integer moved = 0;
+        for (Map.Entry<String, String> entry : owners.entrySet()) {
+            String owner = ownersAfterAdd.get(entry.getKey());
+            if (!owner.equals(entry.getValue())) {
+                assertEquals("new", owner);
+                moved++;
+            }
+        }
+
+        Float expectedRate = 1.0f / (providerCount + 1);
+        Float rate = (float) moved / keys;
+        System.out.println(
+                MessageFormat.format("Moved keys: expected {0}, actual {1}", expectedRate, rate));
+        assertTrue(Math.abs(rate - expectedRate) < 0.5 * expectedRate);
+
+        System.out.println("Remove a provider and check that only the keys it owned moved");
+
+        String removedProvider = providerNames.get(0);
+        loadBalancer.removeProvider(providers.get(0));
+        Map<String, String> ownersAfterRemove = route(loadBalancer, keys);
+
+        for (Map.Entry<String, String> entry : ownersAfterAdd.entrySet()) {
+            String owner = ownersAfterRemove.get(entry.getKey());
+            if (entry.getValue().equals(removedProvider)) {
+                assertNotEquals(entry.getValue(), owner);
+            } else {
+                assertEquals(entry.getValue(), owner);
+            }
+        }
+    }
+
+    @Test
+    public void testConsistentHashOverloadedOwner() {
+        LoadBalancer loadBalancer = Utils.createConsistentHashLoadBalancer();
+
+        // Create providers that can only handle a single request each
+        List<Provider> providers = Utils.getDummyProviderNames(3).stream()
+                .map(uuid -> new SimpleProvider(uuid, 1, Constants.providerRequestProcessingTime))
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(providers);
+
+        System.out.println("Check that a key goes to the next provider when its owner is full");
+
+        String owner = loadBalancer.get("key");
+        String fallback = loadBalancer.get("key");
+        String lastFallback = loadBalancer.get("key");
+        assertNotEquals(owner, fallback);
+        assertNotEquals(owner, lastFallback);
+        assertNotEquals(fallback, lastFallback);
+
+        assertThrows(MaxLoadException.class, () -> loadBalancer.get("key"));
+    }
+
+    @Test
+    public void testConsistentHashDownOwner() {
+        List<String> providerNames = Utils.getDummyProviderNames(4);
+        ConsistentHashLoadBalancer loadBalancer = Utils.createConsistentHashLoadBalancer();
+
+        // Create providers and register them on the load balancer
+        List<Provider> providers = providerNames.stream().map(Utils::createSimpleProvider)
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(providers);
+
+        // Find the owner of the key
+        String owner = loadBalancer.get("key");
+        Provider ownerProvider = providers.get(providerNames.indexOf(owner));
+
+        System.out.println("Take the owner of the key down and wait until it is detected");
+
+        ownerProvider.setAvailability(false);
+
+        // @formatter:off
+        assertDoesNotThrow(() -> Awaitility.await()
+                .forever()
+                .pollInterval(Constants.providerRequestProcessingTime.dividedBy(2))
+                .until(() -> getAliveProviders(loadBalancer) == providers.size() - 1));
+        // @formatter:on
+
+        System.out.println("Check that the key is sent to another provider");
+
+        String fallback = loadBalancer.get("key");
+        assertNotEquals(owner, fallback);
+
+        System.out.println("Bring the owner back and check that the key returns to it");
+
+        ownerProvider.setAvailability(true);
+
+        // @formatter:off
+        assertDoesNotThrow(() -> Awaitility.await()
+                .forever()
+                .pollInterval(Constants.providerRequestProcessingTime.dividedBy(2))
+                .until(() -> getAliveProviders(loadBalancer) == providers.size()));
+        // @formatter:on
+
+        assertEquals(owner, loadBalancer.get("key"));
+    }
+
+    @Test
+    public void testConsistentHashNullKey() {
+        LoadBalancer loadBalancer = Utils.createConsistentHashLoadBalancer();
+        loadBalancer.registerProviders(List.of(Utils.createRequestCountProvider("provider")));
+
+        System.out.println("Check that a `null` key is rejected");
+
+        assertThrows(IllegalArgumentException.class, () -> loadBalancer.get((String) null));
+
+        System.out.println("Check that requests without a key are still served");
+
+        assertEquals("provider", loadBalancer.get());
+    }
+
+    private static Map<String, String> route(LoadBalancer loadBalancer, Integer keys) {
+        Map<String, String> owners = new HashMap<>();
+        for (int i = 0; i < keys; i++) {
+            String key = "key-" + i;
+            owners.put(key, loadBalancer.get(key));
+        }
+        return owners;
+    }
+
+    private static Long getAliveProviders(ConsistentHashLoadBalancer loadBalancer) {
+        return loadBalancer.getMetrics().getCounter("providers.alive");
+    }
+}
@@ -0,0 +1,95 @@
+package com.corcoja.demo;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.text.MessageFormat;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import com.corcoja.demo.error.MaxLoadException;
+import com.corcoja.demo.protocol.LoadBalancer;
+import com.corcoja.demo.protocol.Provider;
+
+public class LeastLoadedLoadBalancerTests {
+
+    @Test
+    public void testLeastLoadedOneProvider() {
+        String customUuid = Constants.dummyProviderName;
+        Provider provider = Utils.createSimpleProvider(customUuid);
+
+        LoadBalancer loadBalancer = Utils.createLeastLoadedLoadBalancer();
+        loadBalancer.registerProviders(List.of(provider));
+
+        System.out.println(MessageFormat.format(
+                "Send {0} requests to the provider. All of them must return the same UUID",
+                Constants.providerMaxConcurrentRequests));
+
+        for (int i = 0; i < Constants.providerMaxConcurrentRequests; i++) {
+            assertEquals(customUuid, loadBalancer.get());
+        }
+
+        assertThrows(MaxLoadException.class, loadBalancer::get);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 5, 10})
+    public void testLeastLoadedFullScan(Integer providerCount) {
+        List<String> providerNames = Utils.getDummyProviderNames(providerCount);
+        LoadBalancer loadBalancer = Utils.createLeastLoadedLoadBalancer(providerCount);
+
+        // Create providers and register them on the load balancer
+        List<Provider> providers = providerNames.stream().map(Utils::createSimpleProvider)
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(providers);
+
+        System.out.println("Load each provider with a different amount of requests");
+
+        for (int i = 0; i < providerCount; i++) {
+            for (int j = 0; j < providerCount - i; j++) {
+                providers.get(i).get();
+            }
+        }
+
+        System.out.println("Check that requests are always sent to the least loaded provider");
+
+        for (int i = 0; i < providerCount; i++) {
+            Float minLoad = providers.stream().map(Provider::getCurrentLoad).min(Float::compare)
+                    .orElseThrow();
+            String uuid = loadBalancer.get();
+            Provider selected = providers.get(providerNames.indexOf(uuid));
+            assertTrue(selected.getCurrentLoad() - minLoad
+                    <= 1.0f / Constants.providerMaxConcurrentRequests + Constants.eps);
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1,11", "2,25", "5,99", "10,999"})
+    public void testLeastLoadedMultipleProvidersOverloaded(Integer providerCount,
+            Integer requests) {
+        List<String> providerNames = Utils.getDummyProviderNames(providerCount);
+        LoadBalancer loadBalancer = Utils.createLeastLoadedLoadBalancer();
+
+        // Create providers and register them on the load balancer
+        List<Provider> providers = providerNames.stream().map(Utils::createSimpleProvider)
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(providers);
+
+        System.out.println("Check that all capacity is used before the load balancer throws an "
+                + "exception");
+
+        for (int i = 0; i < providerCount * Constants.providerMaxConcurrentRequests; i++) {
+            assertDoesNotThrow(() -> loadBalancer.get());
+        }
+
+        assertThrows(MaxLoadException.class, () -> {
+            for (int i = 0; i < requests; i++) {
+                loadBalancer.get();
+            }
+        });
+    }
+}
@@ -0,0 +1,289 @@
+package com.corcoja.demo;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.text.MessageFormat;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import com.corcoja.demo.Utils.FailingProvider;
+import com.corcoja.demo.impl.BaseLoadBalancer;
+import com.corcoja.demo.impl.LoadBalancerPublisher;
+import com.corcoja.demo.impl.SimpleProvider;
+import com.corcoja.demo.metrics.MetricsSnapshot;
+
+public class LoadBalancerPublisherTests {
+
+    /**
+     * Subscriber that records the signals it receives and the rule violations it observes.
+     */
+    private static class RecordingSubscriber implements Flow.Subscriber<String> {
+
+        private final Queue<String> items = new ConcurrentLinkedQueue<>();
+
+        private final AtomicLong requested = new AtomicLong();
+
+        private final AtomicBoolean inOnNext = new AtomicBoolean();
+
+        private final Queue<String> violations = new ConcurrentLinkedQueue<>();
+
+        private volatile Flow.Subscription subscription;
+
+        private volatile Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (this.subscription != null) {
+                violations.add("onSubscribe signalled twice");
+            }
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(String item) {
+            if (!inOnNext.compareAndSet(false, true)) {
+                violations.add("onNext signalled concurrently");
+            }
+            if (error != null) {
+                violations.add("onNext signalled after onError");
+            }
+            items.add(item);
+            if (items.size() > requested.get()) {
+                violations.add("onNext signalled without demand");
+            }
+
+            // Give concurrent signals a chance to overlap
+            Thread.yield();
+            inOnNext.set(false);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (error != null) {
+                violations.add("onError signalled twice");
+            }
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            violations.add("onComplete signalled by an endless stream");
+        }
+
+        void request(long n) {
+            requested.accumulateAndGet(n,
+                    (current, added) -> Math.max(current, current + added));
+            subscription.request(n);
+        }
+
+        Integer getItemCount() {
+            return items.size();
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1,1", "4,10", "10,1000"})
+    public void testPublisherDemand(Integer providerCount, Integer demand) {
+        BaseLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+        loadBalancer.registerProviders(Utils.getDummyProviderNames(providerCount).stream()
+                .map(Utils::createRequestCountProvider).collect(Collectors.toList()));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new LoadBalancerPublisher(loadBalancer).subscribe(subscriber);
+
+        System.out.println("Check that nothing is signalled before any demand (rule 1.1)");
+
+        Utils.sleep(Duration.ofMillis(50));
+        assertEquals(0, subscriber.getItemCount());
+
+        System.out.println(MessageFormat.format(
+                "Request {0} identifiers and check that exactly as many are signalled", demand));
+
+        subscriber.request(demand);
+        awaitItems(subscriber, demand);
+        Utils.sleep(Duration.ofMillis(50));
+        assertEquals(demand, subscriber.getItemCount());
+
+        System.out.println("Request more and check that the stream resumes");
+
+        subscriber.request(demand);
+        awaitItems(subscriber, 2 * demand);
+        Utils.sleep(Duration.ofMillis(50));
+        assertEquals(2 * demand, subscriber.getItemCount());
+
+        assertEquals(List.of(), List.copyOf(subscriber.violations));
+        assertNull(subscriber.error);
+    }
+
+    @Test
+    public void testPublisherSerialSignals() {
+        BaseLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+        loadBalancer.registerProviders(Utils.getDummyProviderNames(16).stream()
+                .map(Utils::createRequestCountProvider).collect(Collectors.toList()));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new LoadBalancerPublisher(loadBalancer).subscribe(subscriber);
+
+        System.out.println("Request identifiers from several threads at the same time");
+
+        List<Thread> threads = List.of(1, 2, 3, 4).stream()
+                .map(i -> new Thread(() -> {
+                    for (int j = 0; j < 1000; j++) {
+                        subscriber.request(1);
+                    }
+                })).collect(Collectors.toList());
+        threads.forEach(Thread::start);
+        threads.forEach(thread -> assertDoesNotThrow(() -> thread.join()));
+
+        System.out.println("Check that signals were serialized and bounded by demand (rule 1.3)");
+
+        awaitItems(subscriber, 4000);
+        assertEquals(List.of(), List.copyOf(subscriber.violations));
+    }
+
+    @Test
+    public void testPublisherUnboundedDemand() {
+        BaseLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+        loadBalancer.registerProviders(List.of(Utils.createRequestCountProvider("provider")));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new LoadBalancerPublisher(loadBalancer).subscribe(subscriber);
+
+        System.out.println("Check that demand summing up past Long.MAX_VALUE is unbounded (3.17)");
+
+        subscriber.request(Long.MAX_VALUE - 1);
+        subscriber.request(Long.MAX_VALUE - 1);
+        awaitItems(subscriber, 1000);
+
+        subscriber.subscription.cancel();
+        assertNull(subscriber.error);
+    }
+
+    @Test
+    public void testPublisherCancel() {
+        BaseLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+        loadBalancer.registerProviders(Utils.getDummyProviderNames(4).stream()
+                .map(Utils::createRequestCountProvider).collect(Collectors.toList()));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new LoadBalancerPublisher(loadBalancer).subscribe(subscriber);
+
+        subscriber.request(Long.MAX_VALUE);
+        awaitItems(subscriber, 100);
+
+        System.out.println("Cancel and check that the stream stops (rule 3.13)");
+
+        subscriber.subscription.cancel();
+        Integer itemsAtCancel = subscriber.getItemCount();
+        Utils.sleep(Duration.ofMillis(50));
+        Long requests = loadBalancer.getMetrics().getCounter("requests");
+        Utils.sleep(Duration.ofMillis(100));
+
+        assertTrue(subscriber.getItemCount() <= itemsAtCancel + 256);
+        assertEquals(requests, loadBalancer.getMetrics().getCounter("requests"));
+
+        System.out.println("Check that cancelling and requesting again is a no-op (rule 3.6, 3.7)");
+
+        subscriber.subscription.cancel();
+        subscriber.request(10);
+        assertNull(subscriber.error);
+    }
+
+    @Test
+    public void testPublisherInvalidRequest() {
+        BaseLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+        loadBalancer.registerProviders(List.of(Utils.createRequestCountProvider("provider")));
+        LoadBalancerPublisher publisher = new LoadBalancerPublisher(loadBalancer);
+
+        System.out.println("Check that a `null` subscriber is rejected (rule 1.9)");
+
+        assertThrows(NullPointerException.class, () -> publisher.subscribe(null));
+
+        System.out.println("Check that a non-positive request signals onError (rule 3.9)");
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(0);
+
+        // @formatter:off
+        assertDoesNotThrow(() -> Awaitility.await()
+                .atMost(Duration.ofSeconds(5))
+                .until(() -> subscriber.error != null));
+        // @formatter:on
+
+        assertInstanceOf(IllegalArgumentException.class, subscriber.error);
+        assertEquals(List.of(), List.copyOf(subscriber.violations));
+    }
+
+    @Test
+    public void testPublisherSaturatedFleet() {
+        Duration processingTime = Duration.ofMillis(100);
+        BaseLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+        loadBalancer.registerProviders(List.of(new SimpleProvider("provider0", 2, processingTime),
+                new SimpleProvider("provider1", 2, processingTime)));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new LoadBalancerPublisher(loadBalancer).subscribe(subscriber);
+
+        System.out.println("Request 20 identifiers from providers that handle 4 at the same time");
+
+        long start = System.nanoTime();
+        subscriber.request(20);
+        awaitItems(subscriber, 20);
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        System.out.println("Check that the stream slowed down to the capacity, without failing");
+
+        MetricsSnapshot metrics = loadBalancer.getMetrics();
+        System.out.println(MessageFormat.format("Stream took {0} ms, {1} requests rejected",
+                elapsed.toMillis(), metrics.getCounter("requests.rejected")));
+
+        assertNull(subscriber.error);
+        assertTrue(elapsed.compareTo(processingTime.multipliedBy(4)) >= 0);
+        assertTrue(metrics.getCounter("requests.rejected") < 20);
+        assertEquals(List.of(), List.copyOf(subscriber.violations));
+    }
+
+    @Test
+    public void testPublisherFailure() {
+        FailingProvider provider = new FailingProvider("provider");
+        BaseLoadBalancer loadBalancer = Utils.createAliveProvidersLoadBalancer();
+        loadBalancer.registerProviders(List.of(provider));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new LoadBalancerPublisher(loadBalancer).subscribe(subscriber);
+
+        subscriber.request(10);
+        awaitItems(subscriber, 10);
+
+        System.out.println("Make the requests fail and check that the stream terminates");
+
+        provider.setFailing(true);
+        subscriber.request(10);
+
+        // @formatter:off
+        assertDoesNotThrow(() -> Awaitility.await()
+                .atMost(Duration.ofSeconds(5))
+                .until(() -> subscriber.error != null));
+        // @formatter:on
+
+        assertInstanceOf(IllegalStateException.class, subscriber.error);
+        assertEquals(List.of(), List.copyOf(subscriber.violations));
+    }
+
+    private static void awaitItems(RecordingSubscriber subscriber, Integer count) {
+
+        // @formatter:off
+        assertDoesNotThrow(() -> Awaitility.await()
+                .atMost(Duration.ofSeconds(10))
+                .until(() -> subscriber.getItemCount() >= count));
+        // @formatter:on
+    }
+}
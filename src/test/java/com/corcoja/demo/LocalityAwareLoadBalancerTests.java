@@ -0,0 +1,246 @@
+package com.corcoja.demo;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.text.MessageFormat;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import com.corcoja.demo.Utils.TieredProvider;
+import com.corcoja.demo.error.ProviderNotFoundException;
+import com.corcoja.demo.impl.BaseLoadBalancer;
+import com.corcoja.demo.impl.ConsistentHashLoadBalancer;
+import com.corcoja.demo.impl.LeastLoadedLoadBalancer;
+import com.corcoja.demo.impl.LocalityAwareLoadBalancer;
+import com.corcoja.demo.impl.RandomLoadBalancer;
+import com.corcoja.demo.impl.RoundRobinLoadBalancer;
+import com.corcoja.demo.impl.SimpleProvider;
+import com.corcoja.demo.impl.WeightedRandomLoadBalancer;
+import com.corcoja.demo.impl.WeightedRoundRobinLoadBalancer;
+import com.corcoja.demo.protocol.Provider;
+
+public class LocalityAwareLoadBalancerTests {
+
+    private static final Long checkAliveInterval = 100L;
+
+    @ParameterizedTest
+    @CsvSource({"RANDOM", "ROUND_ROBIN", "LEAST_LOADED", "WEIGHTED_ROUND_ROBIN",
+            "WEIGHTED_RANDOM", "CONSISTENT_HASH"})
+    public void testLocalityLocalOnly(String innerStrategy) {
+        LocalityAwareLoadBalancer loadBalancer = createLoadBalancer(innerStrategy);
+        List<TieredProvider> localProviders = createProviders(4, 0, 0);
+        List<TieredProvider> remoteProviders = createProviders(4, 4, 1);
+        loadBalancer.registerProviders(concat(localProviders, remoteProviders));
+
+        System.out.println("Check that all requests stay in the local tier while it is healthy");
+
+        assertEquals(Map.of(0, 1.0, 1, 0.0), loadBalancer.getTierShares());
+        for (int i = 0; i < 1000; i++) {
+            assertDoesNotThrow(() -> loadBalancer.get());
+        }
+        assertDoesNotThrow(() -> loadBalancer.getBatch(8));
+
+        assertEquals(1008, getRequestCount(localProviders));
+        assertEquals(0, getRequestCount(remoteProviders));
+
+        System.out.println("Check that the inner strategy spread them over the local tier");
+
+        for (TieredProvider provider : localProviders) {
+            assertTrue(provider.getRequestCount() > 1008 / 4 / 2);
+        }
+    }
+
+    @Test
+    public void testLocalitySpillover() {
+        LocalityAwareLoadBalancer loadBalancer = createLoadBalancer("ROUND_ROBIN");
+        List<TieredProvider> localProviders = createProviders(4, 0, 0);
+        List<TieredProvider> remoteProviders = createProviders(4, 4, 1);
+        loadBalancer.registerProviders(concat(localProviders, remoteProviders));
+
+        System.out.println("Kill half of the local providers");
+
+        localProviders.get(0).setAvailability(false);
+        localProviders.get(1).setAvailability(false);
+        awaitAliveProviders(loadBalancer, 6);
+
+        System.out.println("Check that the missing share of the local tier spills over");
+
+        Map<Integer, Double> shares = loadBalancer.getTierShares();
+        System.out.println(MessageFormat.format("Tier shares: {0}", shares));
+        assertEquals(0.5 / 0.7, shares.get(0), 1e-9);
+        assertEquals(1.0 - 0.5 / 0.7, shares.get(1), 1e-9);
+
+        Integer requests = 10000;
+        for (int i = 0; i < requests; i++) {
+            assertDoesNotThrow(() -> loadBalancer.get());
+        }
+
+        double localShare = (double) getRequestCount(localProviders) / requests;
+        System.out.println(MessageFormat.format("Local tier got {0} of the requests", localShare));
+        assertEquals(0.5 / 0.7, localShare, 0.03);
+        assertEquals(0, localProviders.get(0).getRequestCount());
+        assertEquals(0, localProviders.get(1).getRequestCount());
+
+        System.out.println("Check that a higher threshold spills over more requests");
+
+        loadBalancer.setSpilloverThreshold(1.0);
+        assertEquals(0.5, loadBalancer.getTierShares().get(0), 1e-9);
+        assertThrows(IllegalArgumentException.class,
+                () -> loadBalancer.setSpilloverThreshold(0.0));
+
+        System.out.println("Revive the local providers and check that traffic comes back");
+
+        localProviders.get(0).setAvailability(true);
+        localProviders.get(1).setAvailability(true);
+        awaitAliveProviders(loadBalancer, 8);
+        assertEquals(1.0, loadBalancer.getTierShares().get(0), 1e-9);
+    }
+
+    @Test
+    public void testLocalityAllLocalDown() {
+        LocalityAwareLoadBalancer loadBalancer = createLoadBalancer("RANDOM");
+        List<TieredProvider> localProviders = createProviders(2, 0, 0);
+        List<TieredProvider> zoneProviders = createProviders(2, 2, 1);
+        List<TieredProvider> regionProviders = createProviders(2, 4, 2);
+        loadBalancer.registerProviders(concat(concat(localProviders, zoneProviders),
+                regionProviders));
+
+        System.out.println("Kill all local providers");
+
+        localProviders.forEach(provider -> provider.setAvailability(false));
+        awaitAliveProviders(loadBalancer, 4);
+
+        System.out.println("Check that all requests go to the next tier only");
+
+        assertEquals(1.0, loadBalancer.getTierShares().get(1), 1e-9);
+        for (int i = 0; i < 1000; i++) {
+            assertDoesNotThrow(() -> loadBalancer.get());
+        }
+        assertEquals(0, getRequestCount(localProviders));
+        assertEquals(1000, getRequestCount(zoneProviders));
+        assertEquals(0, getRequestCount(regionProviders));
+    }
+
+    @Test
+    public void testLocalityOverloadSpillover() {
+        Duration processingTime = Duration.ofMillis(500);
+
+        // A busy simple provider fails its health checks, keep them out of the way
+        LocalityAwareLoadBalancer loadBalancer = new LocalityAwareLoadBalancer(
+                Constants.loadBalancerAliveInterval.toMillis(),
+                Constants.loadBalancerAliveTimeout.toMillis(), RoundRobinLoadBalancer::new);
+        Provider localProvider = new SimpleProvider("local", 1, processingTime);
+        TieredProvider remoteProvider = new TieredProvider("remote", 1);
+        loadBalancer.registerProviders(List.of(localProvider, remoteProvider));
+
+        System.out.println("Keep the only local provider busy");
+
+        CompletableFuture<String> localRequest = loadBalancer.getAsync();
+
+        System.out.println("Check that the next requests spill over to the remote tier");
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("remote", assertDoesNotThrow(() -> loadBalancer.get()));
+        }
+
+        System.out.println("Check that requests come back once the local provider is free");
+
+        assertEquals("local", assertDoesNotThrow(() -> localRequest.join()));
+
+        // @formatter:off
+        assertDoesNotThrow(() -> Awaitility.await()
+                .atMost(processingTime.multipliedBy(10))
+                .until(() -> localProvider.getCurrentLoad() == 0.0f));
+        // @formatter:on
+
+        assertEquals("local", assertDoesNotThrow(() -> loadBalancer.get()));
+    }
+
+    @Test
+    public void testLocalitySetTier() {
+        LocalityAwareLoadBalancer loadBalancer = createLoadBalancer("ROUND_ROBIN");
+        TieredProvider first = new TieredProvider("first", 1);
+        TieredProvider second = new TieredProvider("second", 0);
+        loadBalancer.registerProviders(List.of(first, second));
+
+        System.out.println("Check that the tier reported by the providers is used by default");
+
+        assertEquals("second", assertDoesNotThrow(() -> loadBalancer.get()));
+
+        System.out.println("Override the tiers and check that the requests follow");
+
+        assertDoesNotThrow(() -> loadBalancer.setTier(first, 0));
+        assertDoesNotThrow(() -> loadBalancer.setTier(second, 2));
+        assertEquals(0, loadBalancer.getTier(first));
+        assertEquals(Map.of(0, 1.0, 2, 0.0), loadBalancer.getTierShares());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("first", assertDoesNotThrow(() -> loadBalancer.get()));
+        }
+
+        System.out.println("Check that invalid overrides are rejected");
+
+        assertThrows(IllegalArgumentException.class, () -> loadBalancer.setTier(first, -1));
+        assertThrows(ProviderNotFoundException.class,
+                () -> loadBalancer.setTier(new TieredProvider("unknown", 0), 0));
+    }
+
+    private static LocalityAwareLoadBalancer createLoadBalancer(String innerStrategy) {
+        BiFunction<Long, Long, ? extends BaseLoadBalancer> factory;
+        switch (innerStrategy) {
+            case "RANDOM":
+                factory = RandomLoadBalancer::new;
+                break;
+            case "LEAST_LOADED":
+                factory = LeastLoadedLoadBalancer::new;
+                break;
+            case "WEIGHTED_ROUND_ROBIN":
+                factory = WeightedRoundRobinLoadBalancer::new;
+                break;
+            case "WEIGHTED_RANDOM":
+                factory = WeightedRandomLoadBalancer::new;
+                break;
+            case "CONSISTENT_HASH":
+                factory = ConsistentHashLoadBalancer::new;
+                break;
+            default:
+                factory = RoundRobinLoadBalancer::new;
+        }
+        return new LocalityAwareLoadBalancer(checkAliveInterval, checkAliveInterval / 2, factory);
+    }
+
+    private static List<TieredProvider> createProviders(Integer count, Integer offset,
+            Integer tier) {
+        return Utils.getDummyProviderNames(count, offset).stream()
+                .map(uuid -> new TieredProvider(uuid, tier)).collect(Collectors.toList());
+    }
+
+    private static List<Provider> concat(List<? extends Provider> first,
+            List<? extends Provider> second) {
+        List<Provider> providers = new ArrayList<>(first);
+        providers.addAll(second);
+        return providers;
+    }
+
+    private static Integer getRequestCount(List<TieredProvider> providers) {
+        return providers.stream().mapToInt(TieredProvider::getRequestCount).sum();
+    }
+
+    private static void awaitAliveProviders(BaseLoadBalancer loadBalancer, Integer count) {
+
+        // @formatter:off
+        assertDoesNotThrow(() -> Awaitility.await()
+                .atMost(Duration.ofMillis(checkAliveInterval * 50))
+                .until(() -> loadBalancer.getMetrics().getCounter("providers.alive") == count.longValue()));
+        // @formatter:on
+    }
+}
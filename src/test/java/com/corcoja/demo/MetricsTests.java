@@ -0,0 +1,96 @@
+package com.corcoja.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.lang.management.ManagementFactory;
+import java.text.MessageFormat;
+import java.time.Duration;
+import java.util.List;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import com.corcoja.demo.impl.BaseLoadBalancer;
+import com.corcoja.demo.metrics.HistogramSnapshot;
+import com.corcoja.demo.metrics.LatencyHistogram;
+import com.corcoja.demo.metrics.MetricsMBean;
+import com.corcoja.demo.protocol.Provider;
+
+public class MetricsTests {
+
+    @ParameterizedTest
+    @ValueSource(longs = {1, 1000, 1000000})
+    public void testHistogramPercentiles(Long unitNanos) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 10000; i++) {
+            histogram.record(i * unitNanos);
+        }
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+
+        System.out.println("Check that the percentiles are within the bucket precision");
+
+        assertEquals(10000, snapshot.getCount());
+        assertEquals(10000 * unitNanos, snapshot.getMax().toNanos());
+        for (Double percentile : List.of(0.0, 0.5, 0.9, 0.99, 0.999, 1.0)) {
+            long expected = Math.max(1, (long) Math.ceil(percentile * 10000)) * unitNanos;
+            long actual = snapshot.getValueAtPercentile(percentile).toNanos();
+
+            System.out.println(MessageFormat.format("p{0}: expected {1} ns, got {2} ns",
+                    percentile * 100, expected, actual));
+            assertTrue(actual >= expected);
+            assertTrue(actual <= expected * 1.04);
+        }
+
+        assertEquals(5000 * unitNanos, snapshot.getMean().toNanos(), unitNanos);
+    }
+
+    @Test
+    public void testHistogramEmpty() {
+        HistogramSnapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertEquals(0, snapshot.getCount());
+        assertEquals(Duration.ZERO, snapshot.getValueAtPercentile(0.99));
+        assertEquals(Duration.ZERO, snapshot.getMean());
+        assertThrows(IllegalArgumentException.class, () -> snapshot.getValueAtPercentile(1.5));
+    }
+
+    @Test
+    public void testMetricsMBean() throws Exception {
+        BaseLoadBalancer loadBalancer = (BaseLoadBalancer) Utils.createRoundRobinLoadBalancer();
+        Provider provider = Utils.createRequestCountProvider("provider");
+        loadBalancer.registerProviders(List.of(provider));
+        for (int i = 0; i < 10; i++) {
+            loadBalancer.get();
+        }
+
+        System.out.println("Register the load balancer metrics on the platform MBean server");
+
+        ObjectName objectName = MetricsMBean.register("testMetricsMBean", loadBalancer);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            assertEquals(10L, server.getAttribute(objectName, "requests"));
+            assertEquals(10L, server.getAttribute(objectName, "request.latency.count"));
+            assertTrue((Long) server.getAttribute(objectName, "request.latency.p99") > 0);
+            assertEquals(1L, server.getAttribute(objectName, "providers.alive"));
+
+            System.out.println("Check that the attributes follow the load balancer");
+
+            loadBalancer.get();
+            assertEquals(11L, server.getAttribute(objectName, "requests"));
+
+            System.out.println("Check that the metrics have no operations");
+
+            assertThrows(ReflectionException.class,
+                    () -> server.invoke(objectName, "reset", new Object[0], new String[0]));
+        } finally {
+            MetricsMBean.unregister(objectName);
+        }
+
+        assertTrue(!server.isRegistered(objectName));
+    }
+}
@@ -3,6 +3,7 @@ package com.corcoja.demo;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import java.text.MessageFormat;
 import java.util.HashMap;
 import java.util.List;
@@ -86,4 +87,41 @@ public class RandomLoadBalancerTests {
             }
         });
     }
+
+    @ParameterizedTest
+    @CsvSource({"2,1", "5,4", "10,3", "64,60"})
+    public void testRandomSkipsOverloadedProviders(Integer providerCount, Integer overloaded) {
+        List<String> providerNames = Utils.getDummyProviderNames(providerCount);
+        LoadBalancer loadBalancer = Utils.createRandomLoadBalancer();
+
+        // Create providers and register them on the load balancer
+        List<Provider> providers = providerNames.stream().map(Utils::createSimpleProvider)
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(providers);
+
+        System.out.println(MessageFormat.format("Overload first {0} providers", overloaded));
+
+        for (int i = 0; i < overloaded; i++) {
+            for (int j = 0; j < Constants.providerMaxConcurrentRequests; j++) {
+                providers.get(i).get();
+            }
+        }
+
+        System.out.println("Check that all remaining capacity is used by the load balancer before "
+                + "throwing an exception");
+
+        Map<String, Integer> responses = new HashMap<>();
+        Integer requests = (providerCount - overloaded) * Constants.providerMaxConcurrentRequests;
+
+        for (int i = 0; i < requests; i++) {
+            String uuid = assertDoesNotThrow(() -> loadBalancer.get());
+            responses.put(uuid, responses.getOrDefault(uuid, 0) + 1);
+        }
+
+        for (int i = 0; i < overloaded; i++) {
+            assertTrue(!responses.containsKey(providerNames.get(i)));
+        }
+
+        assertThrows(MaxLoadException.class, loadBalancer::get);
+    }
 }
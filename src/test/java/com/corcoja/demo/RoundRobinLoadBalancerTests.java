@@ -1,15 +1,21 @@
 package com.corcoja.demo;
 
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import java.text.MessageFormat;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.ValueSource;
+import com.corcoja.demo.Utils.RequestCountProvider;
 import com.corcoja.demo.error.MaxLoadException;
 import com.corcoja.demo.protocol.LoadBalancer;
 import com.corcoja.demo.protocol.Provider;
@@ -80,4 +86,62 @@ public class RoundRobinLoadBalancerTests {
             }
         });
     }
+
+    @ParameterizedTest
+    @CsvSource({"64,10,1000", "128,7,500", "256,64,100"})
+    public void testRoundRobinConcurrentCallers(Integer callers, Integer providerCount,
+            Integer requestsPerCaller) {
+        List<String> providerNames = Utils.getDummyProviderNames(providerCount);
+        LoadBalancer loadBalancer = Utils.createRoundRobinLoadBalancer();
+
+        // Create providers and register them on the load balancer
+        List<RequestCountProvider> providers = providerNames.stream()
+                .map(Utils::createRequestCountProvider).collect(Collectors.toList());
+        loadBalancer.registerProviders(List.copyOf(providers));
+
+        System.out.println(MessageFormat.format(
+                "Send {0} requests from each of {1} concurrent callers", requestsPerCaller, callers));
+
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+
+        // @formatter:off
+        CompletableFuture<?> requests = CompletableFuture.allOf(IntStream.range(0, callers)
+                .mapToObj(t -> CompletableFuture.runAsync(() -> {
+                    for (int i = 0; i < requestsPerCaller; i++) {
+                        loadBalancer.get();
+                    }
+                }, executor))
+                .toArray(CompletableFuture[]::new));
+        // @formatter:on
+
+        assertDoesNotThrow(() -> requests.get());
+        executor.shutdown();
+
+        System.out.println("Check that requests are evenly distributed among all providers");
+
+        Integer total = callers * requestsPerCaller;
+        for (RequestCountProvider provider : providers) {
+            Integer requestCount = provider.getRequestCount();
+            assertTrue(Math.abs(requestCount - total / providerCount) <= 1,
+                    MessageFormat.format("Unexpected request count {0}", requestCount));
+        }
+    }
+
+    @Test
+    public void testRoundRobinBatch() {
+        List<String> providerNames = Utils.getDummyProviderNames(5);
+        LoadBalancer loadBalancer = Utils.createRoundRobinLoadBalancer();
+        loadBalancer.registerProviders(providerNames.stream()
+                .map(Utils::createRequestCountProvider).collect(Collectors.toList()));
+
+        System.out.println("Check that a batch follows the Round Robin sequence");
+
+        assertEquals(providerNames.get(0), loadBalancer.get());
+        assertEquals(List.of(1, 2, 3, 4, 0, 1, 2).stream().map(providerNames::get)
+                .collect(Collectors.toList()), loadBalancer.getBatch(7));
+
+        System.out.println("Check that the next request continues the sequence after the batch");
+
+        assertEquals(providerNames.get(3), loadBalancer.get());
+    }
 }
@@ -3,18 +3,28 @@ package com.corcoja.demo;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import java.text.MessageFormat;
 import java.time.Duration;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.awaitility.Awaitility;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.ValueSource;
+import com.corcoja.demo.impl.SimpleProvider;
+import com.corcoja.demo.metrics.HistogramSnapshot;
+import com.corcoja.demo.metrics.MetricsSnapshot;
 import com.corcoja.demo.protocol.Provider;
 
 public class SimpleProviderTests {
@@ -85,4 +95,217 @@ public class SimpleProviderTests {
         assertDoesNotThrow(() -> assertEquals(Boolean.TRUE, checkFuture.get()));
         assertDoesNotThrow(() -> assertNotNull(getFuture.get()));
     }
+
+    @ParameterizedTest
+    @ValueSource(ints = {5, 10, 15, 25})
+    public void testProviderAsyncRequests(Integer requests) {
+        Provider provider = Utils.createSimpleProvider();
+
+        System.out.println(MessageFormat.format(
+                "Send {0} asynchronous requests to the provider from a single thread", requests));
+
+        long start = System.nanoTime();
+        List<CompletableFuture<String>> futures = IntStream.range(0, requests)
+                .mapToObj(i -> provider.getAsync()).collect(Collectors.toList());
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        System.out.println("None of the requests must block the caller");
+
+        assertTrue(elapsed.compareTo(Constants.providerRequestProcessingTime.dividedBy(2)) < 0);
+
+        System.out.println("Requests within the capacity of the provider must complete right away, "
+                + "the others must be queued");
+
+        for (int i = 0; i < requests; i++) {
+            assertEquals(i < Constants.providerMaxConcurrentRequests, futures.get(i).isDone());
+        }
+
+        System.out.println("All queued requests must complete once the load decreases");
+
+        Duration processingWaitTime =
+                Constants.providerRequestProcessingTime.multipliedBy(1 + (long) Math
+                        .ceil((float) requests / (float) Constants.providerMaxConcurrentRequests));
+
+        // @formatter:off
+        Awaitility.await()
+                .pollInterval(Duration.ofMillis(500))
+                .atMost(processingWaitTime)
+                .until(() -> futures.stream().allMatch(CompletableFuture::isDone));
+        // @formatter:on
+    }
+
+    @Test
+    public void testProviderAsyncRequestsOffTimer() {
+        Provider provider = new SimpleProvider(1, Duration.ofMillis(100));
+
+        System.out.println("Queue a request behind a busy permit and track where it completes");
+
+        CompletableFuture<String> first = provider.getAsync();
+        CompletableFuture<String> queuedThread =
+                provider.getAsync().thenApply(uuid -> Thread.currentThread().getName());
+        assertTrue(first.isDone());
+        assertTrue(!queuedThread.isDone());
+
+        System.out.println("Check that the caller's stages don't run on the shared timer thread");
+
+        String thread = assertDoesNotThrow(() -> queuedThread.get(1, TimeUnit.SECONDS));
+        System.out.println(MessageFormat.format("Completed on {0}", thread));
+        assertTrue(!thread.equals("provider_release_timer"));
+    }
+
+    @Test
+    public void testProviderAvailabilityFromOtherThreads() {
+        Provider provider = Utils.createSimpleProvider();
+
+        System.out.println("Set provider as unavailable and available again from other threads");
+
+        CompletableFuture.runAsync(() -> provider.setAvailability(false)).join();
+
+        CompletableFuture<String> getFuture = CompletableFuture.supplyAsync(provider::get);
+        assertThrows(TimeoutException.class, () -> getFuture.get(1, TimeUnit.SECONDS));
+        assertNull(provider.tryGet());
+
+        assertDoesNotThrow(
+                () -> CompletableFuture.runAsync(() -> provider.setAvailability(true)).join());
+
+        System.out.println("Blocked request must complete immediately");
+
+        assertDoesNotThrow(() -> assertNotNull(getFuture.get(1, TimeUnit.SECONDS)));
+        assertNotNull(provider.tryGet());
+    }
+
+    @Test
+    public void testProviderAsyncAvailability() {
+        Provider provider = Utils.createSimpleProvider();
+
+        System.out.println("Set provider as unavailable");
+
+        provider.setAvailability(false);
+
+        System.out.println("Check asynchronous requests are queued while provider is unavailable");
+
+        CompletableFuture<String> getFuture = provider.getAsync();
+        assertThrows(TimeoutException.class, () -> getFuture.get(2, TimeUnit.SECONDS));
+
+        System.out.println("Set provider as available");
+
+        provider.setAvailability(true);
+
+        System.out.println("Queued request must complete immediately");
+
+        assertDoesNotThrow(() -> assertNotNull(getFuture.get(1, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    public void testProviderTryGet() {
+        Duration processingTime = Duration.ofMillis(500);
+        Provider provider = new SimpleProvider(2, processingTime);
+
+        System.out.println("Fill the provider up without blocking");
+
+        assertNotNull(provider.tryGet());
+        assertNotNull(provider.tryGet());
+        assertNull(provider.tryGet());
+
+        System.out.println("Check that the timed variant gives up after its timeout");
+
+        long start = System.nanoTime();
+        assertNull(provider.tryGet(Duration.ofMillis(100)));
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() >= 100);
+
+        System.out.println("Check that the timed variant waits for the load to decrease");
+
+        assertNotNull(provider.tryGet(processingTime.multipliedBy(2)));
+
+        System.out.println("Check that an unavailable provider rejects the requests");
+
+        Awaitility.await().atMost(processingTime.multipliedBy(2))
+                .until(() -> provider.getCurrentLoad() < Constants.eps);
+        provider.setAvailability(false);
+        assertNull(provider.tryGet());
+
+        CompletableFuture<String> tryGetFuture =
+                CompletableFuture.supplyAsync(() -> provider.tryGet(Duration.ofSeconds(2)));
+        provider.setAvailability(true);
+        assertDoesNotThrow(() -> assertNotNull(tryGetFuture.get(1, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    public void testProviderMetrics() {
+        SimpleProvider provider = new SimpleProvider(2, Duration.ofMillis(300));
+
+        System.out.println("Fill the provider up and wait for the load to decrease");
+
+        provider.get();
+        provider.get();
+        assertNull(provider.tryGet());
+        provider.get();
+        provider.check();
+
+        MetricsSnapshot metrics = provider.getMetrics();
+        System.out.println(MessageFormat.format("Metrics: {0}", metrics.getCounters()));
+
+        assertEquals(3, metrics.getCounter("requests"));
+        assertEquals(1, metrics.getCounter("requests.rejected"));
+        assertEquals(1, metrics.getCounter("checks"));
+        assertEquals(1, metrics.getCounter("available"));
+        assertTrue(metrics.getCounter("requests.inFlight") > 0);
+
+        HistogramSnapshot getLatency = metrics.getHistogram("get.latency");
+        assertEquals(3, getLatency.getCount());
+        assertTrue(getLatency.getMax().toMillis() >= 250);
+        assertTrue(getLatency.getValueAtPercentile(0.5).toMillis() < 250);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {50, 200, 1000})
+    public void testProviderProcessingTimeAccuracy(Integer processingMillis) {
+        Duration processingTime = Duration.ofMillis(processingMillis);
+        Provider provider = new SimpleProvider(1, processingTime);
+
+        System.out.println(MessageFormat.format(
+                "Check that the load decreases {0} ms after the request", processingMillis));
+
+        long start = System.nanoTime();
+        provider.get();
+        provider.get();
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        System.out.println(MessageFormat.format("Second request waited {0} ms", elapsed.toMillis()));
+
+        assertTrue(elapsed.compareTo(processingTime) >= 0);
+        assertTrue(elapsed.compareTo(processingTime.plusMillis(50)) < 0);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"100,1000", "1000,200"})
+    public void testProviderManyShortRequests(Integer providerCount, Integer requestsPerProvider) {
+        Duration processingTime = Duration.ofMillis(100);
+        List<Provider> providers = IntStream.range(0, providerCount)
+                .mapToObj(i -> new SimpleProvider(requestsPerProvider, processingTime))
+                .collect(Collectors.toList());
+
+        Set<Thread> threads = Thread.getAllStackTraces().keySet();
+
+        System.out.println(MessageFormat.format("Send {0} requests to each of {1} providers",
+                requestsPerProvider, providerCount));
+
+        for (Provider provider : providers) {
+            for (int i = 0; i < requestsPerProvider; i++) {
+                provider.get();
+            }
+        }
+
+        System.out.println("Check that no thread is created for the pending requests");
+
+        assertTrue(Utils.countNewThreads(threads) <= 1);
+
+        // @formatter:off
+        Awaitility.await()
+                .pollInterval(Duration.ofMillis(100))
+                .atMost(Duration.ofSeconds(5))
+                .until(() -> providers.stream().allMatch(
+                        provider -> provider.getCurrentLoad() < Constants.eps));
+        // @formatter:on
+    }
 }
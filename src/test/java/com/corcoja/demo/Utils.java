@@ -3,13 +3,20 @@ package com.corcoja.demo;
 import java.text.MessageFormat;
 import java.time.Duration;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import com.corcoja.demo.impl.ConsistentHashLoadBalancer;
+import com.corcoja.demo.impl.ExecutionMode;
+import com.corcoja.demo.impl.LeastLoadedLoadBalancer;
 import com.corcoja.demo.impl.RandomLoadBalancer;
 import com.corcoja.demo.impl.RoundRobinLoadBalancer;
+import com.corcoja.demo.impl.RoutingSnapshot;
 import com.corcoja.demo.impl.SimpleProvider;
+import com.corcoja.demo.impl.WeightedRandomLoadBalancer;
+import com.corcoja.demo.impl.WeightedRoundRobinLoadBalancer;
 import com.corcoja.demo.protocol.LoadBalancer;
 import com.corcoja.demo.protocol.Provider;
 
@@ -41,6 +48,323 @@ class Utils {
         }
     }
 
+    /**
+     * This is a custom provider that always reports no load, like a provider whose load was read
+     * right before other requests filled it up would.
+     * 
+     * @implNote For testing purposes only!
+     */
+    static class StaleLoadProvider extends SimpleProvider {
+
+        StaleLoadProvider(String customUuid, Integer maxConcurrentRequests,
+                Duration oneRequestProcessingTime) {
+            super(customUuid, maxConcurrentRequests, oneRequestProcessingTime);
+        }
+
+        @Override
+        public Float getCurrentLoad() {
+            return 0.0f;
+        }
+    }
+
+    /**
+     * This is a custom provider that is never loaded and counts the number of times {@link #get()}
+     * method was invoked. Unlike {@link SimpleProvider}, it doesn't create any artificial load, so
+     * it can handle any amount of requests.
+     * 
+     * @implNote For testing purposes only!
+     */
+    static class RequestCountProvider implements Provider {
+
+        private final String uuid;
+
+        private AtomicInteger requestCount = new AtomicInteger();
+
+        RequestCountProvider(String uuid) {
+            this.uuid = uuid;
+        }
+
+        @Override
+        public String get() {
+            requestCount.incrementAndGet();
+            return uuid;
+        }
+
+        @Override
+        public Boolean check() {
+            return true;
+        }
+
+        @Override
+        public Float getCurrentLoad() {
+            return 0.0f;
+        }
+
+        @Override
+        public void setAvailability(Boolean availability) {}
+
+        Integer getRequestCount() {
+            return requestCount.get();
+        }
+    }
+
+    /**
+     * This is a custom provider that is never loaded and blocks the caller for the whole processing
+     * time of a request, like a provider that waits for a remote service would do.
+     * 
+     * @implNote For testing purposes only!
+     */
+    static class BlockingProvider extends RequestCountProvider {
+
+        private final Duration oneRequestProcessingTime;
+
+        BlockingProvider(String uuid, Duration oneRequestProcessingTime) {
+            super(uuid);
+            this.oneRequestProcessingTime = oneRequestProcessingTime;
+        }
+
+        @Override
+        public String get() {
+            sleep(oneRequestProcessingTime);
+            return super.get();
+        }
+    }
+
+    /**
+     * This is a custom provider that blocks the caller for the whole processing time of a request,
+     * reports the given capacity and records the highest amount of requests it handled at the same
+     * time. Like {@link BlockingProvider}, it never reports any load.
+     *
+     * @implNote For testing purposes only!
+     */
+    static class ConcurrencyCountProvider extends BlockingProvider {
+
+        private final Integer capacity;
+
+        private AtomicInteger requestsInFlight = new AtomicInteger();
+
+        private AtomicInteger maxRequestsInFlight = new AtomicInteger();
+
+        ConcurrencyCountProvider(String uuid, Integer capacity,
+                Duration oneRequestProcessingTime) {
+            super(uuid, oneRequestProcessingTime);
+            this.capacity = capacity;
+        }
+
+        @Override
+        public String get() {
+            maxRequestsInFlight.accumulateAndGet(requestsInFlight.incrementAndGet(), Math::max);
+            try {
+                return super.get();
+            } finally {
+                requestsInFlight.decrementAndGet();
+            }
+        }
+
+        @Override
+        public Integer getCapacity() {
+            return capacity;
+        }
+
+        Integer getMaxRequestsInFlight() {
+            return maxRequestsInFlight.get();
+        }
+    }
+
+    /**
+     * This is a custom provider that reports a capacity of a single request, but really handles the
+     * given amount of requests at the same time. Requests beyond it queue up inside the provider,
+     * so that its latency grows with the requests in flight, like a remote service would. Like
+     * {@link BlockingProvider}, it never reports any load.
+     *
+     * @implNote For testing purposes only!
+     */
+    static class SaturatingProvider extends RequestCountProvider {
+
+        private final Integer trueCapacity;
+
+        private final Duration oneRequestProcessingTime;
+
+        private AtomicInteger requestsInFlight = new AtomicInteger();
+
+        SaturatingProvider(String uuid, Integer trueCapacity, Duration oneRequestProcessingTime) {
+            super(uuid);
+            this.trueCapacity = trueCapacity;
+            this.oneRequestProcessingTime = oneRequestProcessingTime;
+        }
+
+        @Override
+        public String get() {
+            int inFlight = requestsInFlight.incrementAndGet();
+            try {
+                sleep(oneRequestProcessingTime
+                        .multipliedBy(Math.max(1, (inFlight + trueCapacity - 1) / trueCapacity)));
+                return super.get();
+            } finally {
+                requestsInFlight.decrementAndGet();
+            }
+        }
+
+        @Override
+        public Integer getCapacity() {
+            return 1;
+        }
+    }
+
+    /**
+     * This is a custom provider that is never loaded and answers most requests quickly, but some of
+     * them only after a long time, like a provider with occasional GC pauses would do.
+     * 
+     * @implNote For testing purposes only!
+     */
+    static class TailLatencyProvider extends RequestCountProvider {
+
+        private final Duration slowRequestProcessingTime;
+
+        private final Double slowRatio;
+
+        TailLatencyProvider(String uuid, Duration slowRequestProcessingTime, Double slowRatio) {
+            super(uuid);
+            this.slowRequestProcessingTime = slowRequestProcessingTime;
+            this.slowRatio = slowRatio;
+        }
+
+        @Override
+        public String get() {
+            if (ThreadLocalRandom.current().nextDouble() < slowRatio) {
+                sleep(slowRequestProcessingTime);
+            }
+            return super.get();
+        }
+    }
+
+    /**
+     * This is a custom provider that is never loaded and whose requests can be made to fail, while
+     * it keeps passing its health checks.
+     * 
+     * @implNote For testing purposes only!
+     */
+    static class FailingProvider extends BlockingProvider {
+
+        private volatile Boolean failing = false;
+
+        FailingProvider(String uuid) {
+            this(uuid, Duration.ZERO);
+        }
+
+        FailingProvider(String uuid, Duration oneRequestProcessingTime) {
+            super(uuid, oneRequestProcessingTime);
+        }
+
+        @Override
+        public String get() {
+            if (failing) {
+                throw new IllegalStateException("Request failed!");
+            }
+            return super.get();
+        }
+
+        void setFailing(Boolean failing) {
+            this.failing = failing;
+        }
+    }
+
+    /**
+     * Counts the health checks in flight at the same time, of the providers of a single test.
+     */
+    static class CheckCounter {
+
+        private final AtomicInteger checksInFlight = new AtomicInteger();
+
+        private final AtomicInteger maxChecksInFlight = new AtomicInteger();
+
+        void start() {
+            maxChecksInFlight.accumulateAndGet(checksInFlight.incrementAndGet(), Math::max);
+        }
+
+        void finish() {
+            checksInFlight.decrementAndGet();
+        }
+
+        Integer getMaxChecksInFlight() {
+            return maxChecksInFlight.get();
+        }
+    }
+
+    /**
+     * This is a custom provider that is never loaded, takes a while to answer its health checks and
+     * keeps track of how many checks were in flight at the same time.
+     * 
+     * @implNote For testing purposes only!
+     */
+    static class SlowCheckProvider extends RequestCountProvider {
+
+        private final Duration checkTime;
+
+        private final CheckCounter checkCounter;
+
+        private final AtomicInteger checkCount = new AtomicInteger();
+
+        private volatile Boolean available = true;
+
+        SlowCheckProvider(String uuid, Duration checkTime, CheckCounter checkCounter) {
+            super(uuid);
+            this.checkTime = checkTime;
+            this.checkCounter = checkCounter;
+        }
+
+        @Override
+        public Boolean check() {
+            checkCounter.start();
+            sleep(checkTime);
+            checkCounter.finish();
+            checkCount.incrementAndGet();
+            return available;
+        }
+
+        @Override
+        public void setAvailability(Boolean availability) {
+            available = availability;
+        }
+
+        Integer getCheckCount() {
+            return checkCount.get();
+        }
+    }
+
+    /**
+     * This is a custom provider that is never loaded, reports a locality tier and passes its
+     * health checks only while available.
+     * 
+     * @implNote For testing purposes only!
+     */
+    static class TieredProvider extends RequestCountProvider {
+
+        private final Integer tier;
+
+        private volatile Boolean available = true;
+
+        TieredProvider(String uuid, Integer tier) {
+            super(uuid);
+            this.tier = tier;
+        }
+
+        @Override
+        public Boolean check() {
+            return available;
+        }
+
+        @Override
+        public Integer getTier() {
+            return tier;
+        }
+
+        @Override
+        public void setAvailability(Boolean availability) {
+            available = availability;
+        }
+    }
+
     /**
      * This is a custom load balancer (based on {@link RoundRobinLoadBalancer}) that has an
      * additional method that will return all currently alive providers.
@@ -54,8 +378,9 @@ class Utils {
         }
 
         List<Provider> getAliveProviders() {
-            return alivePings.entrySet().stream().filter(entry -> entry.getValue() >= 0)
-                    .map(Map.Entry::getKey).collect(Collectors.toList());
+            RoutingSnapshot snapshot = this.snapshot;
+            return IntStream.range(0, snapshot.size()).filter(snapshot::isAlive)
+                    .mapToObj(snapshot::getProvider).collect(Collectors.toList());
         }
     }
 
@@ -69,6 +394,43 @@ class Utils {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * @param previousThreads Threads listed by {@link Thread#getAllStackTraces()} before.
+     * 
+     * @return Number of platform threads started since then, ignoring the workers of the load
+     *         balancers in {@link ExecutionMode#PLATFORM_THREADS} mode, which only run the health
+     *         checks of the load balancers created by the other tests.
+     */
+    static Integer countNewThreads(Set<Thread> previousThreads) {
+        return (int) Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> !previousThreads.contains(thread))
+                .filter(thread -> !thread.getName().startsWith(ExecutionMode.WORKER_THREAD_PREFIX))
+                .count();
+    }
+
+    static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param values Measured values.
+     * @param percentile Percentile between {@code 0.0} and {@code 1.0}.
+     * 
+     * @return The value below which the given percentage of measured values fall.
+     */
+    static Long percentile(List<Long> values, Double percentile) {
+        if (values.isEmpty()) {
+            return 0L;
+        }
+
+        List<Long> sorted = values.stream().sorted().collect(Collectors.toList());
+        return sorted.get((int) Math.ceil(percentile * sorted.size()) - (percentile > 0 ? 1 : 0));
+    }
+
     static Provider createSimpleProvider() {
         return new SimpleProvider(Constants.providerMaxConcurrentRequests,
                 Constants.providerRequestProcessingTime);
@@ -88,6 +450,10 @@ class Utils {
                 Constants.providerRequestProcessingTime);
     }
 
+    static RequestCountProvider createRequestCountProvider(String uuid) {
+        return new RequestCountProvider(uuid);
+    }
+
     static LoadBalancer createRandomLoadBalancer() {
         return new RandomLoadBalancer(Constants.loadBalancerAliveInterval.toMillis(),
                 Constants.loadBalancerAliveTimeout.toMillis());
@@ -98,6 +464,31 @@ class Utils {
                 Constants.loadBalancerAliveTimeout.toMillis());
     }
 
+    static LoadBalancer createLeastLoadedLoadBalancer() {
+        return new LeastLoadedLoadBalancer(Constants.loadBalancerAliveInterval.toMillis(),
+                Constants.loadBalancerAliveTimeout.toMillis());
+    }
+
+    static LoadBalancer createLeastLoadedLoadBalancer(Integer fullScanMaxProviders) {
+        return new LeastLoadedLoadBalancer(Constants.loadBalancerAliveInterval.toMillis(),
+                Constants.loadBalancerAliveTimeout.toMillis(), fullScanMaxProviders);
+    }
+
+    static WeightedRoundRobinLoadBalancer createWeightedRoundRobinLoadBalancer() {
+        return new WeightedRoundRobinLoadBalancer(Constants.loadBalancerAliveInterval.toMillis(),
+                Constants.loadBalancerAliveTimeout.toMillis());
+    }
+
+    static WeightedRandomLoadBalancer createWeightedRandomLoadBalancer() {
+        return new WeightedRandomLoadBalancer(Constants.loadBalancerAliveInterval.toMillis(),
+                Constants.loadBalancerAliveTimeout.toMillis());
+    }
+
+    static ConsistentHashLoadBalancer createConsistentHashLoadBalancer() {
+        return new ConsistentHashLoadBalancer(Constants.loadBalancerAliveInterval.toMillis(),
+                Constants.loadBalancerAliveTimeout.toMillis());
+    }
+
     static AliveProvidersLoadBalancer createAliveProvidersLoadBalancer() {
         return new AliveProvidersLoadBalancer(Constants.loadBalancerAliveInterval.toMillis(),
                 Constants.loadBalancerAliveTimeout.toMillis());
@@ -0,0 +1,76 @@
+package com.corcoja.demo;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.text.MessageFormat;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import com.corcoja.demo.error.MaxLoadException;
+import com.corcoja.demo.impl.SimpleProvider;
+import com.corcoja.demo.impl.WeightedRandomLoadBalancer;
+import com.corcoja.demo.protocol.Provider;
+
+public class WeightedRandomLoadBalancerTests {
+
+    @ParameterizedTest
+    @CsvSource({"2,100000", "4,100000", "10,200000"})
+    public void testWeightedRandomDistribution(Integer providerCount, Integer requests) {
+        List<String> providerNames = Utils.getDummyProviderNames(providerCount);
+        WeightedRandomLoadBalancer loadBalancer = Utils.createWeightedRandomLoadBalancer();
+
+        // Create providers and register them on the load balancer, provider i has weight i + 1
+        List<Provider> providers = providerNames.stream().map(Utils::createRequestCountProvider)
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(providers);
+        for (int i = 0; i < providerCount; i++) {
+            loadBalancer.setWeight(providers.get(i), i + 1);
+        }
+
+        System.out.println(
+                "Check that each provider receives a share of requests proportional to its weight");
+
+        Map<String, Integer> responses = new HashMap<>();
+
+        for (int i = 0; i < requests; i++) {
+            String uuid = loadBalancer.get();
+            responses.put(uuid, responses.getOrDefault(uuid, 0) + 1);
+        }
+
+        Float totalWeight = (float) providerCount * (providerCount + 1) / 2;
+        for (int i = 0; i < providerCount; i++) {
+            Float expectedRate = (i + 1) / totalWeight;
+            Float rate = (float) responses.getOrDefault(providerNames.get(i), 0) / requests;
+
+            System.out.println(MessageFormat.format("Provider {0}: expected {1}, actual {2}", i,
+                    expectedRate, rate));
+            assertTrue(Math.abs(rate - expectedRate) < 0.1 * expectedRate);
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"4,64", "1,10", "8,8"})
+    public void testWeightedRandomCapacityWeights(Integer smallCapacity, Integer largeCapacity) {
+        WeightedRandomLoadBalancer loadBalancer = Utils.createWeightedRandomLoadBalancer();
+
+        // Create providers with different capacities and register them on the load balancer
+        Provider small = new SimpleProvider("small", smallCapacity,
+                Constants.providerRequestProcessingTime);
+        Provider large = new SimpleProvider("large", largeCapacity,
+                Constants.providerRequestProcessingTime);
+        loadBalancer.registerProviders(List.of(small, large));
+
+        System.out.println("Check that all capacity is used before the load balancer throws an "
+                + "exception");
+
+        for (int i = 0; i < smallCapacity + largeCapacity; i++) {
+            assertDoesNotThrow(() -> loadBalancer.get());
+        }
+
+        assertThrows(MaxLoadException.class, loadBalancer::get);
+    }
+}
@@ -0,0 +1,147 @@
+package com.corcoja.demo;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import com.corcoja.demo.error.MaxLoadException;
+import com.corcoja.demo.impl.SimpleProvider;
+import com.corcoja.demo.impl.WeightedRoundRobinLoadBalancer;
+import com.corcoja.demo.protocol.Provider;
+
+public class WeightedRoundRobinLoadBalancerTests {
+
+    @Test
+    public void testWeightedRoundRobinSmoothSequence() {
+        List<String> providerNames = Utils.getDummyProviderNames(3);
+        WeightedRoundRobinLoadBalancer loadBalancer = Utils.createWeightedRoundRobinLoadBalancer();
+
+        // Create providers and register them on the load balancer
+        List<Provider> providers = providerNames.stream().map(Utils::createRequestCountProvider)
+                .collect(Collectors.toList());
+        loadBalancer.registerProviders(providers);
+        loadBalancer.setWeight(providers.get(0), 5);
+
+        System.out.println("Check that requests to the heavier provider are not sent in a burst");
+
+        List<String> expected = Arrays.asList(0, 0, 0, 1, 2, 0, 0).stream()
+                .map(providerNames::get).collect(Collectors.toList());
+
+        for (int cycle = 0; cycle < 3; cycle++) {
+            List<String> responses = new ArrayList<>();
+            for (int i = 0; i < expected.size(); i++) {
+                responses.add(loadBalancer.get());
+            }
+            assertEquals(expected, responses);
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"4,16", "4,64", "3,7", "10,10"})
+    public void testWeightedRoundRobinCapacityWeights(Integer smallCapacity,
+            Integer largeCapacity) {
+        WeightedRoundRobinLoadBalancer loadBalancer = Utils.createWeightedRoundRobinLoadBalancer();
+
+        // Create providers with different capacities and register them on the load balancer
+        Provider small = new SimpleProvider("small", smallCapacity,
+                Constants.providerRequestProcessingTime);
+        Provider large = new SimpleProvider("large", largeCapacity,
+                Constants.providerRequestProcessingTime);
+        loadBalancer.registerProviders(List.of(small, large));
+
+        System.out.println(MessageFormat.format(
+                "Send {0} requests. Each provider must receive as many requests as its capacity",
+                smallCapacity + largeCapacity));
+
+        Map<String, Integer> responses = new HashMap<>();
+
+        for (int i = 0; i < smallCapacity + largeCapacity; i++) {
+            String uuid = assertDoesNotThrow(() -> loadBalancer.get());
+            responses.put(uuid, responses.getOrDefault(uuid, 0) + 1);
+        }
+
+        assertEquals(smallCapacity, responses.get("small"));
+        assertEquals(largeCapacity, responses.get("large"));
+
+        System.out.println("Both providers are at their full load");
+
+        assertThrows(MaxLoadException.class, loadBalancer::get);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"5,2", "6,3"})
+    public void testWeightedRoundRobinProvidersAddRemove(Integer providerCount,
+            Integer providersToRemove) {
+        List<String> providerNames = Utils.getDummyProviderNames(providerCount);
+        WeightedRoundRobinLoadBalancer loadBalancer = Utils.createWeightedRoundRobinLoadBalancer();
+
+        // Register the providers one by one, each one twice as heavy as the previous
+        List<Provider> providers = providerNames.stream().map(Utils::createRequestCountProvider)
+                .collect(Collectors.toList());
+        for (int i = 0; i < providerCount; i++) {
+            loadBalancer.addProvider(providers.get(i));
+            loadBalancer.setWeight(providers.get(i), 1 << i);
+        }
+
+        System.out.println(MessageFormat.format("Remove first {0} providers", providersToRemove));
+
+        for (int i = 0; i < providersToRemove; i++) {
+            loadBalancer.removeProvider(providers.get(i));
+        }
+
+        System.out.println("Check that one full cycle follows the weights of remaining providers");
+
+        Integer cycle = 0;
+        for (int i = providersToRemove; i < providerCount; i++) {
+            cycle += 1 << (i - providersToRemove);
+        }
+
+        Map<String, Integer> responses = new HashMap<>();
+
+        for (int i = 0; i < cycle; i++) {
+            String uuid = loadBalancer.get();
+            responses.put(uuid, responses.getOrDefault(uuid, 0) + 1);
+        }
+
+        for (int i = 0; i < providerCount; i++) {
+            Integer expectedCount = i < providersToRemove ? 0 : 1 << (i - providersToRemove);
+            assertEquals(expectedCount, responses.getOrDefault(providerNames.get(i), 0));
+        }
+    }
+
+    @Test
+    public void testWeightedRoundRobinLargeWeights() {
+        WeightedRoundRobinLoadBalancer loadBalancer = Utils.createWeightedRoundRobinLoadBalancer();
+
+        // Create providers and register them on the load balancer
+        Provider light = Utils.createRequestCountProvider("light");
+        Provider heavy = Utils.createRequestCountProvider("heavy");
+        loadBalancer.registerProviders(List.of(light, heavy));
+
+        System.out.println("Set weights whose cycle would not fit in memory");
+
+        loadBalancer.setWeight(light, 3);
+        loadBalancer.setWeight(heavy, Integer.MAX_VALUE);
+
+        System.out.println("Check that the cycle was shortened and still includes both providers");
+
+        Map<String, Integer> responses = new HashMap<>();
+
+        for (int i = 0; i < 1 << 16; i++) {
+            String uuid = loadBalancer.get();
+            responses.put(uuid, responses.getOrDefault(uuid, 0) + 1);
+        }
+
+        assertEquals(1, responses.get("light"));
+        assertEquals((1 << 16) - 1, responses.get("heavy"));
+    }
+}